@@ -0,0 +1,180 @@
+package benchmark.matrix;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import matrix.GeneratorRegistry;
+import matrix.MatrixGenerator;
+import matrix.MatrixGeneratorProvider;
+import matrix.MatrixWorkspace;
+import matrix.PackedSymmetricMatrix;
+import matrix.SymmetricMatrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures each generator over a grid of input lengths (N) and counts (c), as a
+ * timed counterpart to the operation counts in the optimization.xlsx workbook.
+ * <p>
+ * The input is either synthetic, a seeded sequence of Gaussian values generated
+ * to any length, or the test.prn data set repeated out to the length. The generate
+ * benchmark reuses the result matrix and workspace across calls, as a service would,
+ * while generateSymmetric allocates them on every call. Run it with the gc profiler
+ * to see the allocation rate of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark
+{
+  @Param({ "unoptimized", "optimized", "prefix", "recurrence", "fft", "vector" })
+  public String generatorName;
+
+  @Param({ "300", "10000", "100000" })
+  public int length;
+
+  @Param({ "4", "32", "256" })
+  public int count;
+
+  @Param({ "synthetic", "test.prn" })
+  public String source;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    generator = createGenerator(generatorName);
+    input = SYNTHETIC.equals(source) ? synthetic(length) : repeat(load(source), length);
+    result = new PackedSymmetricMatrix(count + 1);
+    workspace = new MatrixWorkspace(length, count);
+  }
+
+  @Benchmark
+  public SymmetricMatrix generate()
+  {
+    generator.generate(input, count, result, workspace);
+
+    return result;
+  }
+
+  @Benchmark
+  public SymmetricMatrix generateSymmetric()
+  {
+    return generator.generateSymmetric(input, count);
+  }
+
+  /**
+   * Create the generator with the given name, from the same registry as the -g switch.
+   *
+   * @param name the name of the generator
+   *
+   * @return the generator.
+   */
+  private static MatrixGenerator createGenerator(String name)
+  {
+    MatrixGeneratorProvider provider = GeneratorRegistry.find(name);
+
+    if (provider == null)
+    {
+      throw new IllegalArgumentException("Unknown generator: " + name);
+    }
+
+    return provider.create(null);
+  }
+
+  /**
+   * Generate a seeded sequence of Gaussian values, so every run sees the same input.
+   *
+   * @param length the number of values
+   *
+   * @return the values.
+   */
+  private static float[] synthetic(int length)
+  {
+    Random random = new Random(SEED);
+    float[] values = new float[length];
+
+    for (int i = 0; i < length; i++)
+    {
+      values[i] = (float)random.nextGaussian();
+    }
+
+    return values;
+  }
+
+  /**
+   * Load all the values from a text input file on the classpath.
+   *
+   * @param name the name of the resource
+   *
+   * @return the values.
+   */
+  private static float[] load(String name) throws Exception
+  {
+    URL url = GeneratorBenchmark.class.getClassLoader().getResource(name);
+
+    if (url == null)
+    {
+      throw new IllegalArgumentException("Input resource not found: " + name);
+    }
+
+    Path path = Paths.get(url.toURI());
+
+    String[] lines = Files.lines(path)
+                          .filter(line -> !line.trim().isEmpty())
+                          .toArray(String[]::new);
+
+    float[] values = new float[lines.length];
+
+    for (int i = 0; i < lines.length; i++)
+    {
+      values[i] = Float.parseFloat(lines[i]);
+    }
+
+    return values;
+  }
+
+  /**
+   * Repeat values end to end out to the given length.
+   *
+   * @param values the values to repeat
+   * @param length the number of values wanted
+   *
+   * @return the repeated values.
+   */
+  private static float[] repeat(float[] values, int length)
+  {
+    float[] repeated = new float[length];
+
+    for (int i = 0; i < length; i++)
+    {
+      repeated[i] = values[i % values.length];
+    }
+
+    return repeated;
+  }
+
+  private MatrixGenerator generator;
+  private float[] input;
+  private SymmetricMatrix result;
+  private MatrixWorkspace workspace;
+
+  private static final String SYNTHETIC = "synthetic";
+  private static final long SEED = 42L;
+}
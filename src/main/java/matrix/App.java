@@ -1,11 +1,24 @@
 package matrix;
 
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.NumberFormat;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Main class for the application. Will parse the command line arguments, read
@@ -14,8 +27,13 @@ import java.text.NumberFormat;
 public class App
 {
   /**
-   * Main application entry point. Writes the resulting matrix to standard output.
+   * Main application entry point. Writes the resulting matrix to standard output,
+   * or to the file given by -o, in the format given by --format, and optionally the
+   * statistics for the computation to standard error.
    * Specify the count and length via the -c and -n command line arguments, respectively.
+   * Alternatively, with --convert, converts the text input file to a binary sample file,
+   * or with --stream, reads samples from standard input and writes the matrix as they arrive.
+   * With --server, runs as a server handling requests from other runs with --connect.
    *
    * @param args command line arguments
    */
@@ -24,16 +42,120 @@ public class App
     try
     {
       parseArguments(args);
+
+      if (convertFilePath != null)
+      {
+        convertInputFile(inputFilePath, convertFilePath);
+        return;
+      }
+
+      if (serverPort > 0)
+      {
+        runServer();
+        return;
+      }
+
+      if (connectPort > 0)
+      {
+        runClient(args);
+        return;
+      }
+
       checkArguments();
 
-      float[] input = parseInputFile(inputFilePath);
-      sanitizeInputData(input);
+      if (streamInterval > 0)
+      {
+        streamInput();
+        return;
+      }
+
+      if (chunkSize > 0)
+      {
+        generateChunked();
+        return;
+      }
+
+      if (solver != null)
+      {
+        solvePrediction();
+        return;
+      }
+
+      // A hit in the result cache is written straight out, without reading the input
+      // or creating the generator.
+
+      ResultCache.Key key = null;
+
+      if (cacheDirectory != null)
+      {
+        key = cacheKey();
+
+        if (writeCached(key))
+        {
+          return;
+        }
+      }
+
+      MatrixGenerator generator = createGenerator(length);
+
+      if (statistics)
+      {
+        generator = new InstrumentedMatrixGenerator(generator, System.err::println);
+      }
+
+      if (channels > 1)
+      {
+        generateChannels(generator);
+        return;
+      }
+
+      if (window > 0)
+      {
+        generateFrames();
+        return;
+      }
+
+      SymmetricMatrix result = createResult();
+
+      try
+      {
+        if (binaryInput)
+        {
+          FloatBuffer input = mapInputFile(inputFilePath);
+          sanitizeInputData(input);
+
+          generator.generate(input, count, result, new MatrixWorkspace(input.remaining(), count));
+
+          if (PRECISION_SINGLE.equals(precision))
+          {
+            float[] values = new float[input.remaining()];
+            input.duplicate().get(values);
+            reportErrorBound(values);
+          }
+        }
+        else
+        {
+          float[] input = parseInputFile(inputFilePath);
+
+          generator.generate(input, count, result);
+
+          if (PRECISION_SINGLE.equals(precision))
+          {
+            reportErrorBound(input);
+          }
+        }
 
-      MatrixGenerator generator = unoptimized ? new UnoptimizedMatrixGenerator()
-                                              : new OptimizedMatrixGenerator();
+        writeResult(result);
 
-      float[][] result = generator.generate(input, count);
-      printMatrix(System.out, result, NUM_FRACTION_DIGITS);
+        if (key != null)
+        {
+          resultCache.put(key, result);
+        }
+      }
+      finally
+      {
+        closeResult(result);
+      }
     }
     catch (Exception e)
     {
@@ -46,7 +168,34 @@ public class App
    * for the computation such as the input file, and count. For
    * testing purposes, the -u switch allows an unoptimized version
    * of the algorithm to be used for comparision against the optimized
-   * one.
+   * one. The -g switch selects any of the other implementations by
+   * name. The -p switch runs the optimized algorithm across all cores, and
+   * -t sets a specific number of threads for it. The --input-format switch
+   * chooses between text input, and memory mapped binary sample files.
+   * The --format switch chooses between text and binary output, and -o
+   * writes the output to a file. The --channels switch reads several channels
+   * of input, as columns of a text file or interleaved in a binary sample file,
+   * and computes a matrix for each of them, or with --cross the block matrix
+   * across all of them. The --stats switch writes the time, operation
+   * counts and allocations of the computation to the error stream. The
+   * --stream switch reads samples from standard input instead of a file,
+   * and writes the matrix every given number of samples. The --window and
+   * --hop switches compute a matrix for each frame of the input. The --chunk
+   * switch streams the input file through chunks of the given size, for inputs
+   * too large to hold in memory, and the --off-heap switch keeps the matrix in a
+   * memory mapped file, for counts too large to hold it on the heap. The
+   * --server switch runs a server on a loopback port, and --connect sends
+   * the rest of the arguments to it as a request rather than running them.
+   * The auto generator is chosen from a cost model calibrated on this machine,
+   * and the --explain switch writes the chosen plan to the error stream, while
+   * --calibrate measures the costs again rather than using the cached ones.
+   * The --precision switch selects single precision accumulation in the vector
+   * generator, and reports its error bound. The --solve switch writes the
+   * linear prediction coefficients, solved from the matrix, instead of the matrix.
+   * The --cache switch keeps the matrices in a cache directory, shared by all the
+   * runs using it, and writes the cached matrix for an input it has seen before,
+   * with the same length, count, generator and precision, and --cache-size caps
+   * the megabytes the cache takes up.
    *
    * @param args the command line argument array
    */
@@ -75,7 +224,122 @@ public class App
         }
         case "-u":
         {
-          unoptimized = true;
+          generatorName = GENERATOR_UNOPTIMIZED;
+          break;
+        }
+        case "-g":
+        {
+          generatorName = args[++i];
+          break;
+        }
+        case "-p":
+        {
+          parallel = true;
+          break;
+        }
+        case "-t":
+        {
+          parseThreadsArgument(args[++i]);
+          break;
+        }
+        case "--input-format":
+        {
+          parseInputFormatArgument(args[++i]);
+          break;
+        }
+        case "--format":
+        {
+          outputFormat = args[++i];
+          break;
+        }
+        case "-o":
+        {
+          outputFilePath = Paths.get(args[++i]);
+          break;
+        }
+        case "--channels":
+        {
+          parseChannelsArgument(args[++i]);
+          break;
+        }
+        case "--cross":
+        {
+          cross = true;
+          break;
+        }
+        case "--stats":
+        {
+          statistics = true;
+          break;
+        }
+        case "--stream":
+        {
+          parseStreamArgument(args[++i]);
+          break;
+        }
+        case "--window":
+        {
+          window = parsePositiveArgument("Window", args[++i]);
+          break;
+        }
+        case "--hop":
+        {
+          hop = parsePositiveArgument("Hop", args[++i]);
+          break;
+        }
+        case "--chunk":
+        {
+          chunkSize = parsePositiveArgument("Chunk", args[++i]);
+          break;
+        }
+        case "--off-heap":
+        {
+          offHeap = true;
+          break;
+        }
+        case "--server":
+        {
+          serverPort = parsePositiveArgument("Server port", args[++i]);
+          break;
+        }
+        case "--connect":
+        {
+          connectPort = parsePositiveArgument("Connect port", args[++i]);
+          break;
+        }
+        case "--precision":
+        {
+          precision = args[++i];
+          break;
+        }
+        case "--solve":
+        {
+          solver = args[++i];
+          break;
+        }
+        case "--cache":
+        {
+          cacheDirectory = Paths.get(args[++i]);
+          break;
+        }
+        case "--cache-size":
+        {
+          cacheSize = parsePositiveArgument("Cache size", args[++i]);
+          break;
+        }
+        case "--explain":
+        {
+          explain = true;
+          break;
+        }
+        case "--calibrate":
+        {
+          calibrate = true;
+          break;
+        }
+        case "--convert":
+        {
+          convertFilePath = Paths.get(args[++i]);
           break;
         }
         default:
@@ -100,19 +364,142 @@ public class App
       fail(ERROR_INVALID_ARGUMENT, "Count argument not specified.");
     }
 
-    if (length == -1)
+    // Streamed samples come from standard input, for as long as it stays open.
+
+    if (streamInterval <= 0)
     {
-      fail(ERROR_INVALID_ARGUMENT, "No input length specified");
+      // Chunked input is read to the end unless a length is given.
+
+      if (length == -1 && chunkSize <= 0)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "No input length specified");
+      }
+
+      if (inputFilePath == null)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "No input file path specified.");
+      }
+
+      if (!Files.exists(inputFilePath))
+      {
+        fail(ERROR_INVALID_ARGUMENT, String.format("Input file does not exist: %s.", inputFilePath.toAbsolutePath()));
+      }
     }
 
-    if (inputFilePath == null)
+    if (chunkSize > 0 && (channels > 1 || streamInterval > 0 || window > 0))
     {
-      fail(ERROR_INVALID_ARGUMENT, "No input file path specified.");
+      fail(ERROR_INVALID_ARGUMENT, "Chunk argument can't be used with channels, streams or windows.");
+    }
+
+    if (offHeap && (channels > 1 || streamInterval > 0 || window > 0))
+    {
+      fail(ERROR_INVALID_ARGUMENT, "Off heap argument can't be used with channels, streams or windows.");
+    }
+
+    if (hop > 0 && window <= 0)
+    {
+      fail(ERROR_INVALID_ARGUMENT, "Hop argument needs a window.");
+    }
+
+    if (window > 0)
+    {
+      if (channels > 1 || streamInterval > 0)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Window argument can't be used with channels or streams.");
+      }
+
+      if (window <= count)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Window argument must be more than the count");
+      }
+
+      if (hop <= 0)
+      {
+        hop = window;
+      }
+    }
+
+    if (precision == null)
+    {
+      precision = PRECISION_DOUBLE;
+    }
+
+    if (!PRECISION_SINGLE.equals(precision) && !PRECISION_DOUBLE.equals(precision))
+    {
+      fail(ERROR_INVALID_ARGUMENT, "Unknown precision: " + precision);
+    }
+
+    // Only the vector generator accumulates in single precision, so it is the default
+    // for it. The Levinson solver computes its lags without a generator.
+
+    if (PRECISION_SINGLE.equals(precision))
+    {
+      if (!SOLVER_LEVINSON.equals(solver))
+      {
+        if (generatorName == null)
+        {
+          generatorName = GENERATOR_VECTOR;
+        }
+
+        if (!GENERATOR_VECTOR.equals(generatorName))
+        {
+          fail(ERROR_INVALID_ARGUMENT, "Single precision is only supported by the vector generator.");
+        }
+      }
+
+      if (channels > 1 || streamInterval > 0 || window > 0 || chunkSize > 0)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Single precision can't be used with channels, streams, windows or chunks.");
+      }
+    }
+
+    if (solver != null)
+    {
+      if (!SOLVER_CHOLESKY.equals(solver) && !SOLVER_LEVINSON.equals(solver))
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Unknown solver: " + solver);
+      }
+
+      if (channels > 1 || streamInterval > 0 || window > 0 || chunkSize > 0 || offHeap)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Solve argument can't be used with channels, streams, windows, chunks or off heap.");
+      }
+    }
+
+    if (generatorName == null)
+    {
+      generatorName = GENERATOR_OPTIMIZED;
+    }
+
+    if (cacheSize <= 0)
+    {
+      cacheSize = DEFAULT_CACHE_SIZE;
+    }
+
+    if (cacheDirectory != null)
+    {
+      if (channels > 1 || streamInterval > 0 || window > 0 || chunkSize > 0 || solver != null)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Cache argument can't be used with channels, streams, windows, chunks or solve.");
+      }
+
+      // The name is part of the cache key, so it is checked before the generator is
+      // created.
+
+      if (!GENERATOR_AUTO.equals(generatorName) && GeneratorRegistry.find(generatorName) == null)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Unknown generator: " + generatorName);
+      }
+    }
+
+    if (outputFormat == null)
+    {
+      outputFormat = FORMAT_TEXT;
     }
 
-    if (!Files.exists(inputFilePath))
+    if (!FORMAT_TEXT.equals(outputFormat) && !FORMAT_BINARY.equals(outputFormat) && !FORMAT_PACKED.equals(outputFormat))
     {
-      fail(ERROR_INVALID_ARGUMENT, String.format("Input file does not exist: %s.", inputFilePath.toAbsolutePath()));
+      fail(ERROR_INVALID_ARGUMENT, "Unknown output format: " + outputFormat);
     }
   }
 
@@ -159,103 +546,1036 @@ public class App
   }
 
   /**
-   * Read in the input file and parse the contents, returning an array of
-   * float values parsed from the file.
-   *
-   * @param path the path to the file containing the input data
-   *
-   * @return an array of float values parsed from the file.
+   * Parse the thread count from the command line arguments. Specifying a
+   * thread count implies the parallel mode.
+   * @param arg the string specified on the command line for the -t parameter.
    */
-  private static float[] parseInputFile(Path path) throws IOException
+  private static void parseThreadsArgument(String arg)
   {
-    String[] lines = Files.lines(path).limit(length).toArray(String[]::new);
+    try
+    {
+      threads = Integer.parseInt(arg);
+      parallel = true;
 
-    if (length > lines.length)
+      if (threads <= 0)
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Threads argument must be positive");
+      }
+    }
+    catch (NumberFormatException e)
     {
-      fail(ERROR_INVALID_INPUT_DATA, String.format("Not enough input values for length %d", length));
+      fail(ERROR_INVALID_ARGUMENT, "Threads argument is not a valid number: " + arg);
     }
+  }
 
-    float[] input = new float[length];
-
+  /**
+   * Parse the number of channels from the command line arguments.
+   * @param arg the string specified on the command line for the --channels parameter.
+   */
+  private static void parseChannelsArgument(String arg)
+  {
     try
     {
-      for (int i = 0; i < length; i++)
+      channels = Integer.parseInt(arg);
+
+      if (channels <= 0)
       {
-        input[i] = Float.parseFloat(lines[i]);
+        fail(ERROR_INVALID_ARGUMENT, "Channels argument must be positive");
       }
     }
     catch (NumberFormatException e)
     {
-      fail(ERROR_INVALID_INPUT_DATA, "Invalid value in input file: " + e.getLocalizedMessage());
+      fail(ERROR_INVALID_ARGUMENT, "Channels argument is not a valid number: " + arg);
     }
-
-    return input;
   }
 
   /**
-   * Sanity check that the values parsed from the input array are suitable.
-   *
-   * @param input the array of input data
+   * Parse the number of samples between each matrix written in stream mode
+   * from the command line arguments.
+   * @param arg the string specified on the command line for the --stream parameter.
    */
-  private static void sanitizeInputData(float[] input)
+  private static void parseStreamArgument(String arg)
   {
-    for (float f : input)
+    try
     {
-      if (Float.isInfinite(f) || Float.isNaN(f))
+      streamInterval = Integer.parseInt(arg);
+
+      if (streamInterval <= 0)
       {
-        fail(ERROR_INVALID_INPUT_DATA, "Invalid input data in data file: " + Float.toString(f));
+        fail(ERROR_INVALID_ARGUMENT, "Stream argument must be positive");
       }
     }
+    catch (NumberFormatException e)
+    {
+      fail(ERROR_INVALID_ARGUMENT, "Stream argument is not a valid number: " + arg);
+    }
   }
 
   /**
-   * Print the values of the matrix with the specified number of fractional
-   * digits.
+   * Parse a positive number from the command line arguments, such as the frame
+   * window, hop or chunk size, or a port.
+   * @param name the name of the argument, for the error messages
+   * @param arg the string specified on the command line for the parameter.
    *
-   * @param out a PrintStream instance to write the output to.
-   * @param matrix the matrix values to be printed.
-   * @param digits the number of fractional digits to print in the output
+   * @return the parsed number.
    */
-  private static void printMatrix(PrintStream out, float[][] matrix, int digits)
+  private static int parsePositiveArgument(String name, String arg)
   {
-    NumberFormat format = NumberFormat.getInstance();
+    int value = -1;
 
-    format.setMinimumFractionDigits(digits);
-    format.setMaximumFractionDigits(digits);
-
-    for (int i = 0; i < matrix.length; i++)
+    try
     {
-      for (int j = 0; j < matrix[i].length; j++ )
-      {
-        out.print(format.format(matrix[i][j]));
+      value = Integer.parseInt(arg);
 
-        if (j < matrix[i].length - 1)
-        {
-          out.print(' ');
-        }
+      if (value <= 0)
+      {
+        fail(ERROR_INVALID_ARGUMENT, name + " argument must be positive");
       }
-
-      out.println();
     }
+    catch (NumberFormatException e)
+    {
+      fail(ERROR_INVALID_ARGUMENT, name + " argument is not a valid number: " + arg);
+    }
+
+    return value;
   }
 
   /**
-   * Print command line usage to the console.
+   * Parse the input file format from the command line arguments.
+   * @param arg the string specified on the command line for the --input-format parameter.
    */
-  private static void usage()
+  private static void parseInputFormatArgument(String arg)
   {
-    System.out.println("Usage: java -jar matrix.jar -c 4 -n 300 -f test.prn");
-    System.out.println("\t-c <count>");
-    System.out.println("\t-n <input length>");
-    System.out.println("\t-f <input file path>");
-    System.out.println();
+    switch (arg)
+    {
+      case FORMAT_TEXT:
+      {
+        binaryInput = false;
+        break;
+      }
+      case FORMAT_BINARY:
+      {
+        binaryInput = true;
+        break;
+      }
+      default:
+      {
+        fail(ERROR_INVALID_ARGUMENT, "Unknown input format: " + arg);
+        break;
+      }
+    }
   }
 
   /**
-   * Terminate the appliation on an unrecoverable error with a specified exit code.
-   *
-   * @param status an exit status integer
-   * @param msg an error to be written to the std error stream.
+   * Run a server on the --server port until the process is stopped, handling
+   * requests on as many threads as given by -t, or one per core otherwise.
+   */
+  private static void runServer() throws IOException, InterruptedException
+  {
+    try (MatrixServer server = new MatrixServer(serverPort, threads > 0 ? threads : Runtime.getRuntime().availableProcessors()))
+    {
+      System.err.println("Listening on port " + server.port());
+
+      server.serve();
+    }
+  }
+
+  /**
+   * Send the command line arguments as a request to the server on the --connect
+   * port, and write out the matrix it returns, to standard output or the -o file.
+   * The arguments are translated by MatrixServer.requestArguments, which makes the
+   * input file path absolute for the server, leaves out -p and -t, and rejects the
+   * modes the server doesn't support. An input file of "-" reads the -n samples
+   * from standard input and sends them with the request.
+   *
+   * @param args the command line argument array
+   */
+  private static void runClient(String[] args) throws IOException
+  {
+    List<String> arguments = null;
+
+    try
+    {
+      arguments = MatrixServer.requestArguments(args);
+    }
+    catch (IllegalArgumentException e)
+    {
+      fail(ERROR_INVALID_ARGUMENT, e.getLocalizedMessage());
+    }
+
+    float[] samples = inputFilePath != null && "-".equals(inputFilePath.toString()) ? readSamples() : null;
+
+    int status;
+
+    if (outputFilePath != null)
+    {
+      try (OutputStream output = Files.newOutputStream(outputFilePath))
+      {
+        status = MatrixServer.request(connectPort, arguments, samples, output, System.err);
+      }
+    }
+    else
+    {
+      status = MatrixServer.request(connectPort, arguments, samples, System.out, System.err);
+    }
+
+    if (status != 0)
+    {
+      System.exit(status);
+    }
+  }
+
+  /**
+   * Read the -n samples from standard input, one per line, for an inline request.
+   *
+   * @return the samples.
+   */
+  private static float[] readSamples() throws IOException
+  {
+    if (length <= 0)
+    {
+      fail(ERROR_INVALID_ARGUMENT, "No input length specified");
+    }
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
+    float[] samples = new float[length];
+
+    for (int i = 0; i < length; i++)
+    {
+      String line = reader.readLine();
+
+      if (line == null)
+      {
+        fail(ERROR_INVALID_INPUT_DATA, String.format("Not enough input values for length %d", length));
+      }
+
+      try
+      {
+        samples[i] = Float.parseFloat(line);
+      }
+      catch (NumberFormatException e)
+      {
+        fail(ERROR_INVALID_INPUT_DATA, "Invalid value in input stream: " + line);
+      }
+    }
+
+    return samples;
+  }
+
+  /**
+   * Create the generator implementation selected on the command line. The auto
+   * generator is chosen by the planner, along with its thread count, using up to as
+   * many threads as given by -t, or one per core otherwise. With --explain, the
+   * plan is written to the error stream.
+   *
+   * @param length the number of input values
+   *
+   * @return the generator to compute the matrix with.
+   */
+  private static MatrixGenerator createGenerator(int length) throws IOException
+  {
+    if (GENERATOR_AUTO.equals(generatorName))
+    {
+      GeneratorPlanner.Plan plan = plan(length);
+
+      if (explain)
+      {
+        System.err.println(plan.explain());
+      }
+
+      return plan.create();
+    }
+
+    if (PRECISION_SINGLE.equals(precision))
+    {
+      return new VectorMatrixGenerator(true);
+    }
+
+    MatrixGenerator generator = createGenerator(generatorName, length, count, createPool());
+
+    if (generator == null)
+    {
+      fail(ERROR_INVALID_ARGUMENT, "Unknown generator: " + generatorName);
+    }
+
+    return generator;
+  }
+
+  /**
+   * Work out the key for the matrix in the result cache, creating the cache if it
+   * hasn't been yet. The key hashes the input values of a binary sample file, which
+   * are mapped rather than read, or the bytes of a text input file, so that it
+   * doesn't need parsing. The auto generator is keyed by the implementation the
+   * planner chooses, as the implementations differ in their rounding, and a cache
+   * directory may be shared by machines with different plans. For the same reason,
+   * the vector generator is keyed by its kernel as well.
+   *
+   * @return the key for the matrix.
+   */
+  private static ResultCache.Key cacheKey() throws IOException
+  {
+    if (resultCache == null)
+    {
+      resultCache = new ResultCache(cacheDirectory, cacheSize * 1024L * 1024L);
+    }
+
+    long hash = binaryInput ? ResultCache.hash(mapInputFile(inputFilePath)) : ResultCache.hash(inputFilePath);
+
+    String generator = GENERATOR_AUTO.equals(generatorName) ? plan(length).provider().name() : generatorName;
+
+    generator = CachedMatrixGenerator.keyName(generator, GENERATOR_VECTOR.equals(generator));
+
+    return new ResultCache.Key(hash, length, count, generator, precision);
+  }
+
+  /**
+   * Write out the matrix from the result cache, if it is there. The single precision
+   * error bound needs the input, so it is only reported when the matrix is generated.
+   *
+   * @param key the key for the matrix
+   *
+   * @return true if the matrix was in the cache.
+   */
+  private static boolean writeCached(ResultCache.Key key) throws IOException
+  {
+    MappedSymmetricMatrix cached = resultCache.get(key);
+
+    if (cached == null)
+    {
+      return false;
+    }
+
+    try
+    {
+      writeMatrix(cached);
+    }
+    finally
+    {
+      cached.close();
+    }
+
+    return true;
+  }
+
+  /**
+   * Plan the generator and thread count for the auto generator, using up to as many
+   * threads as given by -t, or one per core otherwise.
+   *
+   * @param length the number of input values
+   *
+   * @return the plan.
+   */
+  private static GeneratorPlanner.Plan plan(int length) throws IOException
+  {
+    int cores = channels > 1 ? 1 : threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+    return planner().plan(length, count, cores);
+  }
+
+  /**
+   * Create a generator implementation by its name for the -g switch, from the
+   * generator registry. The auto generator is the implementation the planner
+   * expects to be fastest when run serially, which is then given the pool.
+   *
+   * @param name the name of the generator
+   * @param length the number of input values
+   * @param count a count used to control the size of the matrix
+   * @param pool the pool for a parallel generator to run on, or null to run serially
+   *
+   * @return the generator, or null if the name is not known.
+   *
+   * @throws IOException if the planner's calibration cache can't be read
+   */
+  static MatrixGenerator createGenerator(String name, int length, int count, ForkJoinPool pool) throws IOException
+  {
+    MatrixGeneratorProvider provider = GENERATOR_AUTO.equals(name) ? planner().plan(length, count, 1).provider()
+                                                                   : GeneratorRegistry.find(name);
+
+    return provider != null ? provider.create(pool) : null;
+  }
+
+  /**
+   * Get the planner for the auto generator, with the costs cached for this machine
+   * in the user's home directory, running the calibration probe the first time, or
+   * with --calibrate.
+   *
+   * @return the planner.
+   */
+  private static synchronized GeneratorPlanner planner() throws IOException
+  {
+    if (planner == null)
+    {
+      planner = GeneratorPlanner.calibrated(Paths.get(System.getProperty("user.home"), ".matrix", "calibration.properties"),
+                                            calibrate);
+    }
+
+    return planner;
+  }
+
+  /**
+   * Create the fork/join pool used to compute the matrix in parallel. With several
+   * channels, the channels are computed in parallel instead, so each matrix is
+   * computed serially.
+   *
+   * @return the pool to use, or null if the matrix should be computed serially.
+   */
+  private static ForkJoinPool createPool()
+  {
+    if (!parallel || channels > 1)
+    {
+      return null;
+    }
+
+    return threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+  }
+
+  /**
+   * Read in the input channels, compute a matrix for each of them concurrently, and
+   * write them out in channel order. The channels run on a fixed size pool, with as
+   * many threads as given by -t, or one per core otherwise. With --cross, a single
+   * block matrix of the cross matrices for every pair of channels is written instead.
+   *
+   * @param generator the generator to compute each matrix with
+   */
+  private static void generateChannels(MatrixGenerator generator) throws IOException, InterruptedException
+  {
+    float[][] input;
+
+    if (binaryInput)
+    {
+      FloatBuffer samples = SampleFile.map(inputFilePath);
+
+      if ((long)length * channels > samples.limit())
+      {
+        fail(ERROR_INVALID_INPUT_DATA, String.format("Not enough input values for length %d", length));
+      }
+
+      samples.limit(length * channels);
+      sanitizeInputData(samples);
+
+      input = SampleFile.deinterleave(samples, length, channels);
+    }
+    else
+    {
+      input = parseInputChannels(inputFilePath);
+    }
+
+    if (cross)
+    {
+      writeMatrix(new CrossMatrixGenerator().generateBlock(input, count));
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+
+    try
+    {
+      writeMatrix(generator.generateChannels(input, count, executor));
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Read in the input, and compute a matrix for each frame of --window samples,
+   * every --hop samples. The frames are written out in order, separated by an
+   * empty line in the text format. With -p or -t, runs of frames between the
+   * anchors are computed in parallel on a fixed size pool.
+   */
+  private static void generateFrames() throws IOException, InterruptedException
+  {
+    float[] input;
+
+    if (binaryInput)
+    {
+      FloatBuffer samples = mapInputFile(inputFilePath);
+      sanitizeInputData(samples);
+
+      input = new float[samples.remaining()];
+      samples.get(input);
+    }
+    else
+    {
+      input = parseInputFile(inputFilePath);
+    }
+
+    if (FramedMatrixGenerator.frameCount(length, window, hop) == 0)
+    {
+      fail(ERROR_INVALID_INPUT_DATA, String.format("Not enough input values for a window of %d", window));
+    }
+
+    FramedMatrixGenerator generator = new FramedMatrixGenerator();
+
+    if (!parallel)
+    {
+      writeMatrix(generator.generate(input, window, hop, count));
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+
+    try
+    {
+      writeMatrix(generator.generate(input, window, hop, count, executor));
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Stream the input file, text or binary, through chunks of --chunk samples, and
+   * write out the matrix. Only the chunks being computed are held in memory, so the
+   * input can be larger than the heap. All of the input is read, unless a length is
+   * given with -n. With -p or -t, the chunks are computed in parallel on a fixed
+   * size pool, with one chunk held per thread.
+   */
+  private static void generateChunked() throws IOException, InterruptedException
+  {
+    int parallelism = !parallel ? 1 : threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = parallel ? Executors.newFixedThreadPool(parallelism) : null;
+
+    try (SampleSource source = binaryInput ? SampleFile.open(inputFilePath) : SampleParser.open(inputFilePath))
+    {
+      SymmetricMatrix result = createResult();
+
+      try
+      {
+        long read = new ChunkedMatrixGenerator(chunkSize, executor, parallelism)
+                      .generate(source, length > 0 ? length : Long.MAX_VALUE, count, result);
+
+        if (length > 0 && read < length)
+        {
+          fail(ERROR_INVALID_INPUT_DATA, String.format("Not enough input values for length %d", length));
+        }
+
+        writeResult(result);
+      }
+      finally
+      {
+        closeResult(result);
+      }
+    }
+    catch (InvalidInputException e)
+    {
+      fail(ERROR_INVALID_INPUT_DATA, e.getLocalizedMessage());
+    }
+    finally
+    {
+      if (executor != null)
+      {
+        executor.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Read in the input, and solve the normal equations for its linear prediction
+   * coefficients rather than writing the matrix. The Cholesky solver generates the
+   * matrix with the selected generator and factors it in place. The Levinson solver
+   * only computes the autocorrelation of the input, with the lag sums, and solves
+   * the Toeplitz approximation of the matrix. The coefficients a[1] to a[c] are written, followed by
+   * the prediction error, as a line each in the text format, or as floats.
+   */
+  private static void solvePrediction() throws IOException
+  {
+    float[] input;
+
+    if (binaryInput)
+    {
+      FloatBuffer buffer = mapInputFile(inputFilePath);
+      sanitizeInputData(buffer);
+
+      input = new float[buffer.remaining()];
+      buffer.get(input);
+    }
+    else
+    {
+      input = parseInputFile(inputFilePath);
+    }
+
+    try
+    {
+      Prediction prediction;
+
+      if (SOLVER_LEVINSON.equals(solver))
+      {
+        prediction = PredictionSolver.levinson(PredictionSolver.lags(input, count, PRECISION_SINGLE.equals(precision)));
+
+        if (PRECISION_SINGLE.equals(precision))
+        {
+          System.err.println(String.format("Single precision error bound: %.3e per lag", PredictionSolver.lagErrorBound(input)));
+        }
+      }
+      else
+      {
+        MatrixGenerator generator = createGenerator(input.length);
+        SymmetricMatrix result = new PackedSymmetricMatrix(count + 1);
+
+        if (statistics)
+        {
+          generator = new InstrumentedMatrixGenerator(generator, System.err::println);
+        }
+
+        generator.generate(input, count, result);
+        prediction = PredictionSolver.cholesky(result);
+
+        if (PRECISION_SINGLE.equals(precision))
+        {
+          reportErrorBound(input);
+        }
+      }
+
+      writePrediction(prediction);
+    }
+    catch (InvalidInputException e)
+    {
+      fail(ERROR_INVALID_INPUT_DATA, e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Write the prediction coefficients and error out, in the text format as two lines,
+   * or otherwise as floats.
+   *
+   * @param prediction the prediction to write
+   */
+  private static void writePrediction(Prediction prediction) throws IOException
+  {
+    double[] coefficients = prediction.coefficients();
+    float[] values = new float[coefficients.length];
+
+    for (int i = 0; i < values.length; i++)
+    {
+      values[i] = (float)coefficients[i];
+    }
+
+    WritableByteChannel channel = openOutput();
+
+    try
+    {
+      MatrixWriter writer = new MatrixWriter(channel);
+
+      if (FORMAT_TEXT.equals(outputFormat))
+      {
+        writer.writeText(values, NUM_FRACTION_DIGITS);
+        writer.writeText(new float[] { (float)prediction.error() }, NUM_FRACTION_DIGITS);
+      }
+      else
+      {
+        writer.writeBinary(values);
+        writer.writeBinary(new float[] { (float)prediction.error() });
+      }
+    }
+    finally
+    {
+      if (outputFilePath != null)
+      {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Read samples from standard input, one per line, until it is closed, and keep the
+   * matrix for all of them up to date as each one arrives. The matrix is written out
+   * after every interval samples given by --stream, and once more for the final
+   * samples when the input ends. Each update takes work proportional to the count,
+   * however long the stream has been running.
+   */
+  private static void streamInput() throws IOException
+  {
+    IncrementalMatrixGenerator generator = new IncrementalMatrixGenerator(count);
+    SymmetricMatrix result = new PackedSymmetricMatrix(count + 1);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
+    WritableByteChannel channel = openOutput();
+
+    try
+    {
+      MatrixWriter writer = new MatrixWriter(channel);
+      String line;
+
+      while ((line = reader.readLine()) != null)
+      {
+        line = line.trim();
+
+        if (line.isEmpty())
+        {
+          continue;
+        }
+
+        float sample = 0.0f;
+
+        try
+        {
+          sample = Float.parseFloat(line);
+        }
+        catch (NumberFormatException e)
+        {
+          fail(ERROR_INVALID_INPUT_DATA, "Invalid value in input stream: " + line);
+        }
+
+        if (Float.isInfinite(sample) || Float.isNaN(sample))
+        {
+          fail(ERROR_INVALID_INPUT_DATA, "Invalid input data in input stream: " + Float.toString(sample));
+        }
+
+        generator.append(sample);
+
+        if (generator.length() % streamInterval == 0)
+        {
+          generator.matrix(result);
+          writeMatrix(writer, result, generator.length() > streamInterval);
+        }
+      }
+
+      if (generator.length() % streamInterval != 0 || generator.length() == 0)
+      {
+        generator.matrix(result);
+        writeMatrix(writer, result, generator.length() > streamInterval);
+      }
+    }
+    finally
+    {
+      if (outputFilePath != null)
+      {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Read in the input file with a column for each channel, and parse the
+   * contents, returning an array of float values for each channel.
+   *
+   * @param path the path to the file containing the input data
+   *
+   * @return an array of float values parsed from the file for each channel.
+   */
+  private static float[][] parseInputChannels(Path path) throws IOException
+  {
+    try
+    {
+      return SampleParser.parseChannels(path, length, channels);
+    }
+    catch (InvalidInputException e)
+    {
+      fail(ERROR_INVALID_INPUT_DATA, e.getLocalizedMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Read in the input file and parse the contents, returning an array of
+   * float values parsed from the file. The file is streamed through the
+   * parser, which stops after the first length values, and also checks
+   * that they are suitable.
+   *
+   * @param path the path to the file containing the input data
+   *
+   * @return an array of float values parsed from the file.
+   */
+  private static float[] parseInputFile(Path path) throws IOException
+  {
+    try
+    {
+      return SampleParser.parse(path, length);
+    }
+    catch (InvalidInputException e)
+    {
+      fail(ERROR_INVALID_INPUT_DATA, e.getLocalizedMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Memory map a binary sample file, returning a view of the first length
+   * samples without copying them.
+   *
+   * @param path the path to the sample file
+   *
+   * @return a buffer holding the input data.
+   */
+  private static FloatBuffer mapInputFile(Path path) throws IOException
+  {
+    FloatBuffer input = SampleFile.map(path);
+
+    if (length > input.limit())
+    {
+      fail(ERROR_INVALID_INPUT_DATA, String.format("Not enough input values for length %d", length));
+    }
+
+    input.limit(length);
+
+    return input;
+  }
+
+  /**
+   * Convert a text input file to a binary sample file.
+   *
+   * @param path the path to the text input file
+   * @param output the path to write the sample file to
+   */
+  private static void convertInputFile(Path path, Path output) throws IOException
+  {
+    if (path == null)
+    {
+      fail(ERROR_INVALID_ARGUMENT, "No input file path specified.");
+    }
+
+    if (!Files.exists(path))
+    {
+      fail(ERROR_INVALID_ARGUMENT, String.format("Input file does not exist: %s.", path.toAbsolutePath()));
+    }
+
+    try
+    {
+      long samples = SampleFile.convert(path, output);
+
+      System.err.println(String.format("Converted %d samples to %s", samples, output));
+    }
+    catch (NumberFormatException e)
+    {
+      fail(ERROR_INVALID_INPUT_DATA, "Invalid value in input file: " + e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Sanity check that the values in the input buffer are suitable.
+   *
+   * @param input the buffer of input data
+   */
+  private static void sanitizeInputData(FloatBuffer input)
+  {
+    for (int i = input.position(); i < input.limit(); i++)
+    {
+      float f = input.get(i);
+
+      if (Float.isInfinite(f) || Float.isNaN(f))
+      {
+        fail(ERROR_INVALID_INPUT_DATA, "Invalid input data in data file: " + Float.toString(f));
+      }
+    }
+  }
+
+  /**
+   * Create the matrix to hold the result. With --off-heap, this is memory mapped
+   * rather than on the heap. If the output is a packed binary file, the matrix is
+   * mapped straight onto that file, and otherwise onto a temporary file.
+   *
+   * @return the matrix, of size count + 1.
+   */
+  private static SymmetricMatrix createResult() throws IOException
+  {
+    if (!offHeap)
+    {
+      return new PackedSymmetricMatrix(count + 1);
+    }
+
+    if (isResultOutput())
+    {
+      return MappedSymmetricMatrix.create(outputFilePath, count + 1);
+    }
+
+    return MappedSymmetricMatrix.createTemporary(count + 1);
+  }
+
+  /**
+   * @return true if the result matrix is mapped onto the output file, so it doesn't
+   *         need writing out.
+   */
+  private static boolean isResultOutput()
+  {
+    return offHeap && outputFilePath != null && FORMAT_PACKED.equals(outputFormat);
+  }
+
+  /**
+   * Write out the result matrix, unless it is already held in the output file.
+   *
+   * @param result the result matrix
+   */
+  private static void writeResult(SymmetricMatrix result) throws IOException
+  {
+    if (!isResultOutput())
+    {
+      writeMatrix(result);
+    }
+  }
+
+  /**
+   * Close the result matrix if it is memory mapped, which writes it out to the
+   * output file or deletes its temporary file.
+   *
+   * @param result the result matrix
+   */
+  private static void closeResult(SymmetricMatrix result) throws IOException
+  {
+    if (result instanceof MappedSymmetricMatrix)
+    {
+      ((MappedSymmetricMatrix)result).close();
+    }
+  }
+
+  /**
+   * Write the matrix out in the selected output format, to standard output or
+   * the selected output file. Text output has one line per row, with values
+   * formatted to a fixed number of fraction digits. Binary output is raw
+   * little-endian floats, either the full matrix or its packed upper triangle.
+   * Several matrices are written one after the other, separated by an empty line
+   * in the text format.
+   *
+   * @param matrices the matrices to be written.
+   */
+  private static void writeMatrix(SymmetricMatrix... matrices) throws IOException
+  {
+    WritableByteChannel channel = openOutput();
+
+    try
+    {
+      MatrixWriter writer = new MatrixWriter(channel);
+
+      for (int i = 0; i < matrices.length; i++)
+      {
+        writeMatrix(writer, matrices[i], i > 0);
+      }
+    }
+    finally
+    {
+      if (outputFilePath != null)
+      {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Write a single matrix out in the selected output format.
+   *
+   * @param writer the writer for the output
+   * @param matrix the matrix to be written
+   * @param separate true if the matrix follows another, so needs separating from it
+   */
+  private static void writeMatrix(MatrixWriter writer, SymmetricMatrix matrix, boolean separate) throws IOException
+  {
+    switch (outputFormat)
+    {
+      case FORMAT_BINARY:
+      {
+        writer.writeBinary(matrix);
+        break;
+      }
+      case FORMAT_PACKED:
+      {
+        writer.writePacked(matrix);
+        break;
+      }
+      default:
+      {
+        if (separate)
+        {
+          writer.writeLine();
+        }
+
+        writer.writeText(matrix, NUM_FRACTION_DIGITS);
+        break;
+      }
+    }
+  }
+
+  /**
+   * Open the channel for the output, which is the selected output file, or
+   * standard output. Only the output file should be closed afterwards.
+   *
+   * @return the channel to write the output to.
+   */
+  private static WritableByteChannel openOutput() throws IOException
+  {
+    if (outputFilePath != null)
+    {
+      return FileChannel.open(outputFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    return new FileOutputStream(FileDescriptor.out).getChannel();
+  }
+
+  /**
+   * Print command line usage to the console.
+   */
+  private static void usage()
+  {
+    System.out.println("Usage: java -jar matrix.jar -c 4 -n 300 -f test.prn");
+    System.out.println("\t-c <count>");
+    System.out.println("\t-n <input length>");
+    System.out.println("\t-f <input file path>");
+    System.out.println("\t-g <generator> (" + generatorNames() + " or auto)");
+    System.out.println("\t-p (compute in parallel on all cores)");
+    System.out.println("\t-t <threads> (compute in parallel on the given number of threads)");
+    System.out.println("\t--input-format <text|binary> (format of the input file, text by default)");
+    System.out.println("\t--format <text|binary|packed> (format of the output, text by default)");
+    System.out.println("\t-o <output path> (write the output to a file rather than standard output)");
+    System.out.println("\t--channels <channels> (columns of a text input file, or interleaved binary samples)");
+    System.out.println("\t--cross (with --channels, write the block cross matrix of all the channels)");
+    System.out.println("\t--window <frame length> (write a matrix for each frame of the input)");
+    System.out.println("\t--hop <frame hop> (with --window, the samples between frames, the window by default)");
+    System.out.println("\t--chunk <chunk size> (stream the input in chunks, reading all of it unless -n is given)");
+    System.out.println("\t--off-heap (hold the matrix in a memory mapped file, written in place with --format packed -o)");
+    System.out.println("\t--precision <double|single> (accumulation precision, single uses -g vector and reports its error bound)");
+    System.out.println("\t--solve <cholesky|levinson> (write the linear prediction coefficients and error instead of the matrix)");
+    System.out.println("\t--cache <directory> (reuse the matrix for an input, count, generator and precision seen before)");
+    System.out.println("\t--cache-size <megabytes> (with --cache, evict the least recently used matrices past this size, 1024 by default)");
+    System.out.println("\t--explain (with -g auto, write the chosen generator and threads to standard error)");
+    System.out.println("\t--calibrate (with -g auto, measure the generators again rather than using the cached costs)");
+    System.out.println("\t--stats (write the time, operation counts and allocations to standard error)");
+    System.out.println();
+    System.out.println("Usage: java -jar matrix.jar -c 4 --stream 100 < samples.prn");
+    System.out.println("\t--stream <interval> (read samples from standard input, writing the matrix every interval samples)");
+    System.out.println();
+    System.out.println("Usage: java -jar matrix.jar --server 7070 -t 4");
+    System.out.println("\t--server <port> (handle requests on a loopback port, on -t threads)");
+    System.out.println();
+    System.out.println("Usage: java -jar matrix.jar --connect 7070 -c 4 -n 300 -f test.prn");
+    System.out.println("\t--connect <port> (send the request to a server, -f - sends -n samples from standard input)");
+    System.out.println();
+    System.out.println("Usage: java -jar matrix.jar -f test.prn --convert test.bin");
+    System.out.println("\t--convert <output path> (convert the text input file to a binary sample file)");
+    System.out.println();
+  }
+
+  /**
+   * Write the worst case difference of the single precision matrix from the double
+   * precision one to the error stream.
+   *
+   * @param input the input values
+   */
+  private static void reportErrorBound(float[] input)
+  {
+    System.err.println(String.format("Single precision error bound: %.3e per cell", VectorMatrixGenerator.errorBound(input, count)));
+  }
+
+  /**
+   * @return the names of the registered generators, for the usage.
+   */
+  private static String generatorNames()
+  {
+    List<String> names = new ArrayList<>();
+
+    for (MatrixGeneratorProvider provider : GeneratorRegistry.providers())
+    {
+      names.add(provider.name());
+    }
+
+    return String.join(", ", names);
+  }
+
+  /**
+   * Terminate the appliation on an unrecoverable error with a specified exit code.
+   *
+   * @param status an exit status integer
+   * @param msg an error to be written to the std error stream.
    */
   private static void fail(int status, String msg)
   {
@@ -266,12 +1586,58 @@ public class App
   private static int count = -1;
   private static int length = -1;
   private static Path inputFilePath;
-  private static boolean unoptimized;
+  private static String generatorName;
+  private static boolean parallel;
+  private static int threads = -1;
+  private static boolean binaryInput;
+  private static Path convertFilePath;
+  private static String outputFormat;
+  private static Path outputFilePath;
+  private static boolean statistics;
+  private static int channels = 1;
+  private static boolean cross;
+  private static int streamInterval = -1;
+  private static int window = -1;
+  private static int hop = -1;
+  private static int chunkSize = -1;
+  private static boolean offHeap;
+  private static int serverPort = -1;
+  private static int connectPort = -1;
+  private static boolean explain;
+  private static String precision;
+  private static String solver;
+  private static boolean calibrate;
+  private static GeneratorPlanner planner;
+  private static Path cacheDirectory;
+  private static int cacheSize = -1;
+  private static ResultCache resultCache;
+
+  static final int NUM_FRACTION_DIGITS = 6;
+
+  // The default --cache-size, in megabytes
+  private static final int DEFAULT_CACHE_SIZE = 1024;
+
+  // Formats for the --input-format and --format arguments
+  static final String FORMAT_TEXT = "text";
+  static final String FORMAT_BINARY = "binary";
+  static final String FORMAT_PACKED = "packed";
+
+  // Precisions for the --precision argument
+  private static final String PRECISION_DOUBLE = "double";
+  private static final String PRECISION_SINGLE = "single";
+
+  // Solvers for the --solve argument
+  private static final String SOLVER_CHOLESKY = "cholesky";
+  private static final String SOLVER_LEVINSON = "levinson";
 
-  private static final int NUM_FRACTION_DIGITS = 6;
+  // Generator names for the -g argument
+  static final String GENERATOR_OPTIMIZED = "optimized";
+  static final String GENERATOR_UNOPTIMIZED = "unoptimized";
+  private static final String GENERATOR_VECTOR = "vector";
+  private static final String GENERATOR_AUTO = "auto";
 
   // Error exit codes
-  private static final int ERROR_UNEXPECTED = -1;
-  private static final int ERROR_INVALID_ARGUMENT = 1;
-  private static final int ERROR_INVALID_INPUT_DATA = 2;
+  static final int ERROR_UNEXPECTED = -1;
+  static final int ERROR_INVALID_ARGUMENT = 1;
+  static final int ERROR_INVALID_INPUT_DATA = 2;
 }
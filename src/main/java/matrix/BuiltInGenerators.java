@@ -0,0 +1,129 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The providers for the generators in this package, registered in
+ * META-INF/services/matrix.MatrixGeneratorProvider.
+ */
+public final class BuiltInGenerators
+{
+  private BuiltInGenerators()
+  {
+  }
+
+  /**
+   * Provider for the {@link OptimizedMatrixGenerator}, the only one that can compute
+   * the matrix in parallel.
+   */
+  public static final class Optimized implements MatrixGeneratorProvider
+  {
+    @Override
+    public String name()
+    {
+      return "optimized";
+    }
+
+    @Override
+    public MatrixGenerator create(ForkJoinPool pool)
+    {
+      return new OptimizedMatrixGenerator(pool);
+    }
+
+    @Override
+    public boolean isParallel()
+    {
+      return true;
+    }
+  }
+
+  /**
+   * Provider for the {@link UnoptimizedMatrixGenerator}.
+   */
+  public static final class Unoptimized implements MatrixGeneratorProvider
+  {
+    @Override
+    public String name()
+    {
+      return "unoptimized";
+    }
+
+    @Override
+    public MatrixGenerator create(ForkJoinPool pool)
+    {
+      return new UnoptimizedMatrixGenerator();
+    }
+  }
+
+  /**
+   * Provider for the {@link PrefixSumMatrixGenerator}.
+   */
+  public static final class PrefixSum implements MatrixGeneratorProvider
+  {
+    @Override
+    public String name()
+    {
+      return "prefix";
+    }
+
+    @Override
+    public MatrixGenerator create(ForkJoinPool pool)
+    {
+      return new PrefixSumMatrixGenerator();
+    }
+  }
+
+  /**
+   * Provider for the {@link RecurrenceMatrixGenerator}.
+   */
+  public static final class Recurrence implements MatrixGeneratorProvider
+  {
+    @Override
+    public String name()
+    {
+      return "recurrence";
+    }
+
+    @Override
+    public MatrixGenerator create(ForkJoinPool pool)
+    {
+      return new RecurrenceMatrixGenerator();
+    }
+  }
+
+  /**
+   * Provider for the {@link FftMatrixGenerator}.
+   */
+  public static final class Fft implements MatrixGeneratorProvider
+  {
+    @Override
+    public String name()
+    {
+      return "fft";
+    }
+
+    @Override
+    public MatrixGenerator create(ForkJoinPool pool)
+    {
+      return new FftMatrixGenerator();
+    }
+  }
+
+  /**
+   * Provider for the {@link VectorMatrixGenerator}.
+   */
+  public static final class Vector implements MatrixGeneratorProvider
+  {
+    @Override
+    public String name()
+    {
+      return "vector";
+    }
+
+    @Override
+    public MatrixGenerator create(ForkJoinPool pool)
+    {
+      return new VectorMatrixGenerator();
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package matrix;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+/**
+ * A decorator for a matrix generator that looks each generate call up in a
+ * {@link ResultCache} first, keyed by a hash of the input values along with the
+ * count, and the generator's name and precision, and adds the matrices it generates
+ * to the cache. The vector generator's name is followed by its kernel, as the scalar
+ * and Vector API kernels add the lag sums in different orders, and a cache directory
+ * may be shared by JVMs running different kernels.
+ * <p>
+ * A hit copies the cached matrix into the result, which takes one pass over the
+ * packed cells, rather than the (c+1) * N multiplies and adds of generating it.
+ * Hashing the input takes one more pass over the input values on each call, so the
+ * cache only pays for itself when the same inputs come round again.
+ */
+public class CachedMatrixGenerator implements MatrixGenerator
+{
+  /**
+   * Create a cached generator.
+   *
+   * @param generator the generator to use on a miss
+   * @param name the name of the generator in the keys, such as its name in the
+   *        {@link GeneratorRegistry}
+   * @param cache the cache to look the matrices up in
+   */
+  public CachedMatrixGenerator(MatrixGenerator generator, String name, ResultCache cache)
+  {
+    this.generator = generator;
+    this.name = keyName(name, generator instanceof VectorMatrixGenerator);
+    this.precision = precision(generator);
+    this.cache = cache;
+  }
+
+  /**
+   * Copy the values in the matrix from the cache, or generate them with the wrapped
+   * generator and add them to the cache.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    ResultCache.Key key = key(ResultCache.hash(input, input.length), input.length, count);
+
+    if (!load(key, result))
+    {
+      generator.generate(input, count, result, workspace);
+      cache.put(key, result);
+    }
+  }
+
+  /**
+   * Copy the values in the matrix from the cache, or generate them from a buffer with
+   * the wrapped generator and add them to the cache.
+   *
+   * @param input a buffer of floating point values, from its position up to its limit
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(FloatBuffer input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    ResultCache.Key key = key(ResultCache.hash(input), input.remaining(), count);
+
+    if (!load(key, result))
+    {
+      generator.generate(input, count, result, workspace);
+      cache.put(key, result);
+    }
+  }
+
+  @Override
+  public OperationCount countOperations(int length, int count)
+  {
+    return generator.countOperations(length, count);
+  }
+
+  /**
+   * Get the name of the precision a generator accumulates its sums in, for the keys.
+   *
+   * @param generator the generator
+   *
+   * @return "single" or "double".
+   */
+  static String precision(MatrixGenerator generator)
+  {
+    boolean single = generator instanceof VectorMatrixGenerator && ((VectorMatrixGenerator)generator).isSinglePrecision();
+
+    return single ? "single" : "double";
+  }
+
+  /**
+   * Get the name of a generator for the keys, with the kernel after the vector
+   * generator's name, such as vector-512 or vector-scalar.
+   *
+   * @param name the name of the generator
+   * @param vector true if the generator is the vector generator
+   *
+   * @return the name for the keys.
+   */
+  static String keyName(String name, boolean vector)
+  {
+    if (!vector)
+    {
+      return name;
+    }
+
+    String kernel = VectorMatrixGenerator.kernel();
+
+    // "vector 512 bit" for the Vector API kernel, or "scalar".
+
+    return name + "-" + (kernel.startsWith("vector") ? kernel.replaceAll("[^0-9]", "") : kernel);
+  }
+
+  private ResultCache.Key key(long hash, int length, int count)
+  {
+    return new ResultCache.Key(hash, length, count, name, precision);
+  }
+
+  /**
+   * Copy a matrix from the cache into the result.
+   *
+   * @return true if it was in the cache.
+   */
+  private boolean load(ResultCache.Key key, SymmetricMatrix result)
+  {
+    MappedSymmetricMatrix cached = cache.get(key);
+
+    if (cached == null)
+    {
+      return false;
+    }
+
+    try
+    {
+      copy(cached, result);
+    }
+    finally
+    {
+      try
+      {
+        cached.close();
+      }
+      catch (IOException e)
+      {
+        // Nothing was written to it.
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Copy the cells of a mapped matrix into another matrix, in bulk if it is packed,
+   * as the layouts are the same.
+   */
+  private static void copy(MappedSymmetricMatrix from, SymmetricMatrix to)
+  {
+    if (to instanceof PackedSymmetricMatrix)
+    {
+      float[] values = ((PackedSymmetricMatrix)to).values();
+      int offset = 0;
+
+      for (FloatBuffer segment : from.segments())
+      {
+        int length = segment.remaining();
+
+        segment.get(values, offset, length);
+        offset += length;
+      }
+
+      return;
+    }
+
+    for (int row = 0; row < from.size(); row++)
+    {
+      for (int col = row; col < from.size(); col++)
+      {
+        to.set(row, col, from.get(row, col));
+      }
+    }
+  }
+
+  private final MatrixGenerator generator;
+  private final String name;
+  private final String precision;
+  private final ResultCache cache;
+}
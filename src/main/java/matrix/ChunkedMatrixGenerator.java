@@ -0,0 +1,264 @@
+package matrix;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A generator for inputs too large to hold in memory, or in a single array, which
+ * streams the samples from a {@link SampleSource} in fixed size chunks.
+ * <p>
+ * Each cell sums a product for every i from c to N-1, so the sum splits into a partial
+ * sum for each chunk of i, as long as the chunk also has the c samples before it. The
+ * partial sums for a chunk are found in the same way as the framed generator finds a
+ * frame, with the top cell of each diagonal summed in full and each cell below it
+ * adding the product entering its window and subtracting the one leaving it. They
+ * are kept in double precision, and added into the totals in chunk order, so the
+ * results don't depend on how many chunks are computed at once.
+ * <p>
+ * The chunks can be computed in parallel on an executor. The source is read on the
+ * calling thread, and at most the given number of chunks are held at once, so the
+ * memory used is about that many times chunk size + (c+1)^2, however long the input.
+ */
+public class ChunkedMatrixGenerator
+{
+  /**
+   * Create a generator that computes the chunks serially on the calling thread.
+   *
+   * @param chunkSize the number of samples in each chunk
+   */
+  public ChunkedMatrixGenerator(int chunkSize)
+  {
+    this(chunkSize, null, 1);
+  }
+
+  /**
+   * Create a generator that computes the chunks in parallel on the given executor.
+   *
+   * @param chunkSize the number of samples in each chunk
+   * @param executor the executor to run the chunks on, or null to run them serially
+   * @param parallelism the most chunks to hold at once, normally the executor's thread count
+   */
+  public ChunkedMatrixGenerator(int chunkSize, ExecutorService executor, int parallelism)
+  {
+    if (chunkSize <= 0)
+    {
+      throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+    }
+
+    if (parallelism <= 0)
+    {
+      throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+    }
+
+    this.chunkSize = chunkSize;
+    this.executor = executor;
+    this.parallelism = executor != null ? parallelism : 1;
+  }
+
+  /**
+   * Generate the matrix for the samples from a source, into a new packed symmetric
+   * matrix.
+   *
+   * @param source the source of the input samples
+   * @param length the most samples to read, or Long.MAX_VALUE to read them all
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the symmetric matrix, of size count + 1.
+   *
+   * @throws IOException if the source can't be read
+   * @throws InvalidInputException if a sample is not a valid finite number
+   * @throws InterruptedException if the thread is interrupted while waiting for a chunk
+   */
+  public SymmetricMatrix generate(SampleSource source, long length, int count) throws IOException, InvalidInputException, InterruptedException
+  {
+    SymmetricMatrix result = new PackedSymmetricMatrix(count + 1);
+
+    generate(source, length, count, result);
+
+    return result;
+  }
+
+  /**
+   * Generate the matrix for the samples from a source. The matrix is all zeros if
+   * there are no more than count samples.
+   *
+   * @param source the source of the input samples
+   * @param length the most samples to read, or Long.MAX_VALUE to read them all
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   *
+   * @return the number of samples read from the source.
+   *
+   * @throws IOException if the source can't be read
+   * @throws InvalidInputException if a sample is not a valid finite number
+   * @throws InterruptedException if the thread is interrupted while waiting for a chunk
+   */
+  public long generate(SampleSource source, long length, int count, SymmetricMatrix result) throws IOException, InvalidInputException, InterruptedException
+  {
+    if (count < 0)
+    {
+      throw new IllegalArgumentException("Invalid count: " + count);
+    }
+
+    double[] totals = new double[cellCount(count)];
+    ArrayDeque<Chunk> free = new ArrayDeque<>();
+    ArrayDeque<Future<Chunk>> running = new ArrayDeque<>();
+
+    // The first c samples only appear in the chunks as the samples before them.
+
+    float[] history = new float[count];
+    long read = source.read(history, 0, (int)Math.min(count, length));
+
+    if (read == count)
+    {
+      while (read < length)
+      {
+        Chunk chunk = free.poll();
+
+        if (chunk == null)
+        {
+          chunk = running.size() < parallelism ? new Chunk(count, chunkSize) : reduce(running.poll(), totals);
+        }
+
+        System.arraycopy(history, 0, chunk.samples, 0, count);
+
+        int samples = source.read(chunk.samples, count, (int)Math.min(chunkSize, length - read));
+
+        if (samples == 0)
+        {
+          break;
+        }
+
+        read += samples;
+        chunk.length = count + samples;
+        System.arraycopy(chunk.samples, samples, history, 0, count);
+
+        if (executor == null)
+        {
+          chunk.calculate(count);
+          free.add(chunk);
+          add(chunk, totals);
+        }
+        else
+        {
+          final Chunk task = chunk;
+
+          running.add(executor.submit(() -> task.calculate(count)));
+        }
+      }
+
+      while (!running.isEmpty())
+      {
+        reduce(running.poll(), totals);
+      }
+    }
+
+    int index = 0;
+
+    for (int d = 0; d <= count; d++)
+    {
+      for (int k = 0; k <= count - d; k++)
+      {
+        result.set(k, k + d, (float)totals[index++]);
+      }
+    }
+
+    return read;
+  }
+
+  /**
+   * Wait for a chunk to be computed, and add its partial sums into the totals.
+   *
+   * @param future the chunk's task
+   * @param totals the totals for every cell
+   *
+   * @return the chunk, for reuse.
+   */
+  private static Chunk reduce(Future<Chunk> future, double[] totals) throws InterruptedException
+  {
+    Chunk chunk = Tasks.get(future);
+
+    add(chunk, totals);
+
+    return chunk;
+  }
+
+  /**
+   * Add the partial sums of a chunk into the totals.
+   */
+  private static void add(Chunk chunk, double[] totals)
+  {
+    for (int i = 0; i < totals.length; i++)
+    {
+      totals[i] += chunk.sums[i];
+    }
+  }
+
+  /**
+   * @return the number of cells on and above the main diagonal for a count.
+   */
+  private static int cellCount(int count)
+  {
+    return PackedSymmetricMatrix.packedLength(count + 1);
+  }
+
+  /**
+   * A chunk of samples, preceded by the c samples before it, and its partial sums for
+   * each cell, diagonal by diagonal from the main diagonal.
+   */
+  private static final class Chunk
+  {
+    Chunk(int count, int chunkSize)
+    {
+      this.samples = new float[count + chunkSize];
+      this.sums = new double[cellCount(count)];
+    }
+
+    /**
+     * Calculate the partial sums for the chunk. The cell at row k of the diagonal
+     * with lag d sums x[m] * x[m-d] for m from c-k to length-1-k.
+     *
+     * @param count a count used to control the size of the matrix
+     *
+     * @return this chunk.
+     */
+    Chunk calculate(int count)
+    {
+      int index = 0;
+
+      for (int d = 0; d <= count; d++)
+      {
+        double value = 0.0;
+
+        for (int m = count; m < length; m++)
+        {
+          value += samples[m] * samples[m - d];
+        }
+
+        sums[index++] = value;
+
+        for (int k = 1; k <= count - d; k++)
+        {
+          int entering = count - k;
+          int leaving = length - k;
+
+          value += samples[entering] * samples[entering - d] - samples[leaving] * samples[leaving - d];
+
+          sums[index++] = value;
+        }
+      }
+
+      return this;
+    }
+
+    final float[] samples;
+    final double[] sums;
+    int length;
+  }
+
+  private final int chunkSize;
+  private final ExecutorService executor;
+  private final int parallelism;
+}
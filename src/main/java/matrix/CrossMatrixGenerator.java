@@ -0,0 +1,190 @@
+package matrix;
+
+/**
+ * A generator for the lagged cross matrix of a pair of series, where the cell at row k
+ * and column j is the sum of x[i-k] * y[i-j] for i from c to N-1, and for the block
+ * matrix of every pair of several series. With a single series this is the matrix of
+ * the other generators.
+ * <p>
+ * This uses the same diagonal strategy as the optimized generator. The cells along a
+ * diagonal with j - k = d all sum the products x[m+d] * y[m], over windows shifted by
+ * one from each other, so the products are found once per diagonal, along with their
+ * common sum, and each cell adds on just the products at the ends of its window. The
+ * diagonals below the main diagonal, with k - j = d, sum y[m+d] * x[m] in the same way.
+ * <p>
+ * The cross matrix for y and x is the transpose of the one for x and y, so the block
+ * matrix, with block (a, b) holding the cross matrix of series a and b, is symmetric.
+ * It is returned as a SymmetricMatrix, and the products for each lag of each ordered
+ * pair of series are computed just once, filling in both block (a, b) and its mirror
+ * image (b, a).
+ */
+public class CrossMatrixGenerator
+{
+  /**
+   * Generate the cross matrix for a pair of series.
+   *
+   * @param x the first series, whose values are offset by the row
+   * @param y the second series, of the same length, whose values are offset by the column
+   * @param count a count used to control the size of the matrix
+   *
+   * @return a two dimensional array of floats, of size count + 1, representing the values in the matrix.
+   */
+  public float[][] generate(float[] x, float[] y, int count)
+  {
+    checkLengths(x.length, y.length);
+
+    MatrixWorkspace workspace = new MatrixWorkspace(x.length, count);
+
+    double[] products = workspace.products();
+    double[] cells = workspace.lags();
+
+    float[][] result = new float[count + 1][count + 1];
+
+    for (int pos = 0; pos <= count; pos++)
+    {
+      // The diagonal on or above the main diagonal, with the column pos to the right.
+
+      multiply(x, y, pos, products);
+      calculateDiagonalCells(pos, x.length, count, products, cells);
+
+      for (int k = 0; k <= count - pos; k++)
+      {
+        result[k][k + pos] = (float)cells[k];
+      }
+
+      if (pos == 0)
+      {
+        continue;
+      }
+
+      // The diagonal below the main diagonal, with the row pos further down.
+
+      multiply(y, x, pos, products);
+      calculateDiagonalCells(pos, x.length, count, products, cells);
+
+      for (int j = 0; j <= count - pos; j++)
+      {
+        result[j + pos][j] = (float)cells[j];
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Generate the block matrix for several series, where block (a, b) is the cross
+   * matrix of series a and series b, at rows a * (count + 1) and columns b * (count + 1).
+   * The blocks on the main diagonal are the matrices for each series alone.
+   *
+   * @param series an array of floating point values for each series, all of the same length
+   * @param count a count used to control the size of each block
+   *
+   * @return the symmetric block matrix, of size series.length * (count + 1).
+   */
+  public SymmetricMatrix generateBlock(float[][] series, int count)
+  {
+    final int length = series.length > 0 ? series[0].length : 0;
+    final int block = count + 1;
+
+    for (float[] values : series)
+    {
+      checkLengths(length, values.length);
+    }
+
+    MatrixWorkspace workspace = new MatrixWorkspace(length, count);
+
+    double[] products = workspace.products();
+    double[] cells = workspace.lags();
+
+    SymmetricMatrix result = new PackedSymmetricMatrix(Math.multiplyExact(series.length, block));
+
+    for (int a = 0; a < series.length; a++)
+    {
+      for (int b = 0; b < series.length; b++)
+      {
+        // Each ordered pair gives the diagonals on and above the main diagonal of
+        // block (a, b), which are also those below it in block (b, a). The main
+        // diagonal is the same for both orders, so it is only done for a <= b.
+
+        for (int pos = a > b ? 1 : 0; pos <= count; pos++)
+        {
+          multiply(series[a], series[b], pos, products);
+          calculateDiagonalCells(pos, length, count, products, cells);
+
+          for (int k = 0; k <= count - pos; k++)
+          {
+            result.set(a * block + k, b * block + k + pos, (float)cells[k]);
+          }
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Peform the multiplications for a single diagonal, x[m+pos] * y[m] for each m.
+   *
+   * @param x the series offset by the lag
+   * @param y the other series
+   * @param pos the lag of the diagonal
+   * @param products the lookup table to receive the products, at least x.length long
+   */
+  private static void multiply(float[] x, float[] y, int pos, double[] products)
+  {
+    final int length = x.length;
+
+    for (int i = 0; i < length - pos; i++)
+    {
+      products[i] = x[pos + i] * y[i];
+    }
+  }
+
+  /**
+   * Generate the cells for a single diagonal, in the same way as the optimized
+   * generator does: the products common to every cell are added once, and then each
+   * cell adds on the products at the low and high ends of its window.
+   *
+   * @param pos the lag of the diagonal
+   * @param length the number of input values
+   * @param count the specified count ('c' in the specification)
+   * @param products the lookup table of products for this diagonal, filled in by multiply()
+   * @param cells the array to receive the cells along the diagonal, at least count + 1 long
+   */
+  private static void calculateDiagonalCells(int pos, int length, int count, double[] products, double[] cells)
+  {
+    int offset = count - pos;
+
+    double common = 0.0f;
+
+    for (int i = offset; i < length - count; i++)
+    {
+      common += products[i];
+    }
+
+    for (int low = 0; low <= count - pos; low++, offset--)
+    {
+      double sum = common;
+
+      for (int i = 0; i < low; i++)
+      {
+        sum += products[offset + i];
+      }
+
+      for (int i = 0; i < offset; i++)
+      {
+        sum += products[length - count + i];
+      }
+
+      cells[low] = sum;
+    }
+  }
+
+  private static void checkLengths(int length, int other)
+  {
+    if (length != other)
+    {
+      throw new IllegalArgumentException(String.format("Series lengths differ: %d and %d", length, other));
+    }
+  }
+}
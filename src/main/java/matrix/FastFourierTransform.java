@@ -0,0 +1,107 @@
+package matrix;
+
+/**
+ * An in-place iterative radix-2 complex FFT for a fixed power of two size. The
+ * twiddle factors and bit reversal permutation are computed once on construction,
+ * so an instance can be reused for any number of transforms of the same size.
+ */
+final class FastFourierTransform
+{
+  /**
+   * Create a transform of the given size.
+   *
+   * @param size the number of points in the transform, which must be a power of two
+   */
+  FastFourierTransform(int size)
+  {
+    if (size <= 0 || Integer.bitCount(size) != 1)
+    {
+      throw new IllegalArgumentException("Transform size must be a power of two: " + size);
+    }
+
+    this.size = size;
+
+    cos = new double[size / 2];
+    sin = new double[size / 2];
+
+    for (int i = 0; i < size / 2; i++)
+    {
+      double angle = -2.0 * Math.PI * i / size;
+
+      cos[i] = Math.cos(angle);
+      sin[i] = Math.sin(angle);
+    }
+
+    reversed = new int[size];
+
+    int bits = Integer.numberOfTrailingZeros(size);
+
+    for (int i = 0; i < size; i++)
+    {
+      reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+    }
+  }
+
+  /**
+   * @return the number of points in the transform.
+   */
+  int size()
+  {
+    return size;
+  }
+
+  /**
+   * Compute the forward transform of the complex values in place.
+   *
+   * @param re the real parts of the values
+   * @param im the imaginary parts of the values
+   */
+  void transform(double[] re, double[] im)
+  {
+    for (int i = 0; i < size; i++)
+    {
+      int j = reversed[i];
+
+      if (j > i)
+      {
+        double t = re[i];
+        re[i] = re[j];
+        re[j] = t;
+
+        t = im[i];
+        im[i] = im[j];
+        im[j] = t;
+      }
+    }
+
+    for (int half = 1; half < size; half <<= 1)
+    {
+      int step = size / (half << 1);
+
+      for (int start = 0; start < size; start += half << 1)
+      {
+        for (int k = 0; k < half; k++)
+        {
+          double wr = cos[k * step];
+          double wi = sin[k * step];
+
+          int a = start + k;
+          int b = a + half;
+
+          double tr = re[b] * wr - im[b] * wi;
+          double ti = re[b] * wi + im[b] * wr;
+
+          re[b] = re[a] - tr;
+          im[b] = im[a] - ti;
+          re[a] += tr;
+          im[a] += ti;
+        }
+      }
+    }
+  }
+
+  private final int size;
+  private final double[] cos;
+  private final double[] sin;
+  private final int[] reversed;
+}
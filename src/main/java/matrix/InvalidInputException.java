@@ -0,0 +1,19 @@
+package matrix;
+
+/**
+ * Thrown when the input data can't be used to generate the matrix, such as when
+ * there are too few values, or a value isn't a valid finite number. The message
+ * describes the problem, and is suitable for reporting directly to the user.
+ */
+public class InvalidInputException extends Exception
+{
+  /**
+   * @param message a description of the problem with the input
+   */
+  public InvalidInputException(String message)
+  {
+    super(message);
+  }
+
+  private static final long serialVersionUID = 1L;
+}
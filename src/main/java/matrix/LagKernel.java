@@ -0,0 +1,54 @@
+package matrix;
+
+/**
+ * The kernel for the lag sums of the {@link VectorMatrixGenerator}. This is the
+ * version for Java 8, which always uses the scalar {@link LagSums}. The jar holds a
+ * second version for Java 17 and later under META-INF/versions/17, which uses the
+ * jdk.incubator.vector module when it is added to the JVM.
+ */
+final class LagKernel
+{
+  private LagKernel()
+  {
+  }
+
+  /**
+   * Sum the products x[i] * x[i-lag] for i from 'from' up to 'to'.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   *
+   * @return the sum.
+   */
+  static double lagSum(float[] input, int from, int to, int lag)
+  {
+    return LagSums.lagSum(input, from, to, lag);
+  }
+
+  /**
+   * Sum the products x[i] * x[i-lag] for i from 'from' up to 'to', in single
+   * precision, with blocked pairwise summation.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   * @param stack a buffer for the pairwise partial sums, at least {@link LagSums#STACK_SIZE} long
+   *
+   * @return the sum.
+   */
+  static double lagSumSingle(float[] input, int from, int to, int lag, float[] stack)
+  {
+    return LagSums.lagSumSingle(input, from, to, lag, stack);
+  }
+
+  /**
+   * @return a description of the kernel in use.
+   */
+  static String describe()
+  {
+    return "scalar";
+  }
+}
@@ -0,0 +1,170 @@
+package matrix;
+
+/**
+ * Scalar kernel for the lag sums of the vector generator, which runs on any JVM.
+ * The sum is split across four independent accumulators, so that each add doesn't
+ * have to wait for the one before it, which gives the JIT's superword pass and the
+ * processor's out of order execution some parallelism to work with.
+ * <p>
+ * In single precision, the products are summed in blocks of {@link #BLOCK}, each
+ * across eight float accumulators, and the block sums are then added pairwise, so
+ * that no product passes through more than about BLOCK / 8 + log2(blocks) adds. This
+ * keeps the rounding error close to that of the double precision sums, where a plain
+ * float sum would pass each product through up to N adds.
+ */
+final class LagSums
+{
+  private LagSums()
+  {
+  }
+
+  /**
+   * Sum the products x[i] * x[i-lag] for i from 'from' up to 'to'. Each product is
+   * formed in single precision, as in the other generators, and summed in double
+   * precision.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   *
+   * @return the sum.
+   */
+  static double lagSum(float[] input, int from, int to, int lag)
+  {
+    double sum0 = 0.0, sum1 = 0.0, sum2 = 0.0, sum3 = 0.0;
+    int i = from;
+
+    for (; i + 3 < to; i += 4)
+    {
+      sum0 += input[i] * input[i - lag];
+      sum1 += input[i + 1] * input[i + 1 - lag];
+      sum2 += input[i + 2] * input[i + 2 - lag];
+      sum3 += input[i + 3] * input[i + 3 - lag];
+    }
+
+    for (; i < to; i++)
+    {
+      sum0 += input[i] * input[i - lag];
+    }
+
+    return (sum0 + sum1) + (sum2 + sum3);
+  }
+
+  /**
+   * Sum the products x[i] * x[i-lag] for i from 'from' up to 'to', in single
+   * precision, with blocked pairwise summation.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   * @param stack a buffer for the pairwise partial sums, at least {@link #STACK_SIZE} long
+   *
+   * @return the sum.
+   */
+  static double lagSumSingle(float[] input, int from, int to, int lag, float[] stack)
+  {
+    int depth = 0, blocks = 0;
+
+    for (int i = from; i < to; i += BLOCK)
+    {
+      depth = push(stack, depth, blocks++, blockSum(input, i, Math.min(i + BLOCK, to), lag));
+    }
+
+    return collapse(stack, depth);
+  }
+
+  /**
+   * Sum the products for up to a block of indices in single precision, across eight
+   * accumulators.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   *
+   * @return the sum.
+   */
+  static float blockSum(float[] input, int from, int to, int lag)
+  {
+    float sum0 = 0.0f, sum1 = 0.0f, sum2 = 0.0f, sum3 = 0.0f;
+    float sum4 = 0.0f, sum5 = 0.0f, sum6 = 0.0f, sum7 = 0.0f;
+    int i = from;
+
+    for (; i + 7 < to; i += 8)
+    {
+      sum0 += input[i] * input[i - lag];
+      sum1 += input[i + 1] * input[i + 1 - lag];
+      sum2 += input[i + 2] * input[i + 2 - lag];
+      sum3 += input[i + 3] * input[i + 3 - lag];
+      sum4 += input[i + 4] * input[i + 4 - lag];
+      sum5 += input[i + 5] * input[i + 5 - lag];
+      sum6 += input[i + 6] * input[i + 6 - lag];
+      sum7 += input[i + 7] * input[i + 7 - lag];
+    }
+
+    for (; i < to; i++)
+    {
+      sum0 += input[i] * input[i - lag];
+    }
+
+    return ((sum0 + sum1) + (sum2 + sum3)) + ((sum4 + sum5) + (sum6 + sum7));
+  }
+
+  /**
+   * Add the next block sum to the stack of pairwise partial sums. The stack holds a
+   * partial sum for each 1 bit in the number of blocks so far, from the largest group
+   * of blocks at the bottom, so adding a block carries up through the 1 bits at the
+   * bottom of the block's index, like a binary counter.
+   *
+   * @param stack the partial sums, at least {@link #STACK_SIZE} long
+   * @param depth the number of partial sums on the stack
+   * @param block the index of the block
+   * @param sum the block sum
+   *
+   * @return the new number of partial sums on the stack.
+   */
+  static int push(float[] stack, int depth, int block, float sum)
+  {
+    stack[depth++] = sum;
+
+    for (int b = block; (b & 1) == 1; b >>>= 1)
+    {
+      depth--;
+      stack[depth - 1] += stack[depth];
+    }
+
+    return depth;
+  }
+
+  /**
+   * Add up the partial sums left on the stack, from the smallest.
+   *
+   * @param stack the partial sums
+   * @param depth the number of partial sums on the stack
+   *
+   * @return the total.
+   */
+  static float collapse(float[] stack, int depth)
+  {
+    float sum = 0.0f;
+
+    while (depth > 0)
+    {
+      sum += stack[--depth];
+    }
+
+    return sum;
+  }
+
+  /**
+   * The number of products summed in each block in single precision.
+   */
+  static final int BLOCK = 128;
+
+  /**
+   * The size of the stack of pairwise partial sums, enough for any array.
+   */
+  static final int STACK_SIZE = 32;
+}
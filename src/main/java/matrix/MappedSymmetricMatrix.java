@@ -0,0 +1,256 @@
+package matrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A symmetric matrix stored off the heap, in a memory mapped file. The upper triangle
+ * is held row by row as little-endian floats, in the same layout as
+ * {@link PackedSymmetricMatrix}, so the file is the packed binary output format and
+ * can be written straight to its final destination.
+ * <p>
+ * A single mapping is limited to 2 GB, so larger matrices, such as for counts in the
+ * tens of thousands, are mapped in segments of {@link #SEGMENT_SIZE} values. The cells
+ * are only paged in as they are written, and paged out by the operating system, so
+ * they never take up heap space or need garbage collecting.
+ */
+public class MappedSymmetricMatrix implements SymmetricMatrix, Closeable
+{
+  private MappedSymmetricMatrix(Path path, int size, boolean temporary) throws IOException
+  {
+    this(path, size, temporary, FileChannel.MapMode.READ_WRITE);
+  }
+
+  private MappedSymmetricMatrix(Path path, int size, boolean temporary, FileChannel.MapMode mode) throws IOException
+  {
+    long length = packedLength(size);
+
+    this.path = path;
+    this.size = size;
+    this.temporary = temporary;
+    this.segments = new FloatBuffer[(int)((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+    this.mappings = new MappedByteBuffer[segments.length];
+
+    // The mappings stay valid after the channel is closed.
+
+    try (FileChannel channel = mode == FileChannel.MapMode.READ_ONLY
+                               ? FileChannel.open(path, StandardOpenOption.READ)
+                               : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                  StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      if (mode == FileChannel.MapMode.READ_ONLY && channel.size() != length * Float.BYTES)
+      {
+        throw new IOException(String.format("File %s does not hold a packed matrix of size %d", path, size));
+      }
+
+      for (int i = 0; i < segments.length; i++)
+      {
+        long offset = (long)i * SEGMENT_SIZE;
+        long values = Math.min(SEGMENT_SIZE, length - offset);
+
+        mappings[i] = channel.map(mode, offset * Float.BYTES, values * Float.BYTES);
+        segments[i] = mappings[i].order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+      }
+    }
+  }
+
+  /**
+   * Create a matrix of the given size in a file, with all values set to zero. Any
+   * existing file is replaced, and the file is left holding the packed matrix.
+   *
+   * @param path the path of the file to hold the matrix
+   * @param size the number of rows (and columns) in the matrix
+   *
+   * @return the matrix, which should be closed once it has been used.
+   *
+   * @throws IOException if the file can't be created and mapped
+   */
+  public static MappedSymmetricMatrix create(Path path, int size) throws IOException
+  {
+    return new MappedSymmetricMatrix(path, size, false);
+  }
+
+  /**
+   * Map an existing file holding a packed matrix of the given size, such as one
+   * written with the packed output format, for reading. The matrix can't be written
+   * to, so set throws a ReadOnlyBufferException.
+   *
+   * @param path the path of the file holding the matrix
+   * @param size the number of rows (and columns) in the matrix
+   *
+   * @return the matrix, which should be closed once it has been used.
+   *
+   * @throws IOException if the file can't be mapped, or is the wrong size
+   */
+  public static MappedSymmetricMatrix open(Path path, int size) throws IOException
+  {
+    return new MappedSymmetricMatrix(path, size, false, FileChannel.MapMode.READ_ONLY);
+  }
+
+  /**
+   * Create a matrix of the given size in a temporary file, which is deleted when the
+   * matrix is closed.
+   *
+   * @param size the number of rows (and columns) in the matrix
+   *
+   * @return the matrix, which must be closed once it has been used.
+   *
+   * @throws IOException if the file can't be created and mapped
+   */
+  public static MappedSymmetricMatrix createTemporary(int size) throws IOException
+  {
+    Path path = Files.createTempFile("matrix", ".bin");
+
+    try
+    {
+      return new MappedSymmetricMatrix(path, size, true);
+    }
+    catch (IOException | RuntimeException e)
+    {
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  /**
+   * Get the number of values needed to hold the upper triangle of a matrix, which
+   * unlike an array may be more than 2^31.
+   *
+   * @param size the number of rows (and columns) in the matrix
+   *
+   * @return the number of packed values.
+   */
+  public static long packedLength(int size)
+  {
+    if (size < 0)
+    {
+      throw new IllegalArgumentException("Matrix size must not be negative: " + size);
+    }
+
+    return (long)size * (size + 1) / 2;
+  }
+
+  /**
+   * Get the position of a cell in the packed values.
+   *
+   * @param row the row index of the cell
+   * @param col the column index of the cell
+   *
+   * @return the index of the cell in the packed values.
+   */
+  public long indexOf(int row, int col)
+  {
+    if (row > col)
+    {
+      int t = row;
+      row = col;
+      col = t;
+    }
+
+    if (row < 0 || col >= size)
+    {
+      throw new IndexOutOfBoundsException(String.format("Cell (%d, %d) is outside a matrix of size %d", row, col, size));
+    }
+
+    // Rows before this one hold size, size - 1, ... size - row + 1 values.
+
+    return (long)row * size - (long)row * (row - 1) / 2 + (col - row);
+  }
+
+  /**
+   * Get the segments holding the packed values, in order. Each one holds
+   * SEGMENT_SIZE values, apart from the last.
+   *
+   * @return the read only float buffers over the segments.
+   */
+  public FloatBuffer[] segments()
+  {
+    FloatBuffer[] views = new FloatBuffer[segments.length];
+
+    for (int i = 0; i < segments.length; i++)
+    {
+      views[i] = segments[i].asReadOnlyBuffer();
+    }
+
+    return views;
+  }
+
+  /**
+   * @return the path of the file holding the matrix.
+   */
+  public Path path()
+  {
+    return path;
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  @Override
+  public float get(int row, int col)
+  {
+    long index = indexOf(row, col);
+
+    return segments[(int)(index >>> SEGMENT_SHIFT)].get((int)(index & SEGMENT_MASK));
+  }
+
+  @Override
+  public void set(int row, int col, float value)
+  {
+    long index = indexOf(row, col);
+
+    segments[(int)(index >>> SEGMENT_SHIFT)].put((int)(index & SEGMENT_MASK), value);
+  }
+
+  /**
+   * Write any changed values out to the file.
+   */
+  public void flush()
+  {
+    for (MappedByteBuffer mapping : mappings)
+    {
+      mapping.force();
+    }
+  }
+
+  /**
+   * Write any changed values out to the file, or delete it if it is temporary. The
+   * matrix must not be used afterwards.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    if (temporary)
+    {
+      Files.deleteIfExists(path);
+    }
+    else
+    {
+      flush();
+    }
+  }
+
+  /**
+   * The number of values in each mapped segment, 1 GB of floats.
+   */
+  public static final int SEGMENT_SIZE = 1 << 28;
+
+  private static final int SEGMENT_SHIFT = 28;
+  private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  private final Path path;
+  private final int size;
+  private final boolean temporary;
+  private final FloatBuffer[] segments;
+  private final MappedByteBuffer[] mappings;
+}
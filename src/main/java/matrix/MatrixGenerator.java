@@ -1,9 +1,25 @@
 package matrix;
 
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 /**
  * Interface for an implementation of the algorithm for an array of input data
  * and a specified count. Allows different implementations of the algorithm to
  * be swapped out in the main program.
+ * <p>
+ * The matrix is always symmetric, so implementations only compute the cells on
+ * and above the main diagonal, and write them to a {@link SymmetricMatrix}.
+ * Callers that make many generate calls can pass in their own result matrix and
+ * a reusable {@link MatrixWorkspace}, so that the calls don't allocate anything.
+ * The input can also be given as a FloatBuffer, such as a memory mapped
+ * {@link SampleFile}.
  */
 public interface MatrixGenerator
 {
@@ -15,5 +31,204 @@ public interface MatrixGenerator
    *
    * @return a two dimensional array of floats, representing the values in the matrix.
    */
-  float[][] generate(float[] input, int count);
+  default float[][] generate(float[] input, int count)
+  {
+    return generateSymmetric(input, count).toArray();
+  }
+
+  /**
+   * Generate the values in the matrix for the given values and count, into a new
+   * packed symmetric matrix.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the symmetric matrix, of size count + 1.
+   */
+  default SymmetricMatrix generateSymmetric(float[] input, int count)
+  {
+    SymmetricMatrix result = new PackedSymmetricMatrix(count + 1);
+
+    generate(input, count, result);
+
+    return result;
+  }
+
+  /**
+   * Generate the values in the matrix for the given values and count.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   */
+  default void generate(float[] input, int count, SymmetricMatrix result)
+  {
+    generate(input, count, result, new MatrixWorkspace(input.length, count));
+  }
+
+  /**
+   * Generate the values in the matrix for the given values and count, using the
+   * scratch buffers of the given workspace rather than allocating new ones.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace);
+
+  /**
+   * Generate the matrices for several counts on the same input, such as when
+   * choosing a model order. The default implementation generates each one in turn,
+   * sharing a workspace sized for the largest count. Generators whose per diagonal
+   * work depends only on the lag override this to do that work once for all the
+   * counts.
+   *
+   * @param input an array of floating point values
+   * @param counts the counts to generate the matrices for, in any order
+   *
+   * @return the symmetric matrices, of size count + 1, in the same order as the counts.
+   */
+  default SymmetricMatrix[] generateAll(float[] input, int[] counts)
+  {
+    SymmetricMatrix[] results = new SymmetricMatrix[counts.length];
+    MatrixWorkspace workspace = MatrixWorkspace.forCounts(input.length, counts);
+
+    for (int i = 0; i < counts.length; i++)
+    {
+      results[i] = new PackedSymmetricMatrix(counts[i] + 1);
+      generate(input, counts[i], results[i], workspace);
+    }
+
+    return results;
+  }
+
+  /**
+   * Generate a matrix for each of several independent channels of input, with the
+   * same count. The channels are computed concurrently as tasks on the executor, so
+   * its number of threads bounds the concurrency. Workspaces are reused from task to
+   * task, so no more are allocated than there are tasks running at once.
+   *
+   * @param channels an array of floating point values for each channel
+   * @param count a count used to control the size of the matrices
+   * @param executor the executor to run the channels on, or null to run them in turn
+   *        on the calling thread
+   *
+   * @return the symmetric matrices, of size count + 1, in the same order as the channels.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting for the channels
+   */
+  default SymmetricMatrix[] generateChannels(float[][] channels, int count, ExecutorService executor) throws InterruptedException
+  {
+    int maxLength = 0;
+
+    for (float[] channel : channels)
+    {
+      maxLength = Math.max(maxLength, channel.length);
+    }
+
+    final int length = maxLength;
+
+    SymmetricMatrix[] results = new SymmetricMatrix[channels.length];
+
+    for (int i = 0; i < channels.length; i++)
+    {
+      results[i] = new PackedSymmetricMatrix(count + 1);
+    }
+
+    if (executor == null)
+    {
+      MatrixWorkspace workspace = new MatrixWorkspace(length, count);
+
+      for (int i = 0; i < channels.length; i++)
+      {
+        generate(channels[i], count, results[i], workspace);
+      }
+
+      return results;
+    }
+
+    Queue<MatrixWorkspace> workspaces = new ConcurrentLinkedQueue<>();
+    List<Callable<Void>> tasks = new ArrayList<>(channels.length);
+
+    for (int i = 0; i < channels.length; i++)
+    {
+      final int channel = i;
+
+      tasks.add(() ->
+      {
+        MatrixWorkspace workspace = workspaces.poll();
+
+        if (workspace == null)
+        {
+          workspace = new MatrixWorkspace(length, count);
+        }
+
+        generate(channels[channel], count, results[channel], workspace);
+        workspaces.offer(workspace);
+
+        return null;
+      });
+    }
+
+    for (Future<Void> future : executor.invokeAll(tasks))
+    {
+      Tasks.get(future);
+    }
+
+    return results;
+  }
+
+  /**
+   * Generate the values in the matrix for the values in a buffer, into a new packed
+   * symmetric matrix.
+   *
+   * @param input a buffer of floating point values, from its position up to its limit
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the symmetric matrix, of size count + 1.
+   */
+  default SymmetricMatrix generateSymmetric(FloatBuffer input, int count)
+  {
+    SymmetricMatrix result = new PackedSymmetricMatrix(count + 1);
+
+    generate(input, count, result, new MatrixWorkspace(input.remaining(), count));
+
+    return result;
+  }
+
+  /**
+   * Generate the values in the matrix for the values in a buffer. The default
+   * implementation copies the values into an array, generators that can read them
+   * directly from the buffer override this to avoid the copy.
+   *
+   * @param input a buffer of floating point values, from its position up to its limit
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  default void generate(FloatBuffer input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    float[] values = new float[input.remaining()];
+
+    input.duplicate().get(values);
+
+    generate(values, count, result, workspace);
+  }
+
+  /**
+   * Count the floating point operations and memory traffic of a generate call for
+   * the given input length and count. Implementations work this out from the bounds
+   * of their loops, so that the generate calls themselves don't pay for counting.
+   * The default implementation returns null, for generators that don't count them.
+   *
+   * @param length the number of input values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the operations a generate call performs, or null if they are not known.
+   */
+  default OperationCount countOperations(int length, int count)
+  {
+    return null;
+  }
 }
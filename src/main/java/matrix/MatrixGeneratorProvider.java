@@ -0,0 +1,35 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A named implementation of the algorithm, as selected with the -g switch. Providers
+ * are found through the {@link GeneratorRegistry}, which loads them with ServiceLoader,
+ * so further implementations can be added by listing their providers in a
+ * META-INF/services/matrix.MatrixGeneratorProvider file on the class path.
+ */
+public interface MatrixGeneratorProvider
+{
+  /**
+   * @return the name of the implementation, as given to the -g switch.
+   */
+  String name();
+
+  /**
+   * Create a generator.
+   *
+   * @param pool the pool to compute the matrix on, or null to compute it serially.
+   *        Implementations that can't run in parallel ignore it.
+   *
+   * @return the generator.
+   */
+  MatrixGenerator create(ForkJoinPool pool);
+
+  /**
+   * @return true if the generator uses the pool passed to create.
+   */
+  default boolean isParallel()
+  {
+    return false;
+  }
+}
@@ -0,0 +1,668 @@
+package matrix;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A long running server that generates matrices for requests on a loopback socket, so
+ * that a pipeline making many requests pays for JVM startup, class loading and JIT
+ * compilation only once, rather than on every run of the application.
+ * <p>
+ * A request is a list of command line arguments, one per line, ended by an empty line.
+ * It takes the -c, -n, -f, -g, -u, --input-format and --format arguments of the
+ * application, and also --inline, which sends the samples after the empty line, one per line, in
+ * place of an input file. The input file path must be absolute, as the server's working
+ * directory is not the client's. The response is a status line, either "OK" followed by
+ * the matrix in the requested format, or "ERROR", the application's exit code and a
+ * message. The connection is then closed.
+ * <p>
+ * Requests are handled on a fixed pool of worker threads. The server stops accepting
+ * connections while the workers and a queue of the same size are full, so further
+ * clients wait in the socket's backlog rather than piling up in memory. Each worker
+ * keeps its own workspace and result buffer, grown to the largest request it has seen,
+ * so requests of a similar size don't allocate them again.
+ */
+public class MatrixServer implements Closeable
+{
+  /**
+   * Create a server listening on the given loopback port.
+   *
+   * @param port the port to listen on, or 0 for any free port
+   * @param threads the number of worker threads
+   *
+   * @throws IOException if the socket can't be bound
+   */
+  public MatrixServer(int port, int threads) throws IOException
+  {
+    if (threads <= 0)
+    {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
+    }
+
+    this.server = ServerSocketChannel.open();
+    this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+    this.executor = Executors.newFixedThreadPool(threads);
+    this.permits = new Semaphore(threads * 2);
+  }
+
+  /**
+   * @return the port the server is listening on.
+   */
+  public int port()
+  {
+    return server.socket().getLocalPort();
+  }
+
+  /**
+   * Accept and handle requests until the server is closed.
+   *
+   * @throws IOException if the socket fails
+   * @throws InterruptedException if the thread is interrupted while waiting for a worker
+   */
+  public void serve() throws IOException, InterruptedException
+  {
+    while (true)
+    {
+      permits.acquire();
+
+      SocketChannel client;
+
+      try
+      {
+        client = server.accept();
+      }
+      catch (ClosedChannelException e)
+      {
+        permits.release();
+        return;
+      }
+
+      executor.execute(() ->
+      {
+        try
+        {
+          handle(client);
+        }
+        finally
+        {
+          permits.release();
+        }
+      });
+    }
+  }
+
+  /**
+   * Stop accepting requests. Requests already accepted are still completed.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    server.close();
+    executor.shutdown();
+  }
+
+  /**
+   * Turn an application command line into the arguments of a request, so that the
+   * usual command line can be sent to a server with --connect. The --connect and -o
+   * arguments are handled by the client, and are left out, as are -p and -t, as the
+   * server's workers compute each matrix serially. Input file paths are made absolute,
+   * and -f - is left out, as its samples are sent inline. Arguments that select a mode
+   * the server doesn't support are rejected, rather than being ignored.
+   *
+   * @param args the command line arguments
+   *
+   * @return the arguments for the request.
+   *
+   * @throws IllegalArgumentException if an argument can't be sent to a server
+   */
+  public static List<String> requestArguments(String[] args)
+  {
+    List<String> arguments = new ArrayList<>();
+
+    for (int i = 0; i < args.length; i++)
+    {
+      switch (args[i])
+      {
+        case "--connect":
+        case "-o":
+        case "-t":
+        {
+          i++;
+          break;
+        }
+        case "-p":
+        {
+          break;
+        }
+        case "-f":
+        {
+          if (i + 1 < args.length && !"-".equals(args[i + 1]))
+          {
+            arguments.add(args[i]);
+            arguments.add(Paths.get(args[i + 1]).toAbsolutePath().toString());
+          }
+
+          i++;
+          break;
+        }
+        case "--channels":
+        case "--cross":
+        case "--stream":
+        case "--window":
+        case "--hop":
+        case "--chunk":
+        case "--off-heap":
+        case "--precision":
+        case "--solve":
+        case "--cache":
+        case "--cache-size":
+        case "--stats":
+        case "--explain":
+        case "--calibrate":
+        case "--convert":
+        case "--server":
+        {
+          throw new IllegalArgumentException("Argument can't be sent to a server: " + args[i]);
+        }
+        default:
+        {
+          arguments.add(args[i]);
+          break;
+        }
+      }
+    }
+
+    return arguments;
+  }
+
+  /**
+   * Send a request to a server, and copy the matrix in the response to an output
+   * stream, or the error message to an error stream.
+   *
+   * @param port the loopback port the server is listening on
+   * @param arguments the command line arguments for the request
+   * @param samples the samples to send inline, or null if the request names an input file
+   * @param output the stream to copy the matrix to
+   * @param errors the stream to write an error message to
+   *
+   * @return 0 if the matrix was generated, otherwise the application's exit code for the error.
+   *
+   * @throws IOException if the server can't be reached
+   */
+  public static int request(int port, List<String> arguments, float[] samples, OutputStream output, PrintStream errors) throws IOException
+  {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port))
+    {
+      StringBuilder request = new StringBuilder();
+
+      for (String argument : arguments)
+      {
+        request.append(argument).append('\n');
+      }
+
+      if (samples != null)
+      {
+        request.append(INLINE).append('\n');
+      }
+
+      request.append('\n');
+
+      OutputStream out = socket.getOutputStream();
+      out.write(request.toString().getBytes(StandardCharsets.UTF_8));
+
+      if (samples != null)
+      {
+        StringBuilder lines = new StringBuilder();
+
+        for (float sample : samples)
+        {
+          lines.append(Float.toString(sample)).append('\n');
+        }
+
+        out.write(lines.toString().getBytes(StandardCharsets.US_ASCII));
+      }
+
+      out.flush();
+
+      InputStream in = socket.getInputStream();
+      String status = readLine(in);
+
+      if (status == null)
+      {
+        throw new IOException("No response from the server");
+      }
+
+      if (!status.startsWith(STATUS_ERROR))
+      {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+
+        while ((read = in.read(buffer)) >= 0)
+        {
+          output.write(buffer, 0, read);
+        }
+
+        output.flush();
+
+        return 0;
+      }
+
+      // "ERROR <code> <message>"
+
+      String[] parts = status.split(" ", 3);
+
+      errors.println(parts.length > 2 ? parts[2] : status);
+
+      return parts.length > 1 ? Integer.parseInt(parts[1]) : App.ERROR_UNEXPECTED;
+    }
+  }
+
+  /**
+   * Handle a single request, writing the response and closing the connection.
+   *
+   * @param client the connection for the request
+   */
+  private void handle(SocketChannel client)
+  {
+    try (Socket socket = client.socket())
+    {
+      socket.setSoTimeout(READ_TIMEOUT);
+
+      BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      Request request;
+      SymmetricMatrix result;
+
+      try
+      {
+        request = Request.parse(reader);
+        result = generate(request, reader);
+      }
+      catch (IllegalArgumentException e)
+      {
+        writeStatus(client, STATUS_ERROR + " " + App.ERROR_INVALID_ARGUMENT + " " + e.getLocalizedMessage());
+        return;
+      }
+      catch (InvalidInputException | IOException e)
+      {
+        writeStatus(client, STATUS_ERROR + " " + App.ERROR_INVALID_INPUT_DATA + " " + e.getLocalizedMessage());
+        return;
+      }
+      catch (RuntimeException e)
+      {
+        writeStatus(client, STATUS_ERROR + " " + App.ERROR_UNEXPECTED + " " + e);
+        return;
+      }
+
+      writeStatus(client, STATUS_OK);
+
+      MatrixWriter writer = new MatrixWriter(client);
+
+      switch (request.format)
+      {
+        case App.FORMAT_BINARY:
+        {
+          writer.writeBinary(result);
+          break;
+        }
+        case App.FORMAT_PACKED:
+        {
+          writer.writePacked(result);
+          break;
+        }
+        default:
+        {
+          writer.writeText(result, App.NUM_FRACTION_DIGITS);
+          break;
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      // The client has gone away, so there is no one to tell.
+    }
+  }
+
+  /**
+   * Read in the input for a request and generate its matrix, using the worker's
+   * scratch buffers.
+   *
+   * @param request the request
+   * @param reader the reader for the rest of the request, holding any inline samples
+   *
+   * @return the matrix, which is only valid until the worker's next request.
+   */
+  private SymmetricMatrix generate(Request request, BufferedReader reader) throws IOException, InvalidInputException
+  {
+    Scratch buffers = scratch.get();
+    SymmetricMatrix result = buffers.result(request.count + 1);
+    MatrixWorkspace workspace = buffers.workspace(request.length, request.count);
+    MatrixGenerator generator = App.createGenerator(request.generator, request.length, request.count, null);
+
+    if (generator == null)
+    {
+      throw new IllegalArgumentException("Unknown generator: " + request.generator);
+    }
+
+    if (request.inline)
+    {
+      float[] samples = buffers.samples(request.length);
+
+      for (int i = 0; i < request.length; i++)
+      {
+        String line = reader.readLine();
+
+        if (line == null)
+        {
+          throw new InvalidInputException(String.format("Not enough input values for length %d", request.length));
+        }
+
+        try
+        {
+          samples[i] = Float.parseFloat(line);
+        }
+        catch (NumberFormatException e)
+        {
+          throw new InvalidInputException("Invalid value in input stream: " + line);
+        }
+
+        checkFinite(samples[i]);
+      }
+
+      generator.generate(FloatBuffer.wrap(samples, 0, request.length), request.count, result, workspace);
+    }
+    else if (request.binaryInput)
+    {
+      FloatBuffer input = SampleFile.map(request.path);
+
+      if (request.length > input.limit())
+      {
+        throw new InvalidInputException(String.format("Not enough input values for length %d", request.length));
+      }
+
+      input.limit(request.length);
+
+      for (int i = 0; i < request.length; i++)
+      {
+        checkFinite(input.get(i));
+      }
+
+      generator.generate(input, request.count, result, workspace);
+    }
+    else
+    {
+      generator.generate(SampleParser.parse(request.path, request.length), request.count, result, workspace);
+    }
+
+    return result;
+  }
+
+  /**
+   * Check that a sample is finite.
+   */
+  private static void checkFinite(float sample) throws InvalidInputException
+  {
+    if (Float.isInfinite(sample) || Float.isNaN(sample))
+    {
+      throw new InvalidInputException("Invalid input data in data file: " + Float.toString(sample));
+    }
+  }
+
+  /**
+   * Write the status line of a response.
+   */
+  private static void writeStatus(SocketChannel client, String status) throws IOException
+  {
+    ByteBuffer bytes = ByteBuffer.wrap((status.replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8));
+
+    while (bytes.hasRemaining())
+    {
+      client.write(bytes);
+    }
+  }
+
+  /**
+   * Read a line from a stream a byte at a time, so that nothing after it is consumed.
+   *
+   * @return the line, or null at the end of the stream.
+   */
+  private static String readLine(InputStream in) throws IOException
+  {
+    StringBuilder line = new StringBuilder();
+    int b;
+
+    while ((b = in.read()) >= 0 && b != '\n')
+    {
+      line.append((char)b);
+    }
+
+    return b < 0 && line.length() == 0 ? null : line.toString();
+  }
+
+  /**
+   * The parameters of a request.
+   */
+  private static final class Request
+  {
+    /**
+     * Read the arguments of a request, up to the empty line that ends them.
+     *
+     * @param reader the reader for the request
+     *
+     * @return the request.
+     *
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    static Request parse(BufferedReader reader) throws IOException
+    {
+      Request request = new Request();
+      String argument;
+
+      while ((argument = reader.readLine()) != null && !argument.isEmpty())
+      {
+        switch (argument)
+        {
+          case "-c":
+          {
+            request.count = parsePositive("Count", value(reader, argument));
+            break;
+          }
+          case "-n":
+          {
+            request.length = parsePositive("Length", value(reader, argument));
+            break;
+          }
+          case "-f":
+          {
+            request.path = Paths.get(value(reader, argument));
+            break;
+          }
+          case "-g":
+          {
+            request.generator = value(reader, argument);
+            break;
+          }
+          case "-u":
+          {
+            request.generator = App.GENERATOR_UNOPTIMIZED;
+            break;
+          }
+          case "--input-format":
+          {
+            request.binaryInput = App.FORMAT_BINARY.equals(value(reader, argument));
+            break;
+          }
+          case "--format":
+          {
+            request.format = value(reader, argument);
+            break;
+          }
+          case INLINE:
+          {
+            request.inline = true;
+            break;
+          }
+          default:
+          {
+            throw new IllegalArgumentException("Unknown request argument: " + argument);
+          }
+        }
+      }
+
+      if (request.count == -1)
+      {
+        throw new IllegalArgumentException("Count argument not specified.");
+      }
+
+      if (request.length == -1)
+      {
+        throw new IllegalArgumentException("No input length specified");
+      }
+
+      if (!request.inline)
+      {
+        if (request.path == null)
+        {
+          throw new IllegalArgumentException("No input file path specified.");
+        }
+
+        if (!request.path.isAbsolute() || !Files.exists(request.path))
+        {
+          throw new IllegalArgumentException(String.format("Input file does not exist: %s.", request.path));
+        }
+      }
+
+      if (!App.FORMAT_TEXT.equals(request.format) && !App.FORMAT_BINARY.equals(request.format)
+          && !App.FORMAT_PACKED.equals(request.format))
+      {
+        throw new IllegalArgumentException("Unknown output format: " + request.format);
+      }
+
+      return request;
+    }
+
+    /**
+     * Read the value line following an argument.
+     */
+    private static String value(BufferedReader reader, String argument) throws IOException
+    {
+      String value = reader.readLine();
+
+      if (value == null || value.isEmpty())
+      {
+        throw new IllegalArgumentException("Missing value for request argument: " + argument);
+      }
+
+      return value;
+    }
+
+    /**
+     * Parse a positive number.
+     */
+    private static int parsePositive(String name, String value)
+    {
+      try
+      {
+        int number = Integer.parseInt(value);
+
+        if (number <= 0)
+        {
+          throw new IllegalArgumentException(name + " argument must be positive");
+        }
+
+        return number;
+      }
+      catch (NumberFormatException e)
+      {
+        throw new IllegalArgumentException(name + " argument is not a valid number: " + value);
+      }
+    }
+
+    int count = -1;
+    int length = -1;
+    Path path;
+    boolean inline;
+    boolean binaryInput;
+    String generator = App.GENERATOR_OPTIMIZED;
+    String format = App.FORMAT_TEXT;
+  }
+
+  /**
+   * The scratch buffers of a worker thread, grown as needed for each request.
+   */
+  private static final class Scratch
+  {
+    MatrixWorkspace workspace(int length, int count)
+    {
+      if (workspace == null || workspace.length() < length || workspace.count() < count)
+      {
+        workspace = new MatrixWorkspace(Math.max(length, workspace == null ? 0 : workspace.length()),
+                                        Math.max(count, workspace == null ? 0 : workspace.count()));
+      }
+
+      return workspace;
+    }
+
+    float[] samples(int length)
+    {
+      if (samples.length < length)
+      {
+        samples = new float[length];
+      }
+
+      return samples;
+    }
+
+    SymmetricMatrix result(int size)
+    {
+      int length = PackedSymmetricMatrix.packedLength(size);
+
+      if (values.length < length)
+      {
+        values = new float[length];
+      }
+
+      return new PackedSymmetricMatrix(size, values);
+    }
+
+    private MatrixWorkspace workspace;
+    private float[] samples = new float[0];
+    private float[] values = new float[0];
+  }
+
+  private final ServerSocketChannel server;
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+  private static final String INLINE = "--inline";
+  private static final String STATUS_OK = "OK";
+  private static final String STATUS_ERROR = "ERROR";
+
+  private static final int BACKLOG = 256;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Time to wait for a client to send its request, in milliseconds.
+  private static final int READ_TIMEOUT = 30000;
+}
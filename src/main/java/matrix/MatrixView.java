@@ -0,0 +1,312 @@
+package matrix;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read only view of the matrix for an input and count, which computes cells only
+ * when they are read, for callers that only need a few rows, or a band near the main
+ * diagonal.
+ * <p>
+ * The cells on the diagonal with lag d sum the products x[m] * x[m-d] over windows
+ * shifted by one from each other, so each cell differs from the one above it by the
+ * product entering its window from among the first c samples, less the one leaving it
+ * from among the last c. The view sums the top and bottom cell of each diagonal in
+ * full when it is created, which takes about (c+1) * N multiplies and adds, and keeps
+ * just those and the first and last c samples, O(c) values in all. A cell is then
+ * found by walking to it from the nearer end of its diagonal, taking at most c/2 steps,
+ * and a band of diagonals is found with one step per cell.
+ * <p>
+ * Optionally, whole diagonals are kept in a bounded cache once one of their cells has
+ * been read, so that reading the rest of them takes constant time. With the cache,
+ * the view must not be used by more than one thread at the same time. It can't be
+ * written to, so set throws an UnsupportedOperationException.
+ */
+public class MatrixView implements SymmetricMatrix
+{
+  /**
+   * Create a view of the matrix for the given values and count, with no cache.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   */
+  public MatrixView(float[] input, int count)
+  {
+    this(input, count, 0);
+  }
+
+  /**
+   * Create a view of the matrix for the given values and count, which caches up to the
+   * given number of diagonals, evicting the least recently used.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param cachedDiagonals the most diagonals to cache, or 0 for no cache
+   */
+  public MatrixView(float[] input, int count, int cachedDiagonals)
+  {
+    if (count < 0)
+    {
+      throw new IllegalArgumentException("Invalid count: " + count);
+    }
+
+    if (cachedDiagonals < 0)
+    {
+      throw new IllegalArgumentException("Invalid cache size: " + cachedDiagonals);
+    }
+
+    final int length = input.length;
+
+    this.count = count;
+    this.empty = length <= count;
+    this.head = new float[count];
+    this.tail = new float[count];
+    this.top = new double[count + 1];
+    this.bottom = new double[count + 1];
+
+    if (!empty)
+    {
+      System.arraycopy(input, 0, head, 0, count);
+      System.arraycopy(input, length - count, tail, 0, count);
+
+      for (int d = 0; d <= count; d++)
+      {
+        // The top cell sums x[m] * x[m-d] for m from c to N-1, and the bottom cell,
+        // at row c-d, for m from d to N-1-c+d.
+
+        double sum = 0.0;
+
+        for (int m = count; m < length; m++)
+        {
+          sum += input[m] * input[m - d];
+        }
+
+        top[d] = sum;
+
+        double shifted = sum;
+
+        for (int k = 1; k <= count - d; k++)
+        {
+          shifted += step(d, k);
+        }
+
+        bottom[d] = shifted;
+      }
+    }
+
+    this.cache = cachedDiagonals == 0 ? null : new LinkedHashMap<Integer, double[]>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest)
+      {
+        return size() > cachedDiagonals;
+      }
+
+      private static final long serialVersionUID = 1L;
+    };
+  }
+
+  @Override
+  public int size()
+  {
+    return count + 1;
+  }
+
+  /**
+   * Get the value of a cell, computing it if it isn't cached.
+   *
+   * @param row the row index of the cell
+   * @param col the column index of the cell
+   *
+   * @return the value at (row, col), which is the same as the value at (col, row).
+   */
+  @Override
+  public float get(int row, int col)
+  {
+    if (row > col)
+    {
+      int t = row;
+      row = col;
+      col = t;
+    }
+
+    if (row < 0 || col > count)
+    {
+      throw new IndexOutOfBoundsException(String.format("Cell (%d, %d) is outside a matrix of size %d", row, col, count + 1));
+    }
+
+    final int d = col - row;
+
+    if (cache != null)
+    {
+      return (float)diagonal(d)[row];
+    }
+
+    return (float)cell(d, row);
+  }
+
+  /**
+   * The view is read only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void set(int row, int col, float value)
+  {
+    throw new UnsupportedOperationException("Matrix view is read only");
+  }
+
+  /**
+   * Get the values of a row of the matrix.
+   *
+   * @param k the index of the row
+   *
+   * @return the values of the row, one for each column.
+   */
+  public float[] row(int k)
+  {
+    float[] values = new float[count + 1];
+
+    for (int j = 0; j <= count; j++)
+    {
+      values[j] = get(k, j);
+    }
+
+    return values;
+  }
+
+  /**
+   * Get the cells within a given distance of the main diagonal, diagonal by diagonal.
+   * Each diagonal is walked from the top, with one step per cell.
+   *
+   * @param width the number of diagonals above the main diagonal to include
+   *
+   * @return an array for each diagonal up to the width, from the main diagonal, where
+   *         element k of the array for diagonal d is the value at (k, k+d).
+   */
+  public float[][] band(int width)
+  {
+    width = Math.min(width, count);
+
+    float[][] band = new float[width + 1][];
+
+    for (int d = 0; d <= width; d++)
+    {
+      band[d] = new float[count - d + 1];
+
+      double value = empty ? 0.0 : top[d];
+
+      for (int k = 0; k <= count - d; k++)
+      {
+        if (k > 0 && !empty)
+        {
+          value += step(d, k);
+        }
+
+        band[d][k] = (float)value;
+      }
+    }
+
+    return band;
+  }
+
+  /**
+   * Get the cells of a diagonal from the cache, computing and caching them if they
+   * are not there.
+   *
+   * @param d the lag of the diagonal
+   *
+   * @return the cells of the diagonal, from the top.
+   */
+  private double[] diagonal(int d)
+  {
+    double[] cells = cache.get(d);
+
+    if (cells == null)
+    {
+      cells = new double[count - d + 1];
+
+      double value = empty ? 0.0 : top[d];
+
+      for (int k = 0; k <= count - d; k++)
+      {
+        if (k > 0 && !empty)
+        {
+          value += step(d, k);
+        }
+
+        cells[k] = value;
+      }
+
+      cache.put(d, cells);
+    }
+
+    return cells;
+  }
+
+  /**
+   * Compute a cell from the nearer end of its diagonal.
+   *
+   * @param d the lag of the diagonal
+   * @param k the row of the cell
+   *
+   * @return the value of the cell.
+   */
+  private double cell(int d, int k)
+  {
+    if (empty)
+    {
+      return 0.0;
+    }
+
+    final int last = count - d;
+
+    if (k <= last - k)
+    {
+      double value = top[d];
+
+      for (int i = 1; i <= k; i++)
+      {
+        value += step(d, i);
+      }
+
+      return value;
+    }
+
+    double value = bottom[d];
+
+    for (int i = last; i > k; i--)
+    {
+      value -= step(d, i);
+    }
+
+    return value;
+  }
+
+  /**
+   * Get the change from the cell at row k-1 to the cell at row k on a diagonal. The
+   * window moves back by one, so the product for m = c-k enters it, from the first c
+   * samples, and the one for m = N-k leaves it, from the last c samples.
+   *
+   * @param d the lag of the diagonal
+   * @param k the row of the cell, from 1 to c-d
+   *
+   * @return the difference of the two products.
+   */
+  private double step(int d, int k)
+  {
+    // Both are at index c-k of the samples kept from their end of the input.
+
+    final int i = count - k;
+
+    return head[i] * head[i - d] - tail[i] * tail[i - d];
+  }
+
+  private final int count;
+  private final boolean empty;
+  private final float[] head;
+  private final float[] tail;
+  private final double[] top;
+  private final double[] bottom;
+  private final Map<Integer, double[]> cache;
+}
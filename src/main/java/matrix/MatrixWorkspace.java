@@ -0,0 +1,186 @@
+package matrix;
+
+/**
+ * Reusable scratch space for the generators, sized for a maximum input length and
+ * count. Passing the same workspace, along with the same result matrix, to repeated
+ * generate calls means that once each buffer has been allocated on first use, the
+ * serial generators don't allocate anything more.
+ * <p>
+ * A workspace holds mutable state, so it must not be shared by generate calls that
+ * run at the same time.
+ */
+public class MatrixWorkspace
+{
+  /**
+   * Create a workspace for inputs up to the given length, and counts up to the given
+   * count. The buffers are allocated lazily, as each generator only needs some of them.
+   *
+   * @param length the maximum number of input values
+   * @param count the maximum count
+   */
+  public MatrixWorkspace(int length, int count)
+  {
+    if (length < 0 || count < 0)
+    {
+      throw new IllegalArgumentException(String.format("Invalid workspace size: length %d, count %d", length, count));
+    }
+
+    this.length = length;
+    this.count = count;
+  }
+
+  /**
+   * Create a workspace for generating the matrices for several counts.
+   *
+   * @param length the maximum number of input values
+   * @param counts the counts, of which the largest sets the workspace count
+   *
+   * @return the workspace.
+   */
+  static MatrixWorkspace forCounts(int length, int[] counts)
+  {
+    int count = 0;
+
+    for (int c : counts)
+    {
+      if (c < 0)
+      {
+        throw new IllegalArgumentException("Invalid count: " + c);
+      }
+
+      count = Math.max(count, c);
+    }
+
+    return new MatrixWorkspace(length, count);
+  }
+
+  /**
+   * @return the maximum number of input values this workspace can be used for.
+   */
+  public int length()
+  {
+    return length;
+  }
+
+  /**
+   * @return the maximum count this workspace can be used for.
+   */
+  public int count()
+  {
+    return count;
+  }
+
+  /**
+   * Check that the workspace is large enough for a generate call.
+   *
+   * @param length the number of input values
+   * @param count the count
+   */
+  void check(int length, int count)
+  {
+    if (length > this.length || count > this.count)
+    {
+      throw new IllegalArgumentException(String.format("Workspace for length %d, count %d is too small for length %d, count %d",
+                                                       this.length, this.count, length, count));
+    }
+  }
+
+  /**
+   * @return a buffer of length + 1 doubles, for the per diagonal products or running sums.
+   */
+  double[] products()
+  {
+    if (products == null)
+    {
+      products = new double[length + 1];
+    }
+
+    return products;
+  }
+
+  /**
+   * @return a buffer of count + 1 doubles, for per lag values.
+   */
+  double[] lags()
+  {
+    if (lags == null)
+    {
+      lags = new double[count + 1];
+    }
+
+    return lags;
+  }
+
+  /**
+   * @return a second buffer of count + 1 doubles, for per cell edge corrections.
+   */
+  double[] corrections()
+  {
+    if (corrections == null)
+    {
+      corrections = new double[count + 1];
+    }
+
+    return corrections;
+  }
+
+  /**
+   * @return a buffer for the pairwise partial sums of the single precision lag sums.
+   */
+  float[] partialSums()
+  {
+    if (partialSums == null)
+    {
+      partialSums = new float[LagSums.STACK_SIZE];
+    }
+
+    return partialSums;
+  }
+
+  /**
+   * Get a transform of the given size, along with buffers for its real and imaginary
+   * parts, which are available through real() and imaginary() afterwards.
+   *
+   * @param size the number of points in the transform
+   *
+   * @return the transform.
+   */
+  FastFourierTransform transform(int size)
+  {
+    if (transform == null || transform.size() != size)
+    {
+      transform = new FastFourierTransform(size);
+      real = new double[size];
+      imaginary = new double[size];
+    }
+
+    return transform;
+  }
+
+  /**
+   * @return the buffer for the real parts of the last transform.
+   */
+  double[] real()
+  {
+    return real;
+  }
+
+  /**
+   * @return the buffer for the imaginary parts of the last transform.
+   */
+  double[] imaginary()
+  {
+    return imaginary;
+  }
+
+  private final int length;
+  private final int count;
+
+  private double[] products;
+  private double[] lags;
+  private double[] corrections;
+  private float[] partialSums;
+  private FastFourierTransform transform;
+  private double[] real;
+  private double[] imaginary;
+}
@@ -0,0 +1,445 @@
+package matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+
+/**
+ * Writes a matrix to a channel, either as text or as raw binary floats, through a
+ * single reusable byte buffer.
+ * <p>
+ * The text format has one line per row, with the values separated by spaces and
+ * formatted with a fixed number of fraction digits. The output is identical to
+ * formatting each value with NumberFormat for the default locale. The common case
+ * of a finite value of moderate size is formatted directly into the buffer, by
+ * rounding its exact binary value half-even, as NumberFormat does, so it needs no
+ * allocation. Anything else falls back on NumberFormat.
+ * <p>
+ * The binary formats write little-endian 32 bit floats with no header, either the
+ * full matrix row by row, or only the packed upper triangle in the same layout as
+ * {@link PackedSymmetricMatrix}. Both can be memory mapped by downstream tools.
+ */
+public class MatrixWriter
+{
+  /**
+   * Create a writer for a channel. The channel is not closed by the writer.
+   *
+   * @param channel the channel to write to
+   */
+  public MatrixWriter(WritableByteChannel channel)
+  {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    this.charset = Charset.defaultCharset();
+    this.format = NumberFormat.getInstance();
+    this.newLine = System.lineSeparator().getBytes(charset);
+
+    // The fast path writes ASCII digits and symbols directly, so it can only be used
+    // when the locale's number format is made up of those.
+
+    boolean simple = false;
+
+    if (format instanceof DecimalFormat)
+    {
+      DecimalFormat decimal = (DecimalFormat)format;
+      DecimalFormatSymbols symbols = decimal.getDecimalFormatSymbols();
+
+      simple = symbols.getZeroDigit() == '0'
+            && symbols.getMinusSign() < 0x80
+            && symbols.getDecimalSeparator() < 0x80
+            && symbols.getGroupingSeparator() < 0x80
+            && decimal.getPositivePrefix().isEmpty()
+            && decimal.getPositiveSuffix().isEmpty()
+            && decimal.getNegativePrefix().equals(String.valueOf(symbols.getMinusSign()))
+            && decimal.getNegativeSuffix().isEmpty();
+
+      minusSign = (byte)symbols.getMinusSign();
+      decimalSeparator = (byte)symbols.getDecimalSeparator();
+      groupingSeparator = (byte)symbols.getGroupingSeparator();
+      groupingSize = decimal.isGroupingUsed() ? decimal.getGroupingSize() : 0;
+    }
+
+    this.fast = simple;
+  }
+
+  /**
+   * Write the full matrix as text, with each value formatted with the given number
+   * of fraction digits.
+   *
+   * @param matrix the matrix to write
+   * @param digits the number of fraction digits for each value
+   */
+  public void writeText(SymmetricMatrix matrix, int digits) throws IOException
+  {
+    format.setMinimumFractionDigits(digits);
+    format.setMaximumFractionDigits(digits);
+
+    final int size = matrix.size();
+
+    for (int i = 0; i < size; i++)
+    {
+      for (int j = 0; j < size; j++)
+      {
+        appendValue(matrix.get(i, j), digits);
+
+        if (j < size - 1)
+        {
+          buffer.put((byte)' ');
+        }
+      }
+
+      appendBytes(newLine);
+    }
+
+    flush();
+  }
+
+  /**
+   * Write a row of values as a line of text, formatted in the same way as the cells
+   * of a matrix.
+   *
+   * @param values the values to write
+   * @param digits the number of fraction digits for each value
+   */
+  public void writeText(float[] values, int digits) throws IOException
+  {
+    format.setMinimumFractionDigits(digits);
+    format.setMaximumFractionDigits(digits);
+
+    for (int i = 0; i < values.length; i++)
+    {
+      appendValue(values[i], digits);
+
+      if (i < values.length - 1)
+      {
+        buffer.put((byte)' ');
+      }
+    }
+
+    appendBytes(newLine);
+    flush();
+  }
+
+  /**
+   * Write an empty line, such as to separate matrices written as text.
+   */
+  public void writeLine() throws IOException
+  {
+    appendBytes(newLine);
+    flush();
+  }
+
+  /**
+   * Write the full matrix as raw little-endian floats, row by row.
+   *
+   * @param matrix the matrix to write
+   */
+  public void writeBinary(SymmetricMatrix matrix) throws IOException
+  {
+    final int size = matrix.size();
+
+    for (int i = 0; i < size; i++)
+    {
+      for (int j = 0; j < size; j++)
+      {
+        ensureRemaining(Float.BYTES);
+        buffer.putFloat(matrix.get(i, j));
+      }
+    }
+
+    flush();
+  }
+
+  /**
+   * Write a row of values as raw little-endian floats.
+   *
+   * @param values the values to write
+   */
+  public void writeBinary(float[] values) throws IOException
+  {
+    for (float value : values)
+    {
+      ensureRemaining(Float.BYTES);
+      buffer.putFloat(value);
+    }
+
+    flush();
+  }
+
+  /**
+   * Write the upper triangle of the matrix as raw little-endian floats, row by row
+   * from the main diagonal, in the same layout as PackedSymmetricMatrix.
+   *
+   * @param matrix the matrix to write
+   */
+  public void writePacked(SymmetricMatrix matrix) throws IOException
+  {
+    if (matrix instanceof PackedSymmetricMatrix)
+    {
+      // Copy the packed values across in bulk.
+
+      PackedSymmetricMatrix packed = (PackedSymmetricMatrix)matrix;
+      float[] values = packed.values();
+      int length = PackedSymmetricMatrix.packedLength(packed.size());
+
+      for (int offset = 0; offset < length; )
+      {
+        ensureRemaining(Float.BYTES);
+
+        int n = Math.min(buffer.remaining() / Float.BYTES, length - offset);
+        FloatBuffer floats = buffer.asFloatBuffer();
+
+        floats.put(values, offset, n);
+        buffer.position(buffer.position() + n * Float.BYTES);
+        offset += n;
+      }
+    }
+    else if (matrix instanceof MappedSymmetricMatrix)
+    {
+      // Copy the mapped segments across in bulk, a buffer at a time.
+
+      for (FloatBuffer segment : ((MappedSymmetricMatrix)matrix).segments())
+      {
+        while (segment.hasRemaining())
+        {
+          ensureRemaining(Float.BYTES);
+
+          int n = Math.min(buffer.remaining() / Float.BYTES, segment.remaining());
+          FloatBuffer floats = buffer.asFloatBuffer();
+          FloatBuffer values = segment.duplicate();
+
+          values.limit(values.position() + n);
+          floats.put(values);
+          segment.position(segment.position() + n);
+          buffer.position(buffer.position() + n * Float.BYTES);
+        }
+      }
+    }
+    else
+    {
+      final int size = matrix.size();
+
+      for (int i = 0; i < size; i++)
+      {
+        for (int j = i; j < size; j++)
+        {
+          ensureRemaining(Float.BYTES);
+          buffer.putFloat(matrix.get(i, j));
+        }
+      }
+    }
+
+    flush();
+  }
+
+  /**
+   * Write out anything left in the buffer to the channel.
+   */
+  public void flush() throws IOException
+  {
+    buffer.flip();
+
+    while (buffer.hasRemaining())
+    {
+      channel.write(buffer);
+    }
+
+    buffer.clear();
+  }
+
+  /**
+   * Append a single value, formatted with the given number of fraction digits, with
+   * the fast path where it applies.
+   *
+   * @param value the value to append
+   * @param digits the number of fraction digits
+   */
+  private void appendValue(float value, int digits) throws IOException
+  {
+    ensureRemaining(MAX_FAST_CELL_LENGTH);
+
+    if (!fast || digits > MAX_FAST_DIGITS || !appendFixed(value, digits))
+    {
+      appendBytes(format.format(value).getBytes(charset));
+    }
+  }
+
+  /**
+   * Format a value with a fixed number of fraction digits directly into the buffer.
+   * The float is m * 2^e exactly, so the value scaled by 10^digits is m * 10^digits
+   * * 2^e, which is found exactly with integer arithmetic and rounded half-even.
+   *
+   * @param value the value to format
+   * @param digits the number of fraction digits
+   *
+   * @return false if the value is outside the range handled here, and nothing was written.
+   */
+  private boolean appendFixed(float value, int digits)
+  {
+    int bits = Float.floatToRawIntBits(value);
+    int biased = (bits >>> 23) & 0xff;
+
+    if (biased == 0xff)
+    {
+      // Infinity and NaN.
+      return false;
+    }
+
+    long mantissa = bits & 0x7fffff;
+
+    if (biased != 0)
+    {
+      mantissa |= 1 << 23;
+    }
+    else
+    {
+      biased = 1;
+    }
+
+    int exponent = biased - 127 - 23;
+    long scaled = mantissa * POWERS_OF_TEN[digits];
+    long rounded;
+
+    if (exponent >= 0)
+    {
+      if (64 - Long.numberOfLeadingZeros(scaled) + exponent > MAX_FAST_BITS)
+      {
+        // Large values, which NumberFormat only gives 17 significant digits for.
+        return false;
+      }
+
+      rounded = scaled << exponent;
+    }
+    else if (-exponent >= 63)
+    {
+      // Less than half of the last digit.
+      rounded = 0;
+    }
+    else
+    {
+      int shift = -exponent;
+      long remainder = scaled & ((1L << shift) - 1);
+      long half = 1L << (shift - 1);
+
+      rounded = scaled >>> shift;
+
+      if (remainder > half || (remainder == half && (rounded & 1) != 0))
+      {
+        rounded++;
+      }
+    }
+
+    // NumberFormat keeps the sign of negative values, even when they round to zero.
+
+    if (bits < 0)
+    {
+      buffer.put(minusSign);
+    }
+
+    long integer = rounded / POWERS_OF_TEN[digits];
+    long fraction = rounded % POWERS_OF_TEN[digits];
+
+    appendInteger(integer);
+
+    if (digits > 0)
+    {
+      buffer.put(decimalSeparator);
+
+      for (int d = digits - 1; d >= 0; d--)
+      {
+        buffer.put((byte)('0' + (fraction / POWERS_OF_TEN[d]) % 10));
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Write the digits of a non-negative integer, with grouping separators.
+   */
+  private void appendInteger(long value)
+  {
+    int start = buffer.position();
+
+    // Write the digits backwards, then reverse them in place.
+
+    int count = 0;
+
+    do
+    {
+      if (groupingSize > 0 && count > 0 && count % groupingSize == 0)
+      {
+        buffer.put(groupingSeparator);
+      }
+
+      buffer.put((byte)('0' + value % 10));
+      value /= 10;
+      count++;
+    }
+    while (value > 0);
+
+    for (int i = start, j = buffer.position() - 1; i < j; i++, j--)
+    {
+      byte t = buffer.get(i);
+      buffer.put(i, buffer.get(j));
+      buffer.put(j, t);
+    }
+  }
+
+  /**
+   * Write bytes into the buffer, flushing it first if they don't fit.
+   */
+  private void appendBytes(byte[] bytes) throws IOException
+  {
+    for (int offset = 0; offset < bytes.length; )
+    {
+      ensureRemaining(1);
+
+      int n = Math.min(buffer.remaining(), bytes.length - offset);
+
+      buffer.put(bytes, offset, n);
+      offset += n;
+    }
+  }
+
+  /**
+   * Flush the buffer if it has less than the given number of bytes free.
+   */
+  private void ensureRemaining(int bytes) throws IOException
+  {
+    if (buffer.remaining() < bytes)
+    {
+      flush();
+    }
+  }
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer;
+  private final Charset charset;
+  private final NumberFormat format;
+  private final byte[] newLine;
+  private final boolean fast;
+
+  private byte minusSign;
+  private byte decimalSeparator;
+  private byte groupingSeparator;
+  private int groupingSize;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Limits of the fast formatting path. Values stay below 2^MAX_FAST_BITS once scaled,
+  // so they fit in a long, and have at most 17 significant digits as NumberFormat gives.
+  private static final int MAX_FAST_DIGITS = 9;
+  private static final int MAX_FAST_BITS = 56;
+  private static final int MAX_FAST_CELL_LENGTH = 64;
+
+  private static final long[] POWERS_OF_TEN = {
+    1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+  };
+}
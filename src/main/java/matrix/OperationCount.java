@@ -0,0 +1,67 @@
+package matrix;
+
+/**
+ * The number of floating point adds and multiplies performed by a generate call,
+ * along with the number of bytes of memory it reads and writes. Subtractions are
+ * counted as adds and divisions as multiplies. The bytes are the array elements
+ * loaded and stored by the kernel's loops, taking no account of caching, so they
+ * are a measure of the memory traffic rather than of the working set.
+ */
+public final class OperationCount
+{
+  /**
+   * Create a count of operations.
+   *
+   * @param adds the number of floating point adds
+   * @param multiplies the number of floating point multiplies
+   * @param bytes the number of bytes read and written
+   */
+  public OperationCount(long adds, long multiplies, long bytes)
+  {
+    this.adds = adds;
+    this.multiplies = multiplies;
+    this.bytes = bytes;
+  }
+
+  /**
+   * @return the number of floating point adds.
+   */
+  public long adds()
+  {
+    return adds;
+  }
+
+  /**
+   * @return the number of floating point multiplies.
+   */
+  public long multiplies()
+  {
+    return multiplies;
+  }
+
+  /**
+   * @return the total number of floating point operations.
+   */
+  public long flops()
+  {
+    return adds + multiplies;
+  }
+
+  /**
+   * @return the number of bytes read and written.
+   */
+  public long bytes()
+  {
+    return bytes;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%d adds, %d multiplies, %d bytes", adds, multiplies, bytes);
+  }
+
+  private final long adds;
+  private final long multiplies;
+  private final long bytes;
+}
@@ -1,127 +1,285 @@
 package matrix;
 
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * A matrix generator implementation that provides some performance optimizations over
  * the unoptimized version. This uses the fact that several cells in the matrix rely
  * on performing numerous additions and multiplies in common with other cells. This
  * attempts to minimize the number of multiplies and adds of the same values.
+ * <p>
+ * The diagonals of the matrix are independent of each other, so they can optionally
+ * be computed in parallel on a fork/join pool. Each diagonal is always computed by
+ * the same code in the same order, so the parallel results are identical to the
+ * serial ones. The serial mode takes its products lookup table from the workspace,
+ * while the parallel mode allocates one per diagonal, as they are computed at the
+ * same time.
  */
 public class OptimizedMatrixGenerator implements MatrixGenerator
 {
+  /**
+   * Create a generator that computes the diagonals serially on the calling thread.
+   */
+  public OptimizedMatrixGenerator()
+  {
+    this(null);
+  }
+
+  /**
+   * Create a generator that computes the diagonals in parallel on the given pool.
+   *
+   * @param pool the fork/join pool to run the diagonals on, or null to run serially
+   */
+  public OptimizedMatrixGenerator(ForkJoinPool pool)
+  {
+    this.pool = pool;
+  }
+
   /**
    * Generate the values contained in the matrix by working through the cells diagonally
-   * from bottom left to top right.
+   * from the top left to the top right. Only the diagonals on and above the main diagonal
+   * are computed, the ones below it are their mirror images.
    *
    * @param input an array of floating point values
    * @param count a count used to control the size of the matrix
-   *
-   * @return a two dimensional array of floats, representing the values in the matrix.
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
    */
   @Override
-  public float[][] generate(float[] input, int count)
+  public void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
   {
-    float[][] matrix = new float[count+1][count+1];
-
-    // Note that the following loops could potentially be run in parallel across
-    // several cores to speed things up further...
+    workspace.check(input.length, count);
 
-    for (int row = count; row >= 0; row--)
+    if (pool != null)
     {
-      // Starting from bottom left, and moving up, generate the values in these cells
-      // diagonally down towards the bottom right...
-
-      // *
-      // * *
-      // * * *
-      // * * * *
-      // * * * * *
-
-      calculateDiagonalCells(row, 0, input, count, matrix);
+      pool.invoke(new DiagonalTask(0, count + 1, input, null, new int[] { count }, new SymmetricMatrix[] { result }));
+      return;
     }
 
-    for (int col = 1; col <= count; col++)
+    double[] products = workspace.products();
+
+    for (int col = 0; col <= count; col++)
     {
-      // .. then diagonally generate these towards the right.
+      // Starting from the main diagonal, generate the values diagonally towards
+      // the right.
 
+      //  * * * * *
       //    * * * *
       //      * * *
       //        * *
       //          *
-      //
 
-      calculateDiagonalCells(0, col, input, count, matrix);
+      multiply(input, 0, col, products);
+      calculateDiagonalCells(0, col, input.length, count, products, result);
+    }
+  }
+
+  /**
+   * Generate the values contained in the matrix reading the input values directly
+   * from a buffer, such as a memory mapped sample file, with no intermediate copy.
+   *
+   * @param input a buffer of floating point values, from its position up to its limit
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(FloatBuffer input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    input = input.slice();
+
+    workspace.check(input.limit(), count);
+
+    if (pool != null)
+    {
+      pool.invoke(new DiagonalTask(0, count + 1, null, input, new int[] { count }, new SymmetricMatrix[] { result }));
+      return;
     }
 
-    return matrix;
+    double[] products = workspace.products();
+
+    for (int col = 0; col <= count; col++)
+    {
+      multiply(input, 0, col, products);
+      calculateDiagonalCells(0, col, input.limit(), count, products, result);
+    }
   }
 
   /**
-   * Generate the cells for a single diagonal in the matrix. The implmentation here makes
-   * use of two properties of the algorithm: 1) the value for cells across the diagonal are
-   * based on multiplication of many of the same numbers, and 2) the values across the diagonal
-   * also add many of the same values for each cell. This method tries to compute the common values
-   * once for the diagonal, and then when looping through the cells, just compute the things
-   * that are different for each cell, which just involves choosing which extra numbers to add.
-   * This means that for the test set of data, it will use 2708 floating point adds and 2680
-   * floating point multiplies, compared to the 7400 floating point adds and 7400 floating point
-   * multiplies of the unoptimized version. Though it performs fewer arithmetic operations, this
-   * comes at the cost of the implementation being somewhat harder to understand than the unoptimzed
-   * one, and less recognisable as an implementation of the specified algorithm.
+   * Generate the matrices for several counts on the same input. The products lookup
+   * table for a diagonal depends only on its starting column, so it is built once
+   * for each diagonal up to the largest count. The common base value is summed once
+   * too, for the largest count, and each smaller count's base is then found from the
+   * next larger one's by adding the two products its range gains at either end. So
+   * each diagonal takes about N multiplies and N adds whatever the number of counts,
+   * plus the adds for the cells. The base values are added up in a different order
+   * from separate generate calls, so the results match them within rounding.
    *
-   * @param row the index of the row at the top left of the diagonal
-   * @param col the index of the column at the top left of the diagonal
-   * @param input the array of input data
-   * @param count the specified count ('c' in the specification)
-   * @param result the array to receive the results of the computation
+   * @param input an array of floating point values
+   * @param counts the counts to generate the matrices for, in any order
+   *
+   * @return the symmetric matrices, of size count + 1, in the same order as the counts.
    */
-  private static void calculateDiagonalCells(int row, int col, float[] input, int count, float[][] result)
+  @Override
+  public SymmetricMatrix[] generateAll(float[] input, int[] counts)
   {
-    final int length = input.length;
+    MatrixWorkspace workspace = MatrixWorkspace.forCounts(input.length, counts);
+    SymmetricMatrix[] results = new SymmetricMatrix[counts.length];
 
-    // Set up some initial variables. Here we work out the starting index into the input array
-    // for the top left row and column of this diagonal. We'll then iterate on that index
-    // next, taking the values from the input array, multiplying them, and adding the result
-    // to the lookup table for use in the summation.
+    for (int i = 0; i < counts.length; i++)
+    {
+      results[i] = new PackedSymmetricMatrix(counts[i] + 1);
+    }
 
-    int pos;            // Track the position in the matrix as it is computed.
-    int offset;         // Used as the base offset into the multiplication lookup table.
-    int inputIndexRow;  // Lowest index into the input array based on the row at the top left of the diagonal.
-    int inputIndexCol;  // Lowest index into the input array based on the column at the top left of the diagonal.
+    final int max = workspace.count();
 
-    if (col == 0)
+    if (pool != null)
     {
-      pos = row;
-      offset = count - pos;
-      inputIndexRow = 0;
-      inputIndexCol = pos;
+      pool.invoke(new DiagonalTask(0, max + 1, input, null, counts, results));
+      return results;
     }
-    else
+
+    double[] products = workspace.products();
+
+    for (int col = 0; col <= max; col++)
     {
-      pos = col;
-      offset = count - pos;
-      inputIndexRow = pos;
-      inputIndexCol = 0;
+      multiply(input, 0, col, products);
+      calculateDiagonalCells(col, input.length, counts, products, results);
     }
 
-    // Peform the multiplications here, building a lookup table to use for each of the diagonal
-    // cells we compute in this method.
+    return results;
+  }
+
+  /**
+   * Count the operations for a matrix. For the diagonal starting at column pos, the
+   * lookup table takes N-pos multiplies, the common base value |N-2c+pos| adds, and
+   * each of the c-pos+1 cells c-pos more adds from the ends of the lookup table. The
+   * counts are the same in the serial and parallel modes.
+   *
+   * @param length the number of input values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the operations a generate call performs.
+   */
+  @Override
+  public OperationCount countOperations(int length, int count)
+  {
+    long adds = 0, multiplies = 0, bytes = 0;
+
+    for (int pos = 0; pos <= count; pos++)
+    {
+      long products = Math.max(0, length - pos);
+      long common = Math.abs(length - 2 * count + pos);
+      long cells = count - pos + 1;
+      long cellAdds = cells * (count - pos);
 
-    double[] products = new double[length];
+      multiplies += products;
+      adds += common + cellAdds;
+      bytes += products * (2 * Float.BYTES + Double.BYTES)
+             + (common + cellAdds) * Double.BYTES
+             + cells * Float.BYTES;
+    }
+
+    return new OperationCount(adds, multiplies, bytes);
+  }
+
+  /**
+   * Peform the multiplications for a single diagonal in the matrix, building a lookup table
+   * to use for each of the cells on that diagonal. Here we work out the starting index into
+   * the input array for the top left row and column of this diagonal, and then iterate on
+   * that index, taking the values from the input array and multiplying them.
+   *
+   * @param input the array of input data
+   * @param row the index of the row at the top left of the diagonal
+   * @param col the index of the column at the top left of the diagonal
+   * @param products the lookup table to receive the products, at least input.length long
+   */
+  private static void multiply(float[] input, int row, int col, double[] products)
+  {
+    final int length = input.length;
+    final int pos = Math.max(row, col);
+
+    int inputIndexRow = col == 0 ? 0 : pos;  // Lowest index into the input array based on the row.
+    int inputIndexCol = col == 0 ? pos : 0;  // Lowest index into the input array based on the column.
 
     for (int i = 0; i < length - pos; i++)
     {
       products[i] = input[inputIndexRow + i] * input[inputIndexCol + i];
     }
+  }
 
-    // Now for the all the product values that are included in the sums for all cells,
-    // add them here into a common base value.
+  /**
+   * Peform the multiplications for a single diagonal in the matrix, reading the input
+   * values from a buffer. This computes exactly the same products as the array version.
+   *
+   * @param input the buffer of input data, starting at index zero
+   * @param row the index of the row at the top left of the diagonal
+   * @param col the index of the column at the top left of the diagonal
+   * @param products the lookup table to receive the products, at least input.limit() long
+   */
+  private static void multiply(FloatBuffer input, int row, int col, double[] products)
+  {
+    final int length = input.limit();
+    final int pos = Math.max(row, col);
 
-    double common = 0.0f;
+    int inputIndexRow = col == 0 ? 0 : pos;
+    int inputIndexCol = col == 0 ? pos : 0;
 
-    for (int i = offset; i < length - count; i++)
+    for (int i = 0; i < length - pos; i++)
     {
-      common += products[i];
+      products[i] = input.get(inputIndexRow + i) * input.get(inputIndexCol + i);
     }
+  }
+
+  /**
+   * Generate the cells for a single diagonal in the matrix. The implmentation here makes
+   * use of two properties of the algorithm: 1) the value for cells across the diagonal are
+   * based on multiplication of many of the same numbers, and 2) the values across the diagonal
+   * also add many of the same values for each cell. This method tries to compute the common values
+   * once for the diagonal, and then when looping through the cells, just compute the things
+   * that are different for each cell, which just involves choosing which extra numbers to add.
+   * This means that for the test set of data, it will use 1510 floating point adds and 1490
+   * floating point multiplies for the diagonals on and above the main diagonal, compared to the
+   * 4440 floating point adds and 4440 floating point multiplies of the unoptimized version for
+   * the same cells. Though it performs fewer arithmetic operations, this comes at the cost
+   * of the implementation being somewhat harder to understand than the unoptimzed one, and
+   * less recognisable as an implementation of the specified algorithm.
+   *
+   * @param row the index of the row at the top left of the diagonal
+   * @param col the index of the column at the top left of the diagonal
+   * @param length the number of input values
+   * @param count the specified count ('c' in the specification)
+   * @param products the lookup table of products for this diagonal, filled in by multiply()
+   * @param result the matrix to receive the results of the computation
+   */
+  private static void calculateDiagonalCells(int row, int col, int length, int count, double[] products,
+                                             SymmetricMatrix result)
+  {
+    // Now for the all the product values that are included in the sums for all cells,
+    // add them here into a common base value.
+
+    double common = commonSum(products, count - Math.max(row, col), length - count);
+
+    calculateDiagonalCells(row, col, length, count, common, products, result);
+  }
+
+  /**
+   * Generate the cells for a single diagonal in the matrix, from its common base value.
+   *
+   * @param row the index of the row at the top left of the diagonal
+   * @param col the index of the column at the top left of the diagonal
+   * @param length the number of input values
+   * @param count the specified count ('c' in the specification)
+   * @param common the common base value for the diagonal, from commonSum()
+   * @param products the lookup table of products for this diagonal, filled in by multiply()
+   * @param result the matrix to receive the results of the computation
+   */
+  private static void calculateDiagonalCells(int row, int col, int length, int count, double common,
+                                             double[] products, SymmetricMatrix result)
+  {
+    int offset = count - Math.max(row, col);  // Used as the base offset into the multiplication lookup table.
 
     // Finally, now we have computed the common additions needed for each cell along
     // the diagonal, loop through the cells down towards the bottom right of the matrix,
@@ -147,11 +305,146 @@ public class OptimizedMatrixGenerator implements MatrixGenerator
         sum += products[length - count + i];
       }
 
-      result[row][col] = (float)sum;
+      result.set(row, col, (float)sum);
 
       offset--;
       low++;
     }
     while ((++row <= count) && (++col <= count));
   }
+
+  /**
+   * Sum the products from index 'from' up to 'to', for the common base value of a
+   * diagonal. The cells add the products before 'from' and from 'to' on, so for
+   * inputs shorter than twice the count, where the two ends cross, the products
+   * between them are subtracted instead, as the cells add them twice.
+   *
+   * @param products the lookup table of products for the diagonal
+   * @param from the index of the first product in the base
+   * @param to the index after the last product in the base
+   *
+   * @return the base value.
+   */
+  private static double commonSum(double[] products, int from, int to)
+  {
+    double common = 0.0;
+
+    for (int i = from; i < to; i++)
+    {
+      common += products[i];
+    }
+
+    for (int i = to; i < from; i++)
+    {
+      common -= products[i];
+    }
+
+    return common;
+  }
+
+  /**
+   * Generate the cells for a single diagonal in the matrices for several counts,
+   * from the same lookup table of products. The common base value is summed for the
+   * largest count, and then stepped down one count at a time: the base for count c
+   * runs from c-col up to N-c, so it is the base for c+1 plus the products at c-col
+   * and N-c-1.
+   *
+   * @param col the index of the column at the top left of the diagonal
+   * @param length the number of input values
+   * @param counts the counts of the matrices
+   * @param products the lookup table of products for this diagonal, filled in by multiply()
+   * @param results the matrices to receive the results, one for each count
+   */
+  private static void calculateDiagonalCells(int col, int length, int[] counts, double[] products,
+                                             SymmetricMatrix[] results)
+  {
+    int max = -1;
+
+    for (int count : counts)
+    {
+      max = Math.max(max, count);
+    }
+
+    if (max < col)
+    {
+      return;
+    }
+
+    double common = commonSum(products, max - col, length - max);
+
+    for (int count = max; count >= col; count--)
+    {
+      if (count < max)
+      {
+        common += products[count - col] + products[length - count - 1];
+      }
+
+      for (int i = 0; i < counts.length; i++)
+      {
+        if (counts[i] == count)
+        {
+          calculateDiagonalCells(0, col, length, count, common, products, results[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Fork/join task computing a range of diagonals, numbered by the column they start
+   * at on the top row, i.e. in order of decreasing length and cost. The range is split
+   * in half until a single diagonal remains, so idle workers can steal the remaining
+   * halves and the very uneven diagonal lengths balance out across the pool. The input
+   * is read from either an array or a buffer, whichever is not null. Each diagonal is
+   * computed for all of the counts that include it.
+   */
+  private static final class DiagonalTask extends RecursiveAction
+  {
+    DiagonalTask(int from, int to, float[] input, FloatBuffer buffer, int[] counts, SymmetricMatrix[] results)
+    {
+      this.from = from;
+      this.to = to;
+      this.input = input;
+      this.buffer = buffer;
+      this.counts = counts;
+      this.results = results;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (to - from > 1)
+      {
+        int mid = (from + to) >>> 1;
+
+        invokeAll(new DiagonalTask(from, mid, input, buffer, counts, results),
+                  new DiagonalTask(mid, to, input, buffer, counts, results));
+        return;
+      }
+
+      int length = input != null ? input.length : buffer.limit();
+      double[] products = new double[length];
+
+      if (input != null)
+      {
+        multiply(input, 0, from, products);
+      }
+      else
+      {
+        multiply(buffer, 0, from, products);
+      }
+
+      calculateDiagonalCells(from, length, counts, products, results);
+    }
+
+    private final int from;
+    private final int to;
+    private final float[] input;
+    private final FloatBuffer buffer;
+    private final int[] counts;
+    private final SymmetricMatrix[] results;
+
+    private static final long serialVersionUID = 1L;
+  }
+
+  private final ForkJoinPool pool;
 }
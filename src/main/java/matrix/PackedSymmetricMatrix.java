@@ -0,0 +1,123 @@
+package matrix;
+
+/**
+ * A symmetric matrix backed by a single float array holding the upper triangle,
+ * row by row. Row r holds the cells from the main diagonal (r, r) across to the last
+ * column, so the matrix takes size * (size + 1) / 2 values, roughly half of a full
+ * float[][], with no per row array overhead.
+ */
+public class PackedSymmetricMatrix implements SymmetricMatrix
+{
+  /**
+   * Create a matrix of the given size, with all values set to zero.
+   *
+   * @param size the number of rows (and columns) in the matrix
+   */
+  public PackedSymmetricMatrix(int size)
+  {
+    this(size, new float[packedLength(size)]);
+  }
+
+  /**
+   * Create a matrix of the given size over an existing array of packed values. The
+   * array is used directly rather than copied, so that callers can supply their own
+   * buffer to receive the results.
+   *
+   * @param size the number of rows (and columns) in the matrix
+   * @param values the packed upper triangle values, at least packedLength(size) long
+   */
+  public PackedSymmetricMatrix(int size, float[] values)
+  {
+    if (values.length < packedLength(size))
+    {
+      throw new IllegalArgumentException(String.format("Buffer of length %d is too small for a matrix of size %d",
+                                                       values.length, size));
+    }
+
+    this.size = size;
+    this.values = values;
+  }
+
+  /**
+   * Get the number of values needed to hold the upper triangle of a matrix.
+   *
+   * @param size the number of rows (and columns) in the matrix
+   *
+   * @return the length of the packed array.
+   */
+  public static int packedLength(int size)
+  {
+    if (size < 0)
+    {
+      throw new IllegalArgumentException("Matrix size must not be negative: " + size);
+    }
+
+    long length = (long)size * (size + 1) / 2;
+
+    if (length > MAX_PACKED_LENGTH)
+    {
+      throw new IllegalArgumentException("Matrix size is too large to pack into an array: " + size);
+    }
+
+    return (int)length;
+  }
+
+  /**
+   * Get the position of a cell in the packed array.
+   *
+   * @param row the row index of the cell
+   * @param col the column index of the cell
+   *
+   * @return the index of the cell in the packed values.
+   */
+  public int indexOf(int row, int col)
+  {
+    if (row > col)
+    {
+      int t = row;
+      row = col;
+      col = t;
+    }
+
+    if (row < 0 || col >= size)
+    {
+      throw new IndexOutOfBoundsException(String.format("Cell (%d, %d) is outside a matrix of size %d", row, col, size));
+    }
+
+    // Rows before this one hold size, size - 1, ... size - row + 1 values.
+
+    return (int)((long)row * size - (long)row * (row - 1) / 2) + (col - row);
+  }
+
+  /**
+   * @return the packed upper triangle values, row by row.
+   */
+  public float[] values()
+  {
+    return values;
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  @Override
+  public float get(int row, int col)
+  {
+    return values[indexOf(row, col)];
+  }
+
+  @Override
+  public void set(int row, int col, float value)
+  {
+    values[indexOf(row, col)] = value;
+  }
+
+  private final int size;
+  private final float[] values;
+
+  // Largest array length the JVM reliably allows.
+  private static final int MAX_PACKED_LENGTH = Integer.MAX_VALUE - 8;
+}
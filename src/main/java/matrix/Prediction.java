@@ -0,0 +1,43 @@
+package matrix;
+
+/**
+ * The linear prediction coefficients found by the {@link PredictionSolver}, which
+ * predict each input value from the count values before it as
+ * x[i] ~ a[1] * x[i-1] + ... + a[c] * x[i-c], along with the prediction error.
+ */
+public final class Prediction
+{
+  Prediction(double[] coefficients, double error)
+  {
+    this.coefficients = coefficients;
+    this.error = error;
+  }
+
+  /**
+   * @return the coefficients a[1] to a[c], at indexes 0 to c-1.
+   */
+  public double[] coefficients()
+  {
+    return coefficients.clone();
+  }
+
+  /**
+   * @return the order of the predictor, which is the count.
+   */
+  public int order()
+  {
+    return coefficients.length;
+  }
+
+  /**
+   * @return the sum of the squared prediction errors over the input, as given by the
+   *         normal equations.
+   */
+  public double error()
+  {
+    return error;
+  }
+
+  private final double[] coefficients;
+  private final double error;
+}
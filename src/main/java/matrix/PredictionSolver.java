@@ -0,0 +1,223 @@
+package matrix;
+
+/**
+ * Solves the normal equations for the linear prediction coefficients of the input,
+ * straight from the generated matrix. Cell (k, j) of the matrix is the covariance
+ * between the input delayed by k and by j, so the coefficients a[1] to a[c] that
+ * minimise the squared error of predicting x[i] from x[i-1] to x[i-c] solve
+ * <pre>
+ *   sum over j of m[k][j] * a[j] = m[k][0], for k from 1 to c
+ * </pre>
+ * which is the matrix without its first row and column, with the first row as the
+ * right hand side.
+ * <p>
+ * The covariance method factors that matrix with a Cholesky decomposition in place,
+ * overwriting the cells it uses, so the matrix is never copied. This takes about
+ * c^3 / 6 multiply-adds. The autocorrelation method instead approximates the matrix
+ * by a Toeplitz matrix, with every cell on the diagonal for lag d equal to the
+ * autocorrelation of the input at that lag, which the Levinson-Durbin recursion
+ * solves in about c^2 multiply-adds. The lags are found with the vector generator's
+ * lag sums, without generating the matrix at all.
+ */
+public final class PredictionSolver
+{
+  private PredictionSolver()
+  {
+  }
+
+  /**
+   * Solve the normal equations of the covariance method by a Cholesky decomposition.
+   * The cells in rows and columns 1 to c are overwritten by the upper triangular
+   * factor U, where the original matrix is U^T * U, leaving the first row as it was.
+   * The factor is stored in single precision, like the matrix, while its sums and
+   * the solution are computed in double precision.
+   *
+   * @param matrix the generated matrix, of size count + 1
+   *
+   * @return the prediction coefficients.
+   *
+   * @throws InvalidInputException if the matrix is not positive definite, such as
+   *         when the input is all zeros, or too short for the count
+   */
+  public static Prediction cholesky(SymmetricMatrix matrix) throws InvalidInputException
+  {
+    final int count = matrix.size() - 1;
+
+    // Factor row by row, each cell of U taking the dot product of the columns above
+    // it in the rows already factored.
+
+    for (int j = 1; j <= count; j++)
+    {
+      double pivot = matrix.get(j, j);
+
+      for (int k = 1; k < j; k++)
+      {
+        double u = matrix.get(k, j);
+        pivot -= u * u;
+      }
+
+      if (!(pivot > 0.0))
+      {
+        throw new InvalidInputException(String.format("Matrix is not positive definite at row %d", j));
+      }
+
+      final double diagonal = Math.sqrt(pivot);
+
+      matrix.set(j, j, (float)diagonal);
+
+      for (int i = j + 1; i <= count; i++)
+      {
+        double sum = matrix.get(j, i);
+
+        for (int k = 1; k < j; k++)
+        {
+          sum -= (double)matrix.get(k, j) * matrix.get(k, i);
+        }
+
+        matrix.set(j, i, (float)(sum / diagonal));
+      }
+    }
+
+    // Solve U^T * y = b by forward substitution, for b the first row. The error is
+    // then m[0][0] - b^T * a, which is m[0][0] - y^T * y.
+
+    double[] solution = new double[count];
+    double error = matrix.get(0, 0);
+
+    for (int j = 1; j <= count; j++)
+    {
+      double sum = matrix.get(0, j);
+
+      for (int k = 1; k < j; k++)
+      {
+        sum -= matrix.get(k, j) * solution[k - 1];
+      }
+
+      solution[j - 1] = sum / matrix.get(j, j);
+      error -= solution[j - 1] * solution[j - 1];
+    }
+
+    // Then U * a = y by back substitution.
+
+    for (int j = count; j >= 1; j--)
+    {
+      double sum = solution[j - 1];
+
+      for (int i = j + 1; i <= count; i++)
+      {
+        sum -= matrix.get(j, i) * solution[i - 1];
+      }
+
+      solution[j - 1] = sum / matrix.get(j, j);
+    }
+
+    // The error can't be negative, but can round to just below zero for an input the
+    // predictor fits exactly.
+
+    return new Prediction(solution, Math.max(error, 0.0));
+  }
+
+  /**
+   * Solve the normal equations for the Toeplitz matrix with the given lag values, with
+   * the Levinson-Durbin recursion. Each step extends the solution for order m-1 to
+   * order m, from the reflection coefficient between the new lag and the prediction
+   * of it so far.
+   *
+   * @param lags the values r[0] to r[c] on each diagonal of the matrix
+   *
+   * @return the prediction coefficients.
+   *
+   * @throws InvalidInputException if the Toeplitz matrix is not positive definite
+   */
+  public static Prediction levinson(double[] lags) throws InvalidInputException
+  {
+    final int count = lags.length - 1;
+
+    double[] coefficients = new double[count];
+    double error = lags[0];
+
+    if (!(error > 0.0))
+    {
+      throw new InvalidInputException("Matrix is not positive definite at row 0");
+    }
+
+    for (int m = 1; m <= count; m++)
+    {
+      double sum = lags[m];
+
+      for (int j = 1; j < m; j++)
+      {
+        sum -= coefficients[j - 1] * lags[m - j];
+      }
+
+      final double reflection = sum / error;
+
+      // Update a[j] and a[m-j] together, so the old values of both are used.
+
+      for (int j = 1, k = m - 1; j <= k; j++, k--)
+      {
+        double low = coefficients[j - 1];
+        double high = coefficients[k - 1];
+
+        coefficients[j - 1] = low - reflection * high;
+
+        if (j != k)
+        {
+          coefficients[k - 1] = high - reflection * low;
+        }
+      }
+
+      coefficients[m - 1] = reflection;
+      error *= 1.0 - reflection * reflection;
+
+      if (!(error > 0.0))
+      {
+        throw new InvalidInputException(String.format("Matrix is not positive definite at row %d", m));
+      }
+    }
+
+    return new Prediction(coefficients, error);
+  }
+
+  /**
+   * Compute the autocorrelation of an input, for the Levinson-Durbin recursion, with
+   * the vector generator's lag sum kernel. Unlike the top row of the matrix, the sum
+   * for lag d runs over the whole input, from x[d] * x[0], which makes the Toeplitz
+   * matrix positive semi-definite for any input. This takes about (c+1) * N
+   * multiply-adds.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param singlePrecision true to accumulate the sums in single precision
+   *
+   * @return the values r[0] to r[c], zero for lags beyond the end of the input.
+   */
+  public static double[] lags(float[] input, int count, boolean singlePrecision)
+  {
+    double[] lags = new double[count + 1];
+    float[] stack = singlePrecision ? new float[LagSums.STACK_SIZE] : null;
+
+    for (int d = 0; d <= count && d < input.length; d++)
+    {
+      lags[d] = singlePrecision ? LagKernel.lagSumSingle(input, d, input.length, d, stack)
+                                : LagKernel.lagSum(input, d, input.length, d);
+    }
+
+    return lags;
+  }
+
+  /**
+   * Find the worst case difference between a lag accumulated in single precision by
+   * {@link #lags} and the same lag accumulated in double precision. The sum for lag d
+   * runs over N - d products, so the bound for the N products of lag 0 covers them
+   * all. It is found in the same way as {@link VectorMatrixGenerator#errorBound}.
+   *
+   * @param input an array of floating point values
+   *
+   * @return the bound on the absolute difference for any lag.
+   */
+  public static double lagErrorBound(float[] input)
+  {
+    return input.length > 0 ? VectorMatrixGenerator.sumErrorBound(input, input.length) : 0.0;
+  }
+}
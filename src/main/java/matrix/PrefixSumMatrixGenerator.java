@@ -0,0 +1,204 @@
+package matrix;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A matrix generator that builds a running sum over the products of each diagonal,
+ * so that every cell costs a constant number of operations whatever the count.
+ * The cells on a diagonal all sum the same products, each one over a window that
+ * is shifted by one position from its neighbour. With the running sums in place,
+ * each of those windows is just the difference of two entries. Overall this takes
+ * about (c+1) * N multiplies and adds, compared to the roughly quadratic per diagonal
+ * work done by the optimized version for large counts.
+ */
+public class PrefixSumMatrixGenerator implements MatrixGenerator
+{
+  /**
+   * Generate the values contained in the matrix one diagonal at a time, starting
+   * from the main diagonal and moving outwards. Only the diagonals on and above
+   * the main diagonal are computed.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    workspace.check(input.length, count);
+
+    // One running sum array is shared by all the diagonals, sums[m] holding the
+    // total of the first m products.
+
+    double[] sums = workspace.products();
+
+    for (int pos = 0; pos <= count; pos++)
+    {
+      accumulate(input, pos, sums);
+      calculateDiagonalCells(pos, input.length, count, sums, result);
+    }
+  }
+
+  /**
+   * Generate the values in the matrix reading the input values directly from a
+   * buffer, such as a memory mapped sample file, with no intermediate copy.
+   *
+   * @param input a buffer of floating point values, from its position up to its limit
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(FloatBuffer input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    input = input.slice();
+
+    workspace.check(input.limit(), count);
+
+    double[] sums = workspace.products();
+
+    for (int pos = 0; pos <= count; pos++)
+    {
+      accumulate(input, pos, sums);
+      calculateDiagonalCells(pos, input.limit(), count, sums, result);
+    }
+  }
+
+  /**
+   * Generate the matrices for several counts on the same input. The running sums
+   * for a diagonal depend only on its lag, so they are built once for each lag up to
+   * the largest count, and the cells for every count that includes that lag are then
+   * taken from them. This gives exactly the same values as separate generate calls.
+   *
+   * @param input an array of floating point values
+   * @param counts the counts to generate the matrices for, in any order
+   *
+   * @return the symmetric matrices, of size count + 1, in the same order as the counts.
+   */
+  @Override
+  public SymmetricMatrix[] generateAll(float[] input, int[] counts)
+  {
+    MatrixWorkspace workspace = MatrixWorkspace.forCounts(input.length, counts);
+    SymmetricMatrix[] results = new SymmetricMatrix[counts.length];
+
+    for (int i = 0; i < counts.length; i++)
+    {
+      results[i] = new PackedSymmetricMatrix(counts[i] + 1);
+    }
+
+    final int max = workspace.count();
+
+    double[] sums = workspace.products();
+
+    for (int pos = 0; pos <= max; pos++)
+    {
+      accumulate(input, pos, sums);
+
+      for (int i = 0; i < counts.length; i++)
+      {
+        if (pos <= counts[i])
+        {
+          calculateDiagonalCells(pos, input.length, counts[i], sums, results[i]);
+        }
+      }
+    }
+
+    return results;
+  }
+
+  /**
+   * Count the operations for a matrix. For the diagonal starting at column pos, the
+   * running sums take N-pos multiplies and adds, and each of the c-pos+1 cells is one
+   * subtraction.
+   *
+   * @param length the number of input values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the operations a generate call performs.
+   */
+  @Override
+  public OperationCount countOperations(int length, int count)
+  {
+    long adds = 0, multiplies = 0, bytes = 0;
+
+    for (int pos = 0; pos <= count; pos++)
+    {
+      long products = Math.max(0, length - pos);
+      long cells = count - pos + 1;
+
+      multiplies += products;
+      adds += products + cells;
+      bytes += products * (2 * Float.BYTES + Double.BYTES)
+             + cells * (2 * Double.BYTES + Float.BYTES);
+    }
+
+    return new OperationCount(adds, multiplies, bytes);
+  }
+
+  /**
+   * Build the running sums of the products x[m] * x[m+pos] for one diagonal.
+   *
+   * @param input the array of input data
+   * @param pos the lag between the row and column of the diagonal
+   * @param sums the array to receive the running sums, at least input.length + 1 long
+   */
+  private static void accumulate(float[] input, int pos, double[] sums)
+  {
+    final int length = input.length;
+
+    double sum = 0.0;
+
+    sums[0] = sum;
+
+    for (int m = 0; m < length - pos; m++)
+    {
+      sum += input[m] * input[m + pos];
+      sums[m + 1] = sum;
+    }
+  }
+
+  /**
+   * Build the running sums of the products for one diagonal, reading the input
+   * values from a buffer.
+   *
+   * @param input the buffer of input data, starting at index zero
+   * @param pos the lag between the row and column of the diagonal
+   * @param sums the array to receive the running sums, at least input.limit() + 1 long
+   */
+  private static void accumulate(FloatBuffer input, int pos, double[] sums)
+  {
+    final int length = input.limit();
+
+    double sum = 0.0;
+
+    sums[0] = sum;
+
+    for (int m = 0; m < length - pos; m++)
+    {
+      sum += input.get(m) * input.get(m + pos);
+      sums[m + 1] = sum;
+    }
+  }
+
+  /**
+   * Generate the cells for the diagonal that starts at the given column of the top
+   * row. The products for the diagonal are x[m] * x[m+pos], and the cell in column h
+   * sums the products for m from c-h up to N-1-h, which is sums[N-h] - sums[c-h].
+   *
+   * @param pos the column at the top of the diagonal, i.e. the lag between the row and column
+   * @param length the number of input values
+   * @param count the specified count ('c' in the specification)
+   * @param sums the running sums of the products for this diagonal, filled in by accumulate()
+   * @param result the matrix to receive the results of the computation
+   */
+  private static void calculateDiagonalCells(int pos, int length, int count, double[] sums, SymmetricMatrix result)
+  {
+    for (int h = pos; h <= count; h++)
+    {
+      float value = (float)(sums[length - h] - sums[count - h]);
+
+      result.set(h - pos, h, value);
+    }
+  }
+}
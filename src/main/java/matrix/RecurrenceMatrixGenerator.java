@@ -0,0 +1,128 @@
+package matrix;
+
+/**
+ * A matrix generator based on the recurrence between neighbouring cells on a diagonal.
+ * Cell (k+1, j+1) sums the same products as cell (k, j), shifted down by one index, so
+ * it can be found from cell (k, j) by adding the one product that enters at the low
+ * end of the sum, and subtracting the one that leaves at the high end:
+ * <pre>
+ *   m[k+1][j+1] = m[k][j] + x[c-1-k] * x[c-1-j] - x[N-1-k] * x[N-1-j]
+ * </pre>
+ * Only the top row needs a full pass over the input, one per lag, and every other cell
+ * costs a constant amount of work. The running value along each diagonal is kept using
+ * Kahan compensated summation, so that the error doesn't build up as it is carried
+ * down long diagonals.
+ */
+public class RecurrenceMatrixGenerator implements MatrixGenerator
+{
+  /**
+   * Generate the values in the matrix by computing the top row in full, and then
+   * walking each diagonal on and above the main diagonal down towards the bottom
+   * right.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    workspace.check(input.length, count);
+
+    for (int col = 0; col <= count; col++)
+    {
+      calculateDiagonalCells(col, input, count, result);
+    }
+  }
+
+  /**
+   * Count the operations for a matrix. The top row cell of each diagonal takes N-c
+   * multiplies and adds, and each of the c-col steps down the diagonal takes two
+   * multiplies, and five adds with the compensation.
+   *
+   * @param length the number of input values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the operations a generate call performs.
+   */
+  @Override
+  public OperationCount countOperations(int length, int count)
+  {
+    long adds = 0, multiplies = 0, bytes = 0;
+
+    for (int col = 0; col <= count; col++)
+    {
+      long terms = Math.max(0, length - count);
+      long steps = count - col;
+
+      multiplies += terms + 2 * steps;
+      adds += terms + 5 * steps;
+      bytes += (terms * 2 + steps * 4) * Float.BYTES + (steps + 1) * Float.BYTES;
+    }
+
+    return new OperationCount(adds, multiplies, bytes);
+  }
+
+  /**
+   * Generate the cells for the diagonal that starts at the given column of the top
+   * row.
+   *
+   * @param col the column of the top row the diagonal starts at
+   * @param input the array of input data
+   * @param count the specified count ('c' in the specification)
+   * @param result the matrix to receive the results of the computation
+   */
+  private static void calculateDiagonalCells(int col, float[] input, int count, SymmetricMatrix result)
+  {
+    final int length = input.length;
+
+    // The full pass over the input for the top row cell.
+
+    double sum = 0.0;
+
+    for (int i = count; i < length; i++)
+    {
+      sum += input[i] * input[i - col];
+    }
+
+    walkDiagonal(col, input, count, sum, result);
+  }
+
+  /**
+   * Fill in a diagonal from its top row cell, walking down it towards the bottom
+   * right.
+   *
+   * @param col the column of the top row the diagonal starts at
+   * @param input the array of input data
+   * @param count the specified count ('c' in the specification)
+   * @param sum the value of the top row cell
+   * @param result the matrix to receive the results of the computation
+   */
+  static void walkDiagonal(int col, float[] input, int count, double sum, SymmetricMatrix result)
+  {
+    final int length = input.length;
+
+    result.set(0, col, (float)sum);
+
+    // Walk down the diagonal, adding the entering product and removing the leaving
+    // one for each step, with 'compensation' holding the low order bits lost from
+    // the running sum so far.
+
+    double compensation = 0.0;
+
+    for (int k = 0, j = col; j < count; k++, j++)
+    {
+      double entering = input[count - 1 - k] * input[count - 1 - j];
+      double leaving = input[length - 1 - k] * input[length - 1 - j];
+
+      double y = (entering - leaving) - compensation;
+      double t = sum + y;
+
+      compensation = (t - sum) - y;
+      sum = t;
+
+      result.set(k + 1, j + 1, (float)sum);
+    }
+  }
+}
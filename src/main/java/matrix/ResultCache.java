@@ -0,0 +1,438 @@
+package matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An on-disk cache of generated matrices, for jobs that compute the same matrix for
+ * the same input more than once, such as across retries and reruns of a pipeline.
+ * <p>
+ * Each entry is keyed by a hash of the input values and the length, count, generator
+ * and precision they were generated with, and is held in its own file in the packed
+ * binary format, so a hit is mapped straight into memory with no parsing. Entries are
+ * written to a temporary file and then atomically renamed into place, so processes
+ * sharing the cache never see a partly written entry, and a hit updates the entry's
+ * modified time, so that once the entries grow past the size limit, the least
+ * recently used ones are evicted first. A cache that can't be read or written is
+ * treated as empty, as it only ever saves work.
+ */
+public class ResultCache
+{
+  /**
+   * Create a cache in a directory, which is created if it doesn't exist.
+   *
+   * @param directory the directory holding the entries, which may be shared with
+   *        other processes
+   * @param maxBytes the most bytes the entries may take up
+   *
+   * @throws IOException if the directory can't be created
+   */
+  public ResultCache(Path directory, long maxBytes) throws IOException
+  {
+    if (maxBytes <= 0)
+    {
+      throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+    }
+
+    this.directory = Files.createDirectories(directory);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Look up a matrix in the cache.
+   *
+   * @param key the key for the matrix
+   *
+   * @return the matrix, mapped read only, which must be closed once it has been used,
+   *         or null if it isn't in the cache.
+   */
+  public MappedSymmetricMatrix get(Key key)
+  {
+    Path path = directory.resolve(key.fileName());
+
+    try
+    {
+      MappedSymmetricMatrix matrix = MappedSymmetricMatrix.open(path, key.count + 1);
+
+      try
+      {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+      }
+      catch (IOException e)
+      {
+        // Another process may have evicted the entry, but the mapping is still valid.
+      }
+
+      return matrix;
+    }
+    catch (NoSuchFileException e)
+    {
+      return null;
+    }
+    catch (IOException e)
+    {
+      // An entry of the wrong size can't have been written by this class.
+
+      delete(path);
+      return null;
+    }
+  }
+
+  /**
+   * Add a matrix to the cache, replacing any entry with the same key, and then evict
+   * the least recently used entries if the cache has grown past its size limit.
+   *
+   * @param key the key for the matrix
+   * @param matrix the matrix, of size count + 1
+   */
+  public void put(Key key, SymmetricMatrix matrix)
+  {
+    Path temporary = null;
+
+    try
+    {
+      temporary = Files.createTempFile(directory, "entry", TEMPORARY_SUFFIX);
+
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE))
+      {
+        new MatrixWriter(channel).writePacked(matrix);
+        channel.force(false);
+      }
+
+      Files.move(temporary, directory.resolve(key.fileName()), StandardCopyOption.ATOMIC_MOVE,
+                 StandardCopyOption.REPLACE_EXISTING);
+      temporary = null;
+
+      evict();
+    }
+    catch (IOException e)
+    {
+      // The result is still valid, it just won't be cached.
+    }
+    finally
+    {
+      if (temporary != null)
+      {
+        delete(temporary);
+      }
+    }
+  }
+
+  /**
+   * @return the total size of the entries, in bytes.
+   */
+  public long size() throws IOException
+  {
+    long total = 0;
+
+    for (Entry entry : entries())
+    {
+      total += entry.size;
+    }
+
+    return total;
+  }
+
+  /**
+   * Delete the least recently used entries until the rest fit in the size limit,
+   * along with any temporary files left behind by writers that have died.
+   */
+  private void evict() throws IOException
+  {
+    List<Entry> entries = entries();
+    long total = 0;
+
+    for (Entry entry : entries)
+    {
+      total += entry.size;
+    }
+
+    entries.sort((a, b) -> Long.compare(a.modified, b.modified));
+
+    for (int i = 0; i < entries.size() && total > maxBytes; i++)
+    {
+      delete(entries.get(i).path);
+      total -= entries.get(i).size;
+    }
+
+    long stale = System.currentTimeMillis() - STALE_TEMPORARY_MILLIS;
+
+    try (DirectoryStream<Path> temporaries = Files.newDirectoryStream(directory, "*" + TEMPORARY_SUFFIX))
+    {
+      for (Path path : temporaries)
+      {
+        try
+        {
+          if (Files.getLastModifiedTime(path).toMillis() < stale)
+          {
+            delete(path);
+          }
+        }
+        catch (IOException e)
+        {
+          // Already gone.
+        }
+      }
+    }
+  }
+
+  /**
+   * List the entries in the cache, skipping any that disappear while listing them.
+   */
+  private List<Entry> entries() throws IOException
+  {
+    List<Entry> entries = new ArrayList<>();
+
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX))
+    {
+      for (Path path : paths)
+      {
+        try
+        {
+          entries.add(new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+        }
+        catch (IOException e)
+        {
+          // Evicted by another process.
+        }
+      }
+    }
+
+    return entries;
+  }
+
+  private static void delete(Path path)
+  {
+    try
+    {
+      Files.deleteIfExists(path);
+    }
+    catch (IOException e)
+    {
+      // Still in use, on platforms that don't allow deleting open files.
+    }
+  }
+
+  /**
+   * Hash the values in an array, from their bit patterns.
+   *
+   * @param values the values
+   * @param length the number of values to hash, from the start of the array
+   *
+   * @return the 64 bit hash.
+   */
+  public static long hash(float[] values, int length)
+  {
+    Hash hash = new Hash(VALUES_SEED);
+
+    for (int i = 0; i < length; i++)
+    {
+      hash.add(Float.floatToRawIntBits(values[i]));
+    }
+
+    return hash.finish(length);
+  }
+
+  /**
+   * Hash the values in a buffer, from its position up to its limit, giving the same
+   * hash as for the same values in an array.
+   *
+   * @param values the values
+   *
+   * @return the 64 bit hash.
+   */
+  public static long hash(FloatBuffer values)
+  {
+    Hash hash = new Hash(VALUES_SEED);
+
+    for (int i = values.position(); i < values.limit(); i++)
+    {
+      hash.add(Float.floatToRawIntBits(values.get(i)));
+    }
+
+    return hash.finish(values.remaining());
+  }
+
+  /**
+   * Hash the raw bytes of a file, such as a text input file, so that it can be looked
+   * up without parsing it. The hash is seeded differently from the value hashes.
+   *
+   * @param path the path of the file
+   *
+   * @return the 64 bit hash.
+   *
+   * @throws IOException if the file can't be read
+   */
+  public static long hash(Path path) throws IOException
+  {
+    Hash hash = new Hash(BYTES_SEED);
+    long length;
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+    {
+      length = channel.size();
+
+      for (long offset = 0; offset < length; offset += HASH_MAPPING_SIZE)
+      {
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                                               Math.min(HASH_MAPPING_SIZE, length - offset));
+        ByteBuffer bytes = mapping.order(ByteOrder.LITTLE_ENDIAN);
+
+        while (bytes.remaining() >= Integer.BYTES)
+        {
+          hash.add(bytes.getInt());
+        }
+
+        while (bytes.hasRemaining())
+        {
+          hash.add(bytes.get());
+        }
+      }
+    }
+
+    return hash.finish(length);
+  }
+
+  /**
+   * The key for a matrix in the cache.
+   */
+  public static final class Key
+  {
+    /**
+     * Create a key.
+     *
+     * @param hash the hash of the input
+     * @param length the number of input values
+     * @param count a count used to control the size of the matrix
+     * @param generator the name of the generator, made up of letters, digits and dashes
+     * @param precision the name of the precision the sums are accumulated in
+     */
+    public Key(long hash, int length, int count, String generator, String precision)
+    {
+      if (!generator.matches(NAME_PATTERN) || !precision.matches(NAME_PATTERN))
+      {
+        throw new IllegalArgumentException(String.format("Invalid generator or precision for the cache: %s, %s",
+                                                         generator, precision));
+      }
+
+      this.hash = hash;
+      this.length = length;
+      this.count = count;
+      this.generator = generator;
+      this.precision = precision;
+    }
+
+    /**
+     * @return the name of the entry's file in the cache directory.
+     */
+    String fileName()
+    {
+      return String.format("%016x-%d-%d-%s-%s%s", hash, length, count, generator, precision, ENTRY_SUFFIX);
+    }
+
+    @Override
+    public String toString()
+    {
+      return fileName();
+    }
+
+    private final long hash;
+    private final int length;
+    private final int count;
+    private final String generator;
+    private final String precision;
+  }
+
+  /**
+   * A 64 bit hash over 32 bit words, in the style of MurmurHash3, with two lanes
+   * taking alternate words so that their multiplies can overlap.
+   */
+  private static final class Hash
+  {
+    Hash(long seed)
+    {
+      this.low = seed;
+      this.high = ~seed;
+    }
+
+    void add(int word)
+    {
+      long k = (word & 0xffffffffL) * C1;
+
+      k = Long.rotateLeft(k, 31) * C2;
+
+      if ((words++ & 1) == 0)
+      {
+        low = Long.rotateLeft(low ^ k, 27) * 5 + 0x52dce729;
+      }
+      else
+      {
+        high = Long.rotateLeft(high ^ k, 31) * 5 + 0x38495ab5;
+      }
+    }
+
+    long finish(long length)
+    {
+      return mix(low ^ length) ^ Long.rotateLeft(mix(high + length), 32);
+    }
+
+    private static long mix(long k)
+    {
+      k ^= k >>> 33;
+      k *= 0xff51afd7ed558ccdL;
+      k ^= k >>> 33;
+      k *= 0xc4ceb9fe1a85ec53L;
+      k ^= k >>> 33;
+
+      return k;
+    }
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long low;
+    private long high;
+    private long words;
+  }
+
+  /**
+   * An entry's file, with its size and last use.
+   */
+  private static final class Entry
+  {
+    Entry(Path path, long size, long modified)
+    {
+      this.path = path;
+      this.size = size;
+      this.modified = modified;
+    }
+
+    final Path path;
+    final long size;
+    final long modified;
+  }
+
+  private static final String ENTRY_SUFFIX = ".bin";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+  private static final String NAME_PATTERN = "[A-Za-z0-9-]+";
+  private static final long STALE_TEMPORARY_MILLIS = 60 * 60 * 1000L;
+  private static final long HASH_MAPPING_SIZE = 1L << 30;
+  private static final long VALUES_SEED = 0x6d617472L;
+  private static final long BYTES_SEED = 0x74657874L;
+
+  private final Path directory;
+  private final long maxBytes;
+}
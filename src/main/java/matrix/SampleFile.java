@@ -0,0 +1,354 @@
+package matrix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes the binary sample file format, a sequence of little-endian 32 bit
+ * floats. The file may optionally start with an 8 byte header: the 4 ASCII characters
+ * "MTXF" followed by the number of samples as a little-endian 32 bit integer. Files
+ * without the header hold as many samples as fit in the file.
+ * <p>
+ * Sample files are read by memory mapping them, and the samples are returned as a
+ * FloatBuffer view of the mapping, so nothing is copied onto the heap. Files too large
+ * to map in one piece can instead be opened as a {@link SampleSource}, which reads
+ * them a block at a time.
+ * <p>
+ * A file holding several channels interleaves them, with the samples for every
+ * channel at one time step stored together, in channel order.
+ */
+public final class SampleFile
+{
+  private SampleFile()
+  {
+  }
+
+  /**
+   * Memory map a sample file, and return a view of the samples it contains.
+   *
+   * @param path the path of the sample file
+   *
+   * @return a read only buffer of the samples, with its limit set to the number of samples.
+   *
+   * @throws IOException if the file can't be read, or is not a valid sample file
+   */
+  public static FloatBuffer map(Path path) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+    {
+      long size = channel.size();
+      long offset = 0;
+      long samples = size / Float.BYTES;
+
+      ByteBuffer header = size >= HEADER_SIZE ? readHeader(channel) : null;
+
+      if (header != null && header.getInt(0) == MAGIC)
+      {
+        offset = HEADER_SIZE;
+        samples = header.getInt(Integer.BYTES) & 0xffffffffL;
+
+        if (offset + samples * Float.BYTES > size)
+        {
+          throw new IOException(String.format("Sample file is truncated, expected %d samples: %s", samples, path));
+        }
+      }
+      else if (size % Float.BYTES != 0)
+      {
+        throw new IOException("Sample file length is not a whole number of samples: " + path);
+      }
+
+      if (samples * Float.BYTES > Integer.MAX_VALUE)
+      {
+        throw new IOException("Sample file is too large to map in one piece: " + path);
+      }
+
+      return channel.map(FileChannel.MapMode.READ_ONLY, offset, samples * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+    }
+  }
+
+  /**
+   * Open a sample file as a source of samples, which reads through the file a block
+   * at a time, so that files of any size can be read with a small buffer.
+   *
+   * @param path the path of the sample file
+   *
+   * @return the source of the samples in the file, which must be closed.
+   *
+   * @throws IOException if the file can't be read, or is not a valid sample file
+   */
+  public static SampleSource open(Path path) throws IOException
+  {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+    try
+    {
+      long size = channel.size();
+      long offset = 0;
+      long samples = size / Float.BYTES;
+
+      ByteBuffer header = size >= HEADER_SIZE ? readHeader(channel) : null;
+
+      if (header != null && header.getInt(0) == MAGIC)
+      {
+        offset = HEADER_SIZE;
+        samples = header.getInt(Integer.BYTES) & 0xffffffffL;
+
+        if (offset + samples * Float.BYTES > size)
+        {
+          throw new IOException(String.format("Sample file is truncated, expected %d samples: %s", samples, path));
+        }
+      }
+      else if (size % Float.BYTES != 0)
+      {
+        throw new IOException("Sample file length is not a whole number of samples: " + path);
+      }
+
+      return new BinarySource(channel, offset, samples);
+    }
+    catch (IOException | RuntimeException e)
+    {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Separate out the samples for each channel from a buffer of interleaved samples.
+   *
+   * @param samples the interleaved samples, from the buffer's position
+   * @param length the number of samples to take for each channel
+   * @param channels the number of channels
+   *
+   * @return an array for each channel of its samples, of the given length.
+   */
+  public static float[][] deinterleave(FloatBuffer samples, int length, int channels)
+  {
+    float[][] values = new float[channels][length];
+    int base = samples.position();
+
+    for (int i = 0; i < length; i++)
+    {
+      for (int channel = 0; channel < channels; channel++)
+      {
+        values[channel][i] = samples.get(base + i * channels + channel);
+      }
+    }
+
+    return values;
+  }
+
+  /**
+   * Write samples to a sample file, with a header giving the sample count.
+   *
+   * @param path the path of the sample file to write
+   * @param samples the samples to write
+   *
+   * @throws IOException if the file can't be written
+   */
+  public static void write(Path path, float[] samples) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+      buffer.putInt(MAGIC).putInt(samples.length);
+
+      for (float sample : samples)
+      {
+        if (!buffer.hasRemaining())
+        {
+          flush(channel, buffer);
+        }
+
+        buffer.putFloat(sample);
+      }
+
+      flush(channel, buffer);
+    }
+  }
+
+  /**
+   * Convert a text file holding one sample per line (the .prn format) to a sample
+   * file, streaming through both so that the samples are never all held in memory.
+   * A file with a column per channel is converted to interleaved samples, with the
+   * values on each line written in order.
+   *
+   * @param textPath the path of the text file to read
+   * @param path the path of the sample file to write
+   *
+   * @return the number of samples converted, over all the channels.
+   *
+   * @throws IOException if either file can't be accessed
+   * @throws NumberFormatException if a line of the text file is not a valid number
+   */
+  public static long convert(Path textPath, Path path) throws IOException
+  {
+    long samples = 0;
+
+    try (BufferedReader reader = Files.newBufferedReader(textPath, StandardCharsets.US_ASCII);
+         FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+      // Write the header with a zero count for now, and fill it in at the end.
+
+      buffer.putInt(MAGIC).putInt(0);
+
+      String line;
+
+      while ((line = reader.readLine()) != null)
+      {
+        line = line.trim();
+
+        if (line.isEmpty())
+        {
+          continue;
+        }
+
+        for (String value : WHITESPACE.split(line))
+        {
+          if (!buffer.hasRemaining())
+          {
+            flush(channel, buffer);
+          }
+
+          buffer.putFloat(Float.parseFloat(value));
+          samples++;
+        }
+      }
+
+      if (samples > MAX_SAMPLES)
+      {
+        throw new IOException("Too many samples for the sample file header: " + samples);
+      }
+
+      flush(channel, buffer);
+
+      buffer.putInt((int)samples).flip();
+      channel.write(buffer, Integer.BYTES);
+    }
+
+    return samples;
+  }
+
+  /**
+   * Read the header bytes from the start of a file.
+   */
+  private static ByteBuffer readHeader(FileChannel channel) throws IOException
+  {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    while (header.hasRemaining())
+    {
+      if (channel.read(header, header.position()) < 0)
+      {
+        break;
+      }
+    }
+
+    return header;
+  }
+
+  /**
+   * Write out the contents of a buffer, and clear it ready for more values.
+   */
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+  {
+    buffer.flip();
+
+    while (buffer.hasRemaining())
+    {
+      channel.write(buffer);
+    }
+
+    buffer.clear();
+  }
+
+  /**
+   * A source of the samples in a sample file, read through a buffer from the file
+   * position of the next sample. The samples are checked to be finite as they are read.
+   */
+  private static final class BinarySource implements SampleSource
+  {
+    BinarySource(FileChannel channel, long offset, long samples)
+    {
+      this.channel = channel;
+      this.position = offset;
+      this.remaining = samples;
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public int read(float[] values, int offset, int length) throws IOException, InvalidInputException
+    {
+      int count = 0;
+
+      while (count < length && remaining > 0)
+      {
+        int block = (int)Math.min(Math.min(length - count, remaining), BUFFER_SIZE / Float.BYTES);
+
+        buffer.clear().limit(block * Float.BYTES);
+
+        while (buffer.hasRemaining())
+        {
+          if (channel.read(buffer, position + buffer.position()) < 0)
+          {
+            throw new IOException("Sample file ended before the expected number of samples");
+          }
+        }
+
+        buffer.flip();
+        buffer.asFloatBuffer().get(values, offset + count, block);
+
+        for (int i = offset + count; i < offset + count + block; i++)
+        {
+          if (Float.isInfinite(values[i]) || Float.isNaN(values[i]))
+          {
+            throw new InvalidInputException("Invalid input data in data file: " + Float.toString(values[i]));
+          }
+        }
+
+        position += block * Float.BYTES;
+        remaining -= block;
+        count += block;
+      }
+
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      channel.close();
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long position;
+    private long remaining;
+  }
+
+  // "MTXF" as a little-endian integer.
+  private static final int MAGIC = 'M' | 'T' << 8 | 'X' << 16 | 'F' << 24;
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private static final int HEADER_SIZE = 8;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // The header count is read back as unsigned, so it can describe up to 2^32 - 1 samples.
+  private static final long MAX_SAMPLES = 0xffffffffL;
+}
@@ -0,0 +1,693 @@
+package matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A streaming parser for text input files holding one value per line (the .prn
+ * format). The file is read through a large byte buffer, and values are parsed
+ * directly from the bytes, so no String is created for each line. Reading stops
+ * as soon as the requested number of values has been parsed, and the values are
+ * checked to be finite in the same pass.
+ * <p>
+ * Plain decimal values with a mantissa below 2^53 (about 15 significant digits)
+ * and a small exponent are parsed with an exact fast path. Anything else, including
+ * values that the fast path can't round exactly, falls back to Float.parseFloat, so
+ * the results are always identical to parsing each line with Float.parseFloat.
+ * <p>
+ * Files with several channels have one column per channel, with the values on each
+ * line separated by whitespace.
+ * <p>
+ * Inputs too large to hold in memory can instead be opened as a {@link SampleSource},
+ * which parses the values in the same way a block at a time as they are read.
+ */
+public final class SampleParser
+{
+  private SampleParser()
+  {
+  }
+
+  /**
+   * Parse the first values from a text input file. Lines are ended by a line feed,
+   * a carriage return, or both, in the same way as Files.lines.
+   *
+   * @param path the path to the file containing the input data
+   * @param length the number of values to parse
+   *
+   * @return an array of the parsed values, of the given length.
+   *
+   * @throws IOException if the file can't be read
+   * @throws InvalidInputException if the file has too few lines, if a line is not
+   *         a valid number, or if a value is not finite. These are checked in that
+   *         order, so the error is the same as parsing every line and then checking
+   *         the values would give.
+   */
+  public static float[] parse(Path path, int length) throws IOException, InvalidInputException
+  {
+    return parseRows(path, length, 1);
+  }
+
+  /**
+   * Open a text input file holding one value per line as a source of samples, which
+   * streams through the file and parses the values as they are read. Only a single
+   * buffer is held in memory, however large the file is.
+   *
+   * @param path the path to the file containing the input data
+   *
+   * @return the source of the values in the file, which must be closed.
+   *
+   * @throws IOException if the file can't be opened
+   */
+  public static SampleSource open(Path path) throws IOException
+  {
+    return new TextSource(FileChannel.open(path, StandardOpenOption.READ));
+  }
+
+  /**
+   * Parse the first rows from a text input file with one column per channel, and
+   * separate out the values for each channel.
+   *
+   * @param path the path to the file containing the input data
+   * @param length the number of rows to parse, i.e. the number of values for each channel
+   * @param channels the number of values on each line
+   *
+   * @return an array for each channel of the parsed values, of the given length.
+   *
+   * @throws IOException if the file can't be read
+   * @throws InvalidInputException if the file has too few lines, if a line doesn't
+   *         have a valid number for each channel, or if a value is not finite.
+   */
+  public static float[][] parseChannels(Path path, int length, int channels) throws IOException, InvalidInputException
+  {
+    float[] rows = parseRows(path, length, channels);
+    float[][] values = new float[channels][length];
+
+    for (int i = 0; i < length; i++)
+    {
+      for (int channel = 0; channel < channels; channel++)
+      {
+        values[channel][i] = rows[i * channels + channel];
+      }
+    }
+
+    return values;
+  }
+
+  /**
+   * Parse the first lines from a text input file, each holding the given number of
+   * values. The values are returned row by row in a single array.
+   *
+   * @param path the path to the file containing the input data
+   * @param length the number of lines to parse
+   * @param channels the number of values on each line
+   *
+   * @return an array of the parsed values, of length * channels.
+   */
+  private static float[] parseRows(Path path, int length, int channels) throws IOException, InvalidInputException
+  {
+    if ((long)length * channels > Integer.MAX_VALUE - 8)
+    {
+      throw new IllegalArgumentException(String.format("Too many input values for length %d with %d channels",
+                                                       length, channels));
+    }
+
+    float[] values = new float[length * channels];
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+    {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      byte[] bytes = buffer.array();
+
+      int lines = 0;            // Number of lines found so far.
+      int start = 0;            // Start of the current line in the buffer.
+      int pos = 0;              // Position of the scan for the end of the current line.
+      int limit = 0;            // End of the bytes read into the buffer.
+      boolean eof = false;
+      boolean skipLineFeed = false;
+
+      String invalid = null;    // Error for the first value that couldn't be parsed.
+      int nonFinite = -1;       // Index of the first value that is infinite or NaN.
+
+      while (lines < length)
+      {
+        if (pos == limit)
+        {
+          if (eof)
+          {
+            if (start < limit)
+            {
+              // The last line has no line ending.
+
+              if (invalid == null)
+              {
+                invalid = parseRow(bytes, start, limit, values, lines, channels);
+              }
+
+              if (nonFinite < 0)
+              {
+                nonFinite = findNonFinite(values, lines, channels);
+              }
+
+              lines++;
+            }
+
+            break;
+          }
+
+          // Move the partial line to the start of the buffer and read some more,
+          // growing the buffer if the line doesn't fit.
+
+          if (start == 0 && limit == bytes.length)
+          {
+            ByteBuffer larger = ByteBuffer.allocate(bytes.length * 2);
+
+            larger.put(bytes, 0, limit);
+            buffer = larger;
+            bytes = buffer.array();
+          }
+          else
+          {
+            System.arraycopy(bytes, start, bytes, 0, limit - start);
+          }
+
+          limit -= start;
+          pos -= start;
+          start = 0;
+
+          buffer.clear().position(limit);
+
+          int read = channel.read(buffer);
+
+          if (read < 0)
+          {
+            eof = true;
+          }
+          else
+          {
+            limit += read;
+          }
+
+          continue;
+        }
+
+        byte b = bytes[pos];
+
+        if (skipLineFeed)
+        {
+          // The second half of a CR LF pair.
+
+          skipLineFeed = false;
+
+          if (b == '\n')
+          {
+            start = ++pos;
+            continue;
+          }
+        }
+
+        if (b == '\n' || b == '\r')
+        {
+          if (invalid == null)
+          {
+            invalid = parseRow(bytes, start, pos, values, lines, channels);
+          }
+
+          if (nonFinite < 0)
+          {
+            nonFinite = findNonFinite(values, lines, channels);
+          }
+
+          lines++;
+          skipLineFeed = b == '\r';
+          start = ++pos;
+        }
+        else
+        {
+          pos++;
+        }
+      }
+
+      if (lines < length)
+      {
+        throw new InvalidInputException(String.format("Not enough input values for length %d", length));
+      }
+
+      if (invalid != null)
+      {
+        throw new InvalidInputException("Invalid value in input file: " + invalid);
+      }
+
+      if (nonFinite >= 0)
+      {
+        throw new InvalidInputException("Invalid input data in data file: " + Float.toString(values[nonFinite]));
+      }
+    }
+
+    return values;
+  }
+
+  /**
+   * Parse the values on a single line into the array of values. A line for a single
+   * channel is parsed whole, as Float.parseFloat would, while the values on a line for
+   * several channels are separated by whitespace.
+   *
+   * @param bytes the buffer holding the line
+   * @param from the index of the first byte of the line
+   * @param to the index after the last byte of the line
+   * @param values the array to receive the values
+   * @param line the index of the line
+   * @param channels the number of values on the line
+   *
+   * @return null if the values were parsed, otherwise the reason they couldn't be.
+   */
+  private static String parseRow(byte[] bytes, int from, int to, float[] values, int line, int channels)
+  {
+    if (channels == 1)
+    {
+      return parseLine(bytes, from, to, values, line);
+    }
+
+    int index = line * channels;
+    int found = 0;
+
+    while (true)
+    {
+      while (from < to && (bytes[from] & 0xff) <= ' ')
+      {
+        from++;
+      }
+
+      if (from == to)
+      {
+        break;
+      }
+
+      int end = from;
+
+      while (end < to && (bytes[end] & 0xff) > ' ')
+      {
+        end++;
+      }
+
+      if (found == channels)
+      {
+        found++;
+        break;
+      }
+
+      String invalid = parseLine(bytes, from, end, values, index + found);
+
+      if (invalid != null)
+      {
+        return invalid;
+      }
+
+      found++;
+      from = end;
+    }
+
+    if (found != channels)
+    {
+      return String.format("expected %d values on line %d", channels, line + 1);
+    }
+
+    return null;
+  }
+
+  /**
+   * Find the first value on a line that is infinite or NaN.
+   *
+   * @param values the array of values
+   * @param line the index of the line
+   * @param channels the number of values on the line
+   *
+   * @return the index of the value, or -1 if they are all finite.
+   */
+  private static int findNonFinite(float[] values, int line, int channels)
+  {
+    for (int i = line * channels; i < (line + 1) * channels; i++)
+    {
+      if (Float.isInfinite(values[i]) || Float.isNaN(values[i]))
+      {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Parse the value on a single line into the array of values.
+   *
+   * @param bytes the buffer holding the line
+   * @param from the index of the first byte of the line
+   * @param to the index after the last byte of the line
+   * @param values the array to receive the value
+   * @param index the index in the array for the value
+   *
+   * @return null if the value was parsed, otherwise the reason it couldn't be.
+   */
+  private static String parseLine(byte[] bytes, int from, int to, float[] values, int index)
+  {
+    float value = parseDecimal(bytes, from, to);
+
+    if (Float.isNaN(value))
+    {
+      // Fall back on the standard parser for anything the fast path can't handle.
+      // This also gives the same error message as before for invalid values.
+
+      try
+      {
+        value = Float.parseFloat(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+      }
+      catch (NumberFormatException e)
+      {
+        return e.getLocalizedMessage();
+      }
+    }
+
+    values[index] = value;
+
+    return null;
+  }
+
+  /**
+   * Parse a plain decimal value, with optional sign, fraction and exponent, from
+   * a range of bytes. This uses the fact that a decimal mantissa below 2^53 and a
+   * power of ten up to 10^22 are exact doubles, so a single multiply or divide
+   * gives the correctly rounded double. Rounding that to a float is also correct,
+   * unless the double lands exactly half way between two floats, which is left to
+   * the slow path.
+   *
+   * @param bytes the buffer holding the value
+   * @param from the index of the first byte of the value
+   * @param to the index after the last byte of the value
+   *
+   * @return the value, or NaN if it can't be parsed exactly by this method.
+   */
+  private static float parseDecimal(byte[] bytes, int from, int to)
+  {
+    // Whitespace is ignored at either end, as with Float.parseFloat.
+
+    while (from < to && (bytes[from] & 0xff) <= ' ')
+    {
+      from++;
+    }
+
+    while (to > from && (bytes[to - 1] & 0xff) <= ' ')
+    {
+      to--;
+    }
+
+    int i = from;
+    boolean negative = false;
+
+    if (i < to && (bytes[i] == '-' || bytes[i] == '+'))
+    {
+      negative = bytes[i++] == '-';
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean any = false;
+    boolean fraction = false;
+
+    for (; i < to; i++)
+    {
+      int b = bytes[i];
+
+      if (b == '.' && !fraction)
+      {
+        fraction = true;
+        continue;
+      }
+
+      if (b < '0' || b > '9')
+      {
+        break;
+      }
+
+      any = true;
+
+      if (mantissa == 0 && b == '0')
+      {
+        // Leading zeros aren't significant, but do scale a fraction.
+
+        if (fraction)
+        {
+          exponent--;
+        }
+
+        continue;
+      }
+
+      if (digits == MAX_DIGITS)
+      {
+        return Float.NaN;
+      }
+
+      mantissa = mantissa * 10 + (b - '0');
+      digits++;
+
+      if (fraction)
+      {
+        exponent--;
+      }
+    }
+
+    if (!any)
+    {
+      return Float.NaN;
+    }
+
+    if (i < to && (bytes[i] == 'e' || bytes[i] == 'E'))
+    {
+      i++;
+
+      boolean negativeExponent = false;
+
+      if (i < to && (bytes[i] == '-' || bytes[i] == '+'))
+      {
+        negativeExponent = bytes[i++] == '-';
+      }
+
+      if (i == to)
+      {
+        return Float.NaN;
+      }
+
+      int value = 0;
+
+      for (; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++)
+      {
+        if (value > MAX_EXPONENT_DIGITS_VALUE)
+        {
+          return Float.NaN;
+        }
+
+        value = value * 10 + (bytes[i] - '0');
+      }
+
+      exponent += negativeExponent ? -value : value;
+    }
+
+    if (i != to)
+    {
+      // Trailing characters, such as the f or d suffixes, or invalid values.
+      return Float.NaN;
+    }
+
+    if (mantissa == 0)
+    {
+      return negative ? -0.0f : 0.0f;
+    }
+
+    if (mantissa > MAX_EXACT_MANTISSA || exponent < -MAX_EXACT_EXPONENT || exponent > MAX_EXACT_EXPONENT)
+    {
+      return Float.NaN;
+    }
+
+    double d = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+
+    if (d > Float.MAX_VALUE || d < Float.MIN_NORMAL)
+    {
+      return Float.NaN;
+    }
+
+    if ((Double.doubleToRawLongBits(d) & FLOAT_ROUNDING_MASK) == FLOAT_ROUNDING_HALF)
+    {
+      return Float.NaN;
+    }
+
+    float f = (float)d;
+
+    return negative ? -f : f;
+  }
+
+  /**
+   * A source of the samples in a text input file, parsed a line at a time as they
+   * are read. Unlike parse, this reports an invalid value as soon as it is reached,
+   * as the lines after it may never be read.
+   */
+  private static final class TextSource implements SampleSource
+  {
+    TextSource(FileChannel channel)
+    {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      this.bytes = buffer.array();
+    }
+
+    @Override
+    public int read(float[] values, int offset, int length) throws IOException, InvalidInputException
+    {
+      int count = 0;
+
+      while (count < length)
+      {
+        if (pos == limit)
+        {
+          if (eof)
+          {
+            if (start < limit)
+            {
+              // The last line has no line ending.
+
+              parseSample(start, limit, values, offset + count);
+              count++;
+              start = limit;
+            }
+
+            break;
+          }
+
+          fill();
+          continue;
+        }
+
+        byte b = bytes[pos];
+
+        if (skipLineFeed)
+        {
+          // The second half of a CR LF pair.
+
+          skipLineFeed = false;
+
+          if (b == '\n')
+          {
+            start = ++pos;
+            continue;
+          }
+        }
+
+        if (b == '\n' || b == '\r')
+        {
+          parseSample(start, pos, values, offset + count);
+          count++;
+          skipLineFeed = b == '\r';
+          start = ++pos;
+        }
+        else
+        {
+          pos++;
+        }
+      }
+
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      channel.close();
+    }
+
+    /**
+     * Move the partial line to the start of the buffer and read some more, growing
+     * the buffer if the line doesn't fit.
+     */
+    private void fill() throws IOException
+    {
+      if (start == 0 && limit == bytes.length)
+      {
+        ByteBuffer larger = ByteBuffer.allocate(bytes.length * 2);
+
+        larger.put(bytes, 0, limit);
+        buffer = larger;
+        bytes = buffer.array();
+      }
+      else
+      {
+        System.arraycopy(bytes, start, bytes, 0, limit - start);
+      }
+
+      limit -= start;
+      pos -= start;
+      start = 0;
+
+      buffer.clear().position(limit);
+
+      int read = channel.read(buffer);
+
+      if (read < 0)
+      {
+        eof = true;
+      }
+      else
+      {
+        limit += read;
+      }
+    }
+
+    /**
+     * Parse the value on a line, and check that it is finite.
+     */
+    private void parseSample(int from, int to, float[] values, int index) throws InvalidInputException
+    {
+      String invalid = parseLine(bytes, from, to, values, index);
+
+      if (invalid != null)
+      {
+        throw new InvalidInputException("Invalid value in input file: " + invalid);
+      }
+
+      if (Float.isInfinite(values[index]) || Float.isNaN(values[index]))
+      {
+        throw new InvalidInputException("Invalid input data in data file: " + Float.toString(values[index]));
+      }
+    }
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private byte[] bytes;
+
+    private int start;            // Start of the current line in the buffer.
+    private int pos;              // Position of the scan for the end of the current line.
+    private int limit;            // End of the bytes read into the buffer.
+    private boolean eof;
+    private boolean skipLineFeed;
+  }
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  // Limits of the exact fast path.
+  private static final int MAX_DIGITS = 18;
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  private static final int MAX_EXACT_EXPONENT = 22;
+  private static final int MAX_EXPONENT_DIGITS_VALUE = 10000;
+
+  // The 29 low bits of a double mantissa that are dropped when rounding to a float,
+  // and their value when the double is exactly half way between two floats.
+  private static final long FLOAT_ROUNDING_MASK = (1L << 29) - 1;
+  private static final long FLOAT_ROUNDING_HALF = 1L << 28;
+
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+}
@@ -0,0 +1,29 @@
+package matrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of input samples that are read a block at a time, so that an input far
+ * larger than the heap, or than the largest array, can be streamed through a small
+ * buffer. {@link SampleParser#open} reads text input files, and {@link SampleFile#open}
+ * reads binary sample files.
+ */
+public interface SampleSource extends Closeable
+{
+  /**
+   * Read the next samples into an array, blocking until the array range is filled
+   * or the input ends.
+   *
+   * @param values the array to receive the samples
+   * @param offset the index in the array for the first sample
+   * @param length the number of samples to read
+   *
+   * @return the number of samples read, which is less than the length only at the
+   *         end of the input.
+   *
+   * @throws IOException if the input can't be read
+   * @throws InvalidInputException if a sample is not a valid finite number
+   */
+  int read(float[] values, int offset, int length) throws IOException, InvalidInputException;
+}
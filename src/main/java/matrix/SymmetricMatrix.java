@@ -0,0 +1,59 @@
+package matrix;
+
+/**
+ * A square matrix whose values are mirrored about the main diagonal, so that the
+ * value at (row, col) is always the same as the value at (col, row). Implementations
+ * only need to store the cells on and above the main diagonal.
+ */
+public interface SymmetricMatrix
+{
+  /**
+   * @return the number of rows (and columns) in the matrix.
+   */
+  int size();
+
+  /**
+   * Get the value of a cell in the matrix.
+   *
+   * @param row the row index of the cell
+   * @param col the column index of the cell
+   *
+   * @return the value at (row, col), which is the same as the value at (col, row).
+   */
+  float get(int row, int col);
+
+  /**
+   * Set the value of a cell in the matrix, which also sets its mirror image.
+   *
+   * @param row the row index of the cell
+   * @param col the column index of the cell
+   * @param value the new value for the cells at (row, col) and (col, row)
+   */
+  void set(int row, int col, float value);
+
+  /**
+   * Copy the values into a full two dimensional array, for callers that need both
+   * halves of the matrix stored explicitly.
+   *
+   * @return a two dimensional array of floats, representing the values in the matrix.
+   */
+  default float[][] toArray()
+  {
+    final int size = size();
+
+    float[][] matrix = new float[size][size];
+
+    for (int row = 0; row < size; row++)
+    {
+      for (int col = row; col < size; col++)
+      {
+        float value = get(row, col);
+
+        matrix[row][col] = value;
+        matrix[col][row] = value;
+      }
+    }
+
+    return matrix;
+  }
+}
@@ -0,0 +1,48 @@
+package matrix;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for the tasks that the generators run on an executor.
+ */
+final class Tasks
+{
+  private Tasks()
+  {
+  }
+
+  /**
+   * Wait for a task to finish and get its result. A task that failed rethrows its
+   * runtime exception or error on the calling thread, as if it had been run there,
+   * rather than wrapped in an ExecutionException. The tasks don't throw checked
+   * exceptions, so any other cause is wrapped in an IllegalStateException.
+   *
+   * @param future the task
+   *
+   * @return the result of the task.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting for the task
+   */
+  static <T> T get(Future<T> future) throws InterruptedException
+  {
+    try
+    {
+      return future.get();
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException)e.getCause();
+      }
+
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error)e.getCause();
+      }
+
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
@@ -3,9 +3,11 @@ package matrix;
 /**
  * Unoptimized version of the algorithm to generate the values in the matrix.
  * This uses 3 unoptimized loops to generate the cells in row/column ordering,
- * with an inner summation loop. For 300 input values and a count of 4, this will
- * find the result using 7400 additions and 7400 multiplications. This is provided
- * as a reference against the optimized class, for comparison of the results.
+ * with an inner summation loop. For 300 input values and a count of 4, the full
+ * matrix would take 7400 additions and 7400 multiplications. As the matrix is
+ * symmetric, only the 15 cells on and above the main diagonal are computed, which
+ * takes 4440 of each. This is provided as a reference against the optimized class,
+ * for comparison of the results.
  */
 public class UnoptimizedMatrixGenerator implements MatrixGenerator
 {
@@ -14,17 +16,17 @@ public class UnoptimizedMatrixGenerator implements MatrixGenerator
    *
    * @param input an array of floating point values
    * @param count a count used to control the size of the matrix
-   *
-   * @return a two dimensional array of floats, representing the values in the matrix.
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
    */
   @Override
-  public float[][] generate(float[] input, int count)
+  public void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
   {
-    float[][] matrix = new float[count+1][count+1];
+    workspace.check(input.length, count);
 
     for (int k = 0; k <= count; k++)
     {
-      for (int j = 0; j <= count; j++)
+      for (int j = k; j <= count; j++)
       {
         double sum = 0.0f;
 
@@ -33,10 +35,26 @@ public class UnoptimizedMatrixGenerator implements MatrixGenerator
           sum += input[i-k] * input[i-j];
         }
 
-        matrix[k][j] = (float)sum;
+        result.set(k, j, (float)sum);
       }
     }
+  }
+
+  /**
+   * Count the operations for a matrix. Every cell on and above the main diagonal
+   * does one multiply and one add, reading two input values, for each i from c to N-1.
+   *
+   * @param length the number of input values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the operations a generate call performs.
+   */
+  @Override
+  public OperationCount countOperations(int length, int count)
+  {
+    long cells = (long)(count + 1) * (count + 2) / 2;
+    long terms = cells * Math.max(0, length - count);
 
-    return matrix;
+    return new OperationCount(terms, terms, terms * 2 * Float.BYTES + cells * Float.BYTES);
   }
 }
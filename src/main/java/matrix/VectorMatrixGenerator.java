@@ -0,0 +1,173 @@
+package matrix;
+
+/**
+ * A matrix generator with a SIMD kernel for the products and lag sums, where almost
+ * all of the work is done. It works in the same way as the recurrence generator, with
+ * the top row cell of each diagonal summed over the whole input, and the cells below
+ * it found by walking down the diagonal.
+ * <p>
+ * The lag sums are reductions, which the JIT doesn't vectorize in the other
+ * generators. On Java 17 and later, run with --add-modules jdk.incubator.vector, the
+ * sums use the Vector API at the widest vector size the processor supports, with the
+ * products formed in single precision and widened into double precision accumulators.
+ * Otherwise they use a scalar loop split across several accumulators. Either way, the
+ * sums are added in a different order to the other generators, so the results match
+ * them within rounding rather than exactly.
+ * <p>
+ * Optionally, the lag sums can be accumulated in single precision rather than
+ * widening every product to double, which doubles the number of vector lanes. The
+ * sums are then blocked and added pairwise to keep the rounding error down, and
+ * {@link #errorBound} gives the worst case difference from the double precision sums
+ * for an input. The walk down each diagonal stays in double precision.
+ */
+public class VectorMatrixGenerator implements MatrixGenerator
+{
+  /**
+   * Create a generator that accumulates the lag sums in double precision.
+   */
+  public VectorMatrixGenerator()
+  {
+    this(false);
+  }
+
+  /**
+   * Create a generator that accumulates the lag sums in the given precision.
+   *
+   * @param singlePrecision true to accumulate in single precision, false for double
+   */
+  public VectorMatrixGenerator(boolean singlePrecision)
+  {
+    this.singlePrecision = singlePrecision;
+  }
+
+  /**
+   * Generate the values in the matrix by computing the top row with the kernel, and
+   * then walking each diagonal on and above the main diagonal down towards the bottom
+   * right.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   * @param result the matrix to receive the values, of size count + 1
+   * @param workspace scratch space sized for at least the input length and count
+   */
+  @Override
+  public void generate(float[] input, int count, SymmetricMatrix result, MatrixWorkspace workspace)
+  {
+    workspace.check(input.length, count);
+
+    // With no more than count values, every sum is empty.
+
+    if (count >= input.length)
+    {
+      for (int k = 0; k <= count; k++)
+      {
+        for (int j = k; j <= count; j++)
+        {
+          result.set(k, j, 0.0f);
+        }
+      }
+
+      return;
+    }
+
+    float[] stack = singlePrecision ? workspace.partialSums() : null;
+
+    for (int col = 0; col <= count; col++)
+    {
+      double sum = singlePrecision ? LagKernel.lagSumSingle(input, count, input.length, col, stack)
+                                   : LagKernel.lagSum(input, count, input.length, col);
+
+      RecurrenceMatrixGenerator.walkDiagonal(col, input, count, sum, result);
+    }
+  }
+
+  /**
+   * Count the operations for a matrix, which are the same as for the recurrence
+   * generator.
+   *
+   * @param length the number of input values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the operations a generate call performs.
+   */
+  @Override
+  public OperationCount countOperations(int length, int count)
+  {
+    return new RecurrenceMatrixGenerator().countOperations(length, count);
+  }
+
+  /**
+   * Find the worst case difference between a cell accumulated in single precision and
+   * the same cell accumulated in double precision, for the given input and count.
+   * Each product in a lag sum passes through at most m float adds, with m counting the
+   * adds within its block, across the lanes, and between the blocks, so the sums
+   * differ by at most gamma(m) = m * u / (1 - m * u) times the sum of the absolute
+   * products, for the float unit roundoff u = 2^-24. That sum is at most the sum of
+   * the squares of the input, as |a * b| <= (a^2 + b^2) / 2. Both precisions form the
+   * same single precision products and round the cells to float in the same way, so
+   * neither counts towards the difference.
+   *
+   * @param input an array of floating point values
+   * @param count a count used to control the size of the matrix
+   *
+   * @return the bound on the absolute difference for any cell.
+   */
+  public static double errorBound(float[] input, int count)
+  {
+    return count < input.length ? sumErrorBound(input, input.length - count) : 0.0;
+  }
+
+  /**
+   * Find the worst case difference between a lag sum over the given number of
+   * products accumulated in single precision and the same sum accumulated in double
+   * precision, as for {@link #errorBound}.
+   *
+   * @param input an array of floating point values
+   * @param products the number of products in the sum, at least one
+   *
+   * @return the bound on the absolute difference.
+   */
+  static double sumErrorBound(float[] input, int products)
+  {
+    double energy = 0.0;
+
+    for (float value : input)
+    {
+      energy += (double)value * value;
+    }
+
+    final long blocks = ((long)products + LagSums.BLOCK - 1) / LagSums.BLOCK;
+    final int levels = 64 - Long.numberOfLeadingZeros(blocks - 1);
+
+    // Up to BLOCK / 8 adds into an accumulator, a partial block's remainder, the sum
+    // across the accumulators and their lanes, allowing 32 adds as the vector kernel
+    // may add the lanes in any order, and each block sum's adds in the pairwise tree
+    // and the final collapse of the stack.
+
+    final double adds = LagSums.BLOCK / 8 + 8 + 32 + 2 * levels + 1;
+    final double u = Math.scalb(1.0, -24);
+
+    return adds * u / (1 - adds * u) * energy;
+  }
+
+  /**
+   * @return true if the lag sums are accumulated in single precision.
+   */
+  public boolean isSinglePrecision()
+  {
+    return singlePrecision;
+  }
+
+  /**
+   * Describe the kernel the generator uses on this JVM, either "scalar", or "vector"
+   * and the vector size.
+   *
+   * @return the description.
+   */
+  public static String kernel()
+  {
+    return LagKernel.describe();
+  }
+
+  private final boolean singlePrecision;
+}
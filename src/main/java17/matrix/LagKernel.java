@@ -0,0 +1,57 @@
+package matrix;
+
+/**
+ * The kernel for the lag sums of the {@link VectorMatrixGenerator}. This is the
+ * version for Java 17 and later, which uses {@link VectorLagSums} if the
+ * jdk.incubator.vector module has been added to the JVM, and the scalar
+ * {@link LagSums} otherwise. VectorLagSums is only loaded when the module is there.
+ */
+final class LagKernel
+{
+  private LagKernel()
+  {
+  }
+
+  /**
+   * Sum the products x[i] * x[i-lag] for i from 'from' up to 'to'.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   *
+   * @return the sum.
+   */
+  static double lagSum(float[] input, int from, int to, int lag)
+  {
+    return VECTOR ? VectorLagSums.lagSum(input, from, to, lag) : LagSums.lagSum(input, from, to, lag);
+  }
+
+  /**
+   * Sum the products x[i] * x[i-lag] for i from 'from' up to 'to', in single
+   * precision, with blocked pairwise summation.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   * @param stack a buffer for the pairwise partial sums, at least {@link LagSums#STACK_SIZE} long
+   *
+   * @return the sum.
+   */
+  static double lagSumSingle(float[] input, int from, int to, int lag, float[] stack)
+  {
+    return VECTOR ? VectorLagSums.lagSumSingle(input, from, to, lag, stack)
+                  : LagSums.lagSumSingle(input, from, to, lag, stack);
+  }
+
+  /**
+   * @return a description of the kernel in use.
+   */
+  static String describe()
+  {
+    return VECTOR ? VectorLagSums.describe() : "scalar";
+  }
+
+  private static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+}
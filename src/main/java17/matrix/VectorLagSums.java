@@ -0,0 +1,128 @@
+package matrix;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernel for the lag sums of the vector generator. The products are
+ * formed a full float vector at a time, giving the same single precision products as
+ * the scalar code, and each half of the vector is widened into its own double
+ * precision accumulator, so the sums keep the accuracy of the other generators.
+ * <p>
+ * In single precision, the products are summed without widening, so twice as many
+ * lanes are added at once. Each block of products is summed across four float vector
+ * accumulators, with as many adds into each lane as the scalar kernel makes into each
+ * of its accumulators, and the block sums are added pairwise, as in the scalar kernel.
+ */
+final class VectorLagSums
+{
+  private VectorLagSums()
+  {
+  }
+
+  /**
+   * Sum the products x[i] * x[i-lag] for i from 'from' up to 'to'.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   *
+   * @return the sum.
+   */
+  static double lagSum(float[] input, int from, int to, int lag)
+  {
+    DoubleVector low = DoubleVector.zero(DOUBLES);
+    DoubleVector high = DoubleVector.zero(DOUBLES);
+    int i = from;
+
+    for (final int bound = to - FLOATS.length(); i <= bound; i += FLOATS.length())
+    {
+      FloatVector products = FloatVector.fromArray(FLOATS, input, i)
+                                        .mul(FloatVector.fromArray(FLOATS, input, i - lag));
+
+      low = low.add((DoubleVector)products.convertShape(VectorOperators.F2D, DOUBLES, 0));
+      high = high.add((DoubleVector)products.convertShape(VectorOperators.F2D, DOUBLES, 1));
+    }
+
+    double sum = low.add(high).reduceLanes(VectorOperators.ADD);
+
+    for (; i < to; i++)
+    {
+      sum += input[i] * input[i - lag];
+    }
+
+    return sum;
+  }
+
+  /**
+   * Sum the products x[i] * x[i-lag] for i from 'from' up to 'to', in single
+   * precision, with blocked pairwise summation.
+   *
+   * @param input the array of input data
+   * @param from the first index to include, at least the lag
+   * @param to the index after the last one to include
+   * @param lag the distance between the two values in each product
+   * @param stack a buffer for the pairwise partial sums, at least {@link LagSums#STACK_SIZE} long
+   *
+   * @return the sum.
+   */
+  static double lagSumSingle(float[] input, int from, int to, int lag, float[] stack)
+  {
+    // Each lane of the accumulators takes as many products per block as each of the
+    // scalar kernel's accumulators do, so the rounding error is the same, but the
+    // block holds a vector's worth of those.
+
+    final int step = 4 * FLOATS.length();
+    final int block = step * (LagSums.BLOCK / 8);
+
+    int depth = 0, blocks = 0;
+
+    for (int start = from; start < to; start += block)
+    {
+      final int end = Math.min(start + block, to);
+
+      FloatVector sum0 = FloatVector.zero(FLOATS);
+      FloatVector sum1 = FloatVector.zero(FLOATS);
+      FloatVector sum2 = FloatVector.zero(FLOATS);
+      FloatVector sum3 = FloatVector.zero(FLOATS);
+      int i = start;
+
+      for (; i + step <= end; i += step)
+      {
+        sum0 = sum0.add(products(input, i, lag));
+        sum1 = sum1.add(products(input, i + FLOATS.length(), lag));
+        sum2 = sum2.add(products(input, i + 2 * FLOATS.length(), lag));
+        sum3 = sum3.add(products(input, i + 3 * FLOATS.length(), lag));
+      }
+
+      float sum = sum0.add(sum1).add(sum2.add(sum3)).reduceLanes(VectorOperators.ADD)
+                + LagSums.blockSum(input, i, end, lag);
+
+      depth = LagSums.push(stack, depth, blocks++, sum);
+    }
+
+    return LagSums.collapse(stack, depth);
+  }
+
+  /**
+   * Form a vector of the products x[i] * x[i-lag] in single precision.
+   */
+  private static FloatVector products(float[] input, int i, int lag)
+  {
+    return FloatVector.fromArray(FLOATS, input, i).mul(FloatVector.fromArray(FLOATS, input, i - lag));
+  }
+
+  /**
+   * @return a description of the vector size.
+   */
+  static String describe()
+  {
+    return "vector " + FLOATS.vectorBitSize() + " bit";
+  }
+
+  private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Double> DOUBLES = VectorSpecies.of(double.class, FLOATS.vectorShape());
+}
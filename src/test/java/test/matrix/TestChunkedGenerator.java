@@ -0,0 +1,113 @@
+package test.matrix;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import matrix.ChunkedMatrixGenerator;
+import matrix.PackedSymmetricMatrix;
+import matrix.SampleFile;
+import matrix.SampleParser;
+import matrix.SampleSource;
+import matrix.SymmetricMatrix;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestChunkedGenerator
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  @Test
+  public void testMatchesWholeInput() throws Exception
+  {
+    float[] input = TestData.load(300);
+    Path path = Paths.get(TestChunkedGenerator.class.getClassLoader().getResource("test.prn").toURI());
+    
+    for (int count : new int[] { 0, 4, 17 })
+    {
+      float[][] expected = new UnoptimizedMatrixGenerator().generate(input, count);
+      
+      for (int chunkSize : new int[] { 1, 7, 64, 1000 })
+      {
+        try (SampleSource source = SampleParser.open(path))
+        {
+          SymmetricMatrix result = new ChunkedMatrixGenerator(chunkSize).generate(source, Long.MAX_VALUE, count);
+          
+          TestData.assertMatrixEquals(expected, result.toArray(), DELTA);
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void testParallelMatchesSerial() throws Exception
+  {
+    float[] input = TestData.load(300);
+    Path path = folder.newFile("input.bin").toPath();
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    
+    SampleFile.write(path, input);
+    
+    try
+    {
+      for (int chunkSize : new int[] { 1, 7, 64 })
+      {
+        float[][] serial, parallel;
+        
+        try (SampleSource source = SampleFile.open(path))
+        {
+          serial = new ChunkedMatrixGenerator(chunkSize).generate(source, Long.MAX_VALUE, 8).toArray();
+        }
+        
+        try (SampleSource source = SampleFile.open(path))
+        {
+          parallel = new ChunkedMatrixGenerator(chunkSize, executor, 3).generate(source, Long.MAX_VALUE, 8).toArray();
+        }
+        
+        TestData.assertMatrixEquals(serial, parallel, 0.0f);
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testLength() throws Exception
+  {
+    float[] input = TestData.load(200);
+    Path path = folder.newFile("input.bin").toPath();
+    
+    SampleFile.write(path, TestData.load(300));
+    
+    try (SampleSource source = SampleFile.open(path))
+    {
+      SymmetricMatrix result = new PackedSymmetricMatrix(5);
+      
+      assertEquals(200, new ChunkedMatrixGenerator(32).generate(source, 200, 4, result));
+      
+      TestData.assertMatrixEquals(new UnoptimizedMatrixGenerator().generate(input, 4), result.toArray(), DELTA);
+    }
+    
+    try (SampleSource source = SampleFile.open(path))
+    {
+      // Too few samples for the count leaves the matrix empty.
+      
+      SymmetricMatrix result = new PackedSymmetricMatrix(5);
+      
+      assertEquals(3, new ChunkedMatrixGenerator(32).generate(source, 3, 4, result));
+      
+      TestData.assertMatrixEquals(new float[5][5], result.toArray(), 0.0f);
+    }
+  }
+  
+  private static final float DELTA = 0.000001f;
+}
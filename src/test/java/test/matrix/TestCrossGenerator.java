@@ -0,0 +1,103 @@
+package test.matrix;
+
+import matrix.CrossMatrixGenerator;
+import matrix.OptimizedMatrixGenerator;
+import matrix.SymmetricMatrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestCrossGenerator
+{
+  @Test
+  public void testSameSeriesMatchesOptimized() throws Exception
+  {
+    float[] input = TestData.load(300);
+    
+    TestData.assertMatrixEquals(new OptimizedMatrixGenerator().generate(input, 4),
+                                new CrossMatrixGenerator().generate(input, input, 4), 0.0f);
+  }
+  
+  @Test
+  public void testCrossMatchesDefinition() throws Exception
+  {
+    float[] x = TestData.load(300);
+    float[] y = shift(x, 11);
+    
+    TestData.assertMatrixEquals(cross(x, y, 6), new CrossMatrixGenerator().generate(x, y, 6), DELTA);
+  }
+  
+  @Test
+  public void testBlock() throws Exception
+  {
+    float[] input = TestData.load(300);
+    float[][] series = { input, shift(input, 5), shift(input, 17) };
+    int count = 4;
+    
+    SymmetricMatrix block = new CrossMatrixGenerator().generateBlock(series, count);
+    
+    assertEquals(series.length * (count + 1), block.size());
+    
+    for (int a = 0; a < series.length; a++)
+    {
+      for (int b = 0; b < series.length; b++)
+      {
+        float[][] expected = cross(series[a], series[b], count);
+        
+        for (int k = 0; k <= count; k++)
+        {
+          for (int j = 0; j <= count; j++)
+          {
+            assertEquals(expected[k][j], block.get(a * (count + 1) + k, b * (count + 1) + j), DELTA);
+          }
+        }
+      }
+    }
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void testDifferentLengths() throws Exception
+  {
+    new CrossMatrixGenerator().generate(TestData.load(300), TestData.load(200), 4);
+  }
+  
+  /**
+   * The cross matrix computed directly from its definition.
+   */
+  private static float[][] cross(float[] x, float[] y, int count)
+  {
+    float[][] result = new float[count + 1][count + 1];
+    
+    for (int k = 0; k <= count; k++)
+    {
+      for (int j = 0; j <= count; j++)
+      {
+        double sum = 0.0;
+        
+        for (int i = count; i < x.length; i++)
+        {
+          sum += x[i - k] * y[i - j];
+        }
+        
+        result[k][j] = (float)sum;
+      }
+    }
+    
+    return result;
+  }
+  
+  private static float[] shift(float[] input, int by)
+  {
+    float[] shifted = new float[input.length];
+    
+    for (int i = 0; i < input.length; i++)
+    {
+      shifted[i] = input[(i + by) % input.length];
+    }
+    
+    return shifted;
+  }
+  
+  private static final float DELTA = 0.000001f;
+}
@@ -0,0 +1,64 @@
+package test.matrix;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Shared helpers for the generator tests: loading the test.prn data set and
+ * comparing whole matrices.
+ */
+final class TestData
+{
+  private TestData()
+  {
+  }
+
+  /**
+   * Load the first values from the test.prn resource.
+   *
+   * @param length the number of values to load
+   *
+   * @return the parsed input values
+   */
+  static float[] load(int length) throws Exception
+  {
+    URL url = TestData.class.getClassLoader().getResource("test.prn");  
+    Path path = Paths.get(url.toURI());
+    
+    String[] lines = Files.lines(path)
+                          .limit(length)
+                          .toArray(String[]::new);
+
+    float[] input = new float[lines.length];
+    
+    for (int i = 0; i < lines.length; i++)
+    {
+      input[i] = Float.parseFloat(lines[i]);
+    }
+    
+    return input;
+  }
+
+  /**
+   * Assert that two matrices have the same shape, and that their cells are
+   * within the given delta of each other.
+   *
+   * @param expected the expected matrix
+   * @param actual the matrix to check
+   * @param delta the maximum difference allowed per cell
+   */
+  static void assertMatrixEquals(float[][] expected, float[][] actual, float delta)
+  {
+    assertEquals(expected.length, actual.length);
+    
+    for (int i = 0; i < expected.length; i++)
+    {
+      assertArrayEquals("row " + i, expected[i], actual[i], delta);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package test.matrix;
+
+import java.util.Random;
+
+import matrix.FftMatrixGenerator;
+import matrix.MatrixGenerator;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestFftGenerator
+{
+  @Test
+  public void test5x5Matrix_300() throws Exception
+  {
+    MatrixGenerator calc = new FftMatrixGenerator();
+    float[][] result = calc.generate(TestData.load(300), 4);
+    
+    assertEquals(0.279525f, result[0][0], DELTA);
+    assertEquals(0.276682f, result[0][1], DELTA);
+    assertEquals(0.235722f, result[0][4], DELTA);
+    assertEquals(0.235722f, result[4][0], DELTA);
+    assertEquals(0.272113f, result[2][4], DELTA);
+    assertEquals(0.287076f, result[4][4], DELTA);
+  }
+  
+  @Test
+  public void testMatchesUnoptimized() throws Exception
+  {
+    for (int length : new int[] { 5, 150, 300 })
+    {
+      float[] input = TestData.load(length);
+      
+      for (int count : new int[] { 0, 1, 4, length / 2, length - 1 })
+      {
+        float[][] expected = new UnoptimizedMatrixGenerator().generate(input, count);
+        float[][] result = new FftMatrixGenerator().generate(input, count);
+        
+        TestData.assertMatrixEquals(expected, result, DELTA);
+      }
+    }
+  }
+  
+  @Test
+  public void testMultipleBlocks() throws Exception
+  {
+    // Long enough input that it is split over several transforms.
+    
+    Random random = new Random(42);
+    float[] input = new float[5000];
+    
+    for (int i = 0; i < input.length; i++)
+    {
+      input[i] = (float)random.nextGaussian() * 0.01f;
+    }
+    
+    float[][] expected = new UnoptimizedMatrixGenerator().generate(input, 20);
+    float[][] result = new FftMatrixGenerator().generate(input, 20);
+    
+    TestData.assertMatrixEquals(expected, result, DELTA);
+  }
+  
+  @Test
+  public void testCrossover()
+  {
+    assertFalse(FftMatrixGenerator.isFasterThanDirect(300, 4));
+    assertFalse(FftMatrixGenerator.isFasterThanDirect(1000000, 16));
+    assertTrue(FftMatrixGenerator.isFasterThanDirect(1000000, 256));
+    assertFalse(FftMatrixGenerator.isFasterThanDirect(100, 256));
+  }
+  
+  private static final float DELTA = 0.000001f;
+}
@@ -0,0 +1,101 @@
+package test.matrix;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import matrix.FramedMatrixGenerator;
+import matrix.SymmetricMatrix;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestFramedGenerator
+{
+  @Test
+  public void testMatchesEachFrame() throws Exception
+  {
+    float[] input = signal(3000);
+
+    // Overlapping frames carry the sums, and widely spaced frames sum them in full.
+
+    for (int[] frame : new int[][] { { 256, 16 }, { 100, 1 }, { 100, 100 }, { 50, 70 } })
+    {
+      int window = frame[0];
+      int hop = frame[1];
+
+      SymmetricMatrix[] results = new FramedMatrixGenerator().generate(input, window, hop, 8);
+
+      assertEquals(FramedMatrixGenerator.frameCount(input.length, window, hop), results.length);
+
+      for (int f = 0; f < results.length; f++)
+      {
+        float[] slice = Arrays.copyOfRange(input, f * hop, f * hop + window);
+
+        TestData.assertMatrixEquals(new UnoptimizedMatrixGenerator().generate(slice, 8), results[f].toArray(), DELTA);
+      }
+    }
+  }
+
+  @Test
+  public void testParallelMatchesSerial() throws Exception
+  {
+    float[] input = signal(3000);
+    FramedMatrixGenerator generator = new FramedMatrixGenerator(16);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try
+    {
+      SymmetricMatrix[] serial = generator.generate(input, 200, 3, 4);
+      SymmetricMatrix[] parallel = generator.generate(input, 200, 3, 4, executor);
+
+      assertEquals(serial.length, parallel.length);
+
+      for (int f = 0; f < serial.length; f++)
+      {
+        TestData.assertMatrixEquals(serial[f].toArray(), parallel[f].toArray(), 0.0f);
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testFrameCount() throws Exception
+  {
+    assertEquals(0, FramedMatrixGenerator.frameCount(99, 100, 10));
+    assertEquals(1, FramedMatrixGenerator.frameCount(100, 100, 10));
+    assertEquals(1, FramedMatrixGenerator.frameCount(109, 100, 10));
+    assertEquals(2, FramedMatrixGenerator.frameCount(110, 100, 10));
+
+    assertEquals(0, new FramedMatrixGenerator().generate(signal(50), 100, 10, 4).length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWindowTooShort() throws Exception
+  {
+    new FramedMatrixGenerator().generate(signal(300), 4, 1, 4);
+  }
+
+  /**
+   * Make a longer signal by repeating the test data, scaled differently each time.
+   */
+  private static float[] signal(int length) throws Exception
+  {
+    float[] input = TestData.load(300);
+    float[] signal = new float[length];
+
+    for (int i = 0; i < length; i++)
+    {
+      signal[i] = input[i % input.length] * (1.0f + (i / input.length) * 0.25f);
+    }
+
+    return signal;
+  }
+
+  private static final float DELTA = 0.000001f;
+}
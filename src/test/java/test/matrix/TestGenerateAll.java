@@ -0,0 +1,86 @@
+package test.matrix;
+
+import java.util.concurrent.ForkJoinPool;
+
+import matrix.FftMatrixGenerator;
+import matrix.MatrixGenerator;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PrefixSumMatrixGenerator;
+import matrix.RecurrenceMatrixGenerator;
+import matrix.SymmetricMatrix;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestGenerateAll
+{
+  @Test
+  public void testMatchesSeparateCalls() throws Exception
+  {
+    float[] input = TestData.load(300);
+    int[] counts = { 4, 1, 64, 0, 17, 4 };
+    
+    for (MatrixGenerator calc : GENERATORS)
+    {
+      SymmetricMatrix[] results = calc.generateAll(input, counts);
+      
+      assertEquals(counts.length, results.length);
+      
+      for (int i = 0; i < counts.length; i++)
+      {
+        // The optimized generator steps the common base value down from the largest
+        // count, so its values match separate calls within rounding.
+        
+        assertEquals(counts[i] + 1, results[i].size());
+        TestData.assertMatrixEquals(calc.generate(input, counts[i]), results[i].toArray(), DELTA);
+      }
+    }
+  }
+  
+  @Test
+  public void testShortInput() throws Exception
+  {
+    // Inputs shorter than twice the count, where the ends of the common base cross.
+    
+    float[] input = TestData.load(10);
+    int[] counts = { 9, 3, 6, 5, 7 };
+    
+    for (MatrixGenerator calc : GENERATORS)
+    {
+      SymmetricMatrix[] results = calc.generateAll(input, counts);
+      
+      for (int i = 0; i < counts.length; i++)
+      {
+        float[][] expected = new UnoptimizedMatrixGenerator().generate(input, counts[i]);
+        
+        TestData.assertMatrixEquals(expected, calc.generate(input, counts[i]), DELTA);
+        TestData.assertMatrixEquals(expected, results[i].toArray(), DELTA);
+      }
+    }
+  }
+  
+  @Test
+  public void testEmptyCounts() throws Exception
+  {
+    assertEquals(0, new OptimizedMatrixGenerator().generateAll(TestData.load(300), new int[0]).length);
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeCount() throws Exception
+  {
+    new PrefixSumMatrixGenerator().generateAll(TestData.load(300), new int[] { 4, -1 });
+  }
+  
+  private static final MatrixGenerator[] GENERATORS = {
+    new UnoptimizedMatrixGenerator(),
+    new OptimizedMatrixGenerator(),
+    new OptimizedMatrixGenerator(new ForkJoinPool(4)),
+    new PrefixSumMatrixGenerator(),
+    new RecurrenceMatrixGenerator(),
+    new FftMatrixGenerator()
+  };
+  
+  private static final float DELTA = 0.000001f;
+}
@@ -0,0 +1,88 @@
+package test.matrix;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import matrix.FftMatrixGenerator;
+import matrix.MatrixGenerator;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PrefixSumMatrixGenerator;
+import matrix.SymmetricMatrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestGenerateChannels
+{
+  @Test
+  public void testMatchesSingleChannel() throws Exception
+  {
+    float[][] channels = channels(TestData.load(300), 16);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    try
+    {
+      for (MatrixGenerator calc : GENERATORS)
+      {
+        for (ExecutorService runner : new ExecutorService[] { executor, null })
+        {
+          SymmetricMatrix[] results = calc.generateChannels(channels, 4, runner);
+          
+          assertEquals(channels.length, results.length);
+          
+          for (int i = 0; i < channels.length; i++)
+          {
+            TestData.assertMatrixEquals(calc.generate(channels[i], 4), results[i].toArray(), 0.0f);
+          }
+        }
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void testErrorFromChannel() throws Exception
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    
+    try
+    {
+      // A count of -1 is rejected when the workspace for a channel is created.
+      
+      new OptimizedMatrixGenerator().generateChannels(channels(TestData.load(300), 4), -1, executor);
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  /**
+   * Make the channels different from each other by rotating the input by a
+   * different amount for each.
+   */
+  private static float[][] channels(float[] input, int count)
+  {
+    float[][] channels = new float[count][input.length];
+    
+    for (int channel = 0; channel < count; channel++)
+    {
+      for (int i = 0; i < input.length; i++)
+      {
+        channels[channel][i] = input[(i + channel * 7) % input.length];
+      }
+    }
+    
+    return channels;
+  }
+  
+  private static final MatrixGenerator[] GENERATORS = {
+    new OptimizedMatrixGenerator(),
+    new PrefixSumMatrixGenerator(),
+    new FftMatrixGenerator()
+  };
+}
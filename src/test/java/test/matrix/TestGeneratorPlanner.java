@@ -0,0 +1,116 @@
+package test.matrix;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import matrix.FftMatrixGenerator;
+import matrix.GeneratorPlanner;
+import matrix.GeneratorRegistry;
+import matrix.MatrixGeneratorProvider;
+import matrix.OptimizedMatrixGenerator;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestGeneratorPlanner
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  @Test
+  public void testRegistry() throws Exception
+  {
+    assertEquals(6, GeneratorRegistry.providers().size());
+    assertTrue(GeneratorRegistry.find("optimized").create(null) instanceof OptimizedMatrixGenerator);
+    assertTrue(GeneratorRegistry.find("unoptimized").create(null) instanceof UnoptimizedMatrixGenerator);
+    assertTrue(GeneratorRegistry.find("fft").create(null) instanceof FftMatrixGenerator);
+    assertTrue(GeneratorRegistry.find("optimized").isParallel());
+    assertNull(GeneratorRegistry.find("auto"));
+  }
+  
+  @Test
+  public void testChoosesCheapest() throws Exception
+  {
+    GeneratorPlanner.Plan plan = new GeneratorPlanner(costs(1.0, 1.0, 1.0, 1.0, 0.5), "test").plan(1000000, 256, 1);
+    
+    assertEquals("fft", plan.provider().name());
+    assertEquals(1, plan.threads());
+    
+    plan = new GeneratorPlanner(costs(1.0, 1.0, 1.0, 1.0, 0.5), "test").plan(300, 4, 1);
+    
+    assertEquals("prefix", plan.provider().name());
+  }
+  
+  @Test
+  public void testThreads() throws Exception
+  {
+    Map<String, Double> costs = costs(0.5, 1.0, 1.0, 1.0, 1.0);
+    
+    // Small inputs aren't worth the overhead of the threads.
+    
+    assertEquals(1, new GeneratorPlanner(costs, "test").plan(300, 4, 8).threads());
+    
+    // Large ones use every core, up to one per diagonal.
+    
+    GeneratorPlanner.Plan plan = new GeneratorPlanner(costs, "test").plan(10000000, 64, 8);
+    
+    assertEquals("optimized", plan.provider().name());
+    assertEquals(8, plan.threads());
+    assertEquals(5, new GeneratorPlanner(costs, "test").plan(10000000, 4, 8).threads());
+    assertTrue(plan.explain().startsWith("Plan for N=10000000, c=64: optimized on 8 threads"));
+  }
+  
+  @Test
+  public void testMissingCost() throws Exception
+  {
+    Map<String, Double> costs = new HashMap<>();
+    costs.put("unoptimized", 10.0);
+    
+    GeneratorPlanner.Plan plan = new GeneratorPlanner(costs, "test").plan(300, 4, 4);
+    
+    assertEquals("unoptimized", plan.provider().name());
+    TestData.assertMatrixEquals(new UnoptimizedMatrixGenerator().generate(TestData.load(300), 4),
+                                plan.create().generate(TestData.load(300), 4), 0.0f);
+  }
+  
+  @Test(expected = IllegalStateException.class)
+  public void testNoCosts() throws Exception
+  {
+    new GeneratorPlanner(new HashMap<>(), "test").plan(300, 4, 4);
+  }
+  
+  @Test
+  public void testCalibrationCache() throws Exception
+  {
+    Path cache = folder.getRoot().toPath().resolve("matrix").resolve("calibration.properties");
+    GeneratorPlanner measured = GeneratorPlanner.calibrated(cache, false);
+    
+    for (MatrixGeneratorProvider provider : GeneratorRegistry.providers())
+    {
+      assertTrue(measured.costs().get(provider.name()) > 0.0);
+    }
+    
+    GeneratorPlanner cached = GeneratorPlanner.calibrated(cache, false);
+    
+    assertEquals(measured.costs(), cached.costs());
+    assertTrue(cached.plan(300, 4, 1).explain().contains("costs cached in"));
+  }
+  
+  private static Map<String, Double> costs(double optimized, double unoptimized, double prefix, double recurrence, double fft)
+  {
+    Map<String, Double> costs = new HashMap<>();
+    costs.put("optimized", optimized);
+    costs.put("unoptimized", unoptimized);
+    costs.put("prefix", prefix);
+    costs.put("recurrence", recurrence);
+    costs.put("fft", fft);
+    return costs;
+  }
+}
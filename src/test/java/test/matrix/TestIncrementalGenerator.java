@@ -0,0 +1,114 @@
+package test.matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import matrix.IncrementalMatrixGenerator;
+import matrix.OptimizedMatrixGenerator;
+import matrix.SymmetricMatrix;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestIncrementalGenerator
+{
+  @Test
+  public void testMatchesFullGenerate() throws Exception
+  {
+    float[] input = TestData.load(300);
+    
+    for (int count : new int[] { 0, 1, 4, 17 })
+    {
+      IncrementalMatrixGenerator incremental = new IncrementalMatrixGenerator(count);
+      
+      for (int length = 1; length <= input.length; length++)
+      {
+        incremental.append(input[length - 1]);
+        
+        assertEquals(length, incremental.length());
+        
+        if (length > count)
+        {
+          float[][] expected = new UnoptimizedMatrixGenerator().generate(Arrays.copyOf(input, length), count);
+          
+          TestData.assertMatrixEquals(expected, incremental.matrix().toArray(), DELTA);
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void testBatches() throws Exception
+  {
+    float[] input = TestData.load(300);
+    IncrementalMatrixGenerator incremental = new IncrementalMatrixGenerator(4);
+    
+    incremental.append(input, 0, 100);
+    incremental.append(input, 100, 200);
+    
+    TestData.assertMatrixEquals(new UnoptimizedMatrixGenerator().generate(input, 4), incremental.matrix().toArray(), DELTA);
+  }
+  
+  @Test
+  public void testTooFewSamples() throws Exception
+  {
+    IncrementalMatrixGenerator incremental = new IncrementalMatrixGenerator(4);
+    
+    incremental.append(TestData.load(4), 0, 4);
+    
+    TestData.assertMatrixEquals(new float[5][5], incremental.matrix().toArray(), 0.0f);
+  }
+  
+  @Test
+  public void testListener() throws Exception
+  {
+    float[] input = TestData.load(300);
+    List<float[][]> emitted = new ArrayList<>();
+    IncrementalMatrixGenerator incremental = new IncrementalMatrixGenerator(4, 50, m -> emitted.add(m.toArray()));
+    
+    incremental.append(input, 0, input.length);
+    
+    assertEquals(6, emitted.size());
+    
+    for (int i = 0; i < emitted.size(); i++)
+    {
+      float[] prefix = Arrays.copyOf(input, (i + 1) * 50);
+      
+      TestData.assertMatrixEquals(new OptimizedMatrixGenerator().generate(prefix, 4), emitted.get(i), DELTA);
+    }
+  }
+  
+  @Test
+  public void testLongStream() throws Exception
+  {
+    // The running sums grow with the stream, but the windows are found as a
+    // difference with the small initial sums, so the error stays small.
+    
+    float[] input = TestData.load(300);
+    float[] stream = new float[300 * 500];
+    
+    for (int i = 0; i < stream.length; i++)
+    {
+      stream[i] = input[i % input.length];
+    }
+    
+    IncrementalMatrixGenerator incremental = new IncrementalMatrixGenerator(8);
+    incremental.append(stream, 0, stream.length);
+    
+    SymmetricMatrix actual = incremental.matrix();
+    float[][] expected = new OptimizedMatrixGenerator().generate(stream, 8);
+    
+    for (int k = 0; k <= 8; k++)
+    {
+      for (int j = 0; j <= 8; j++)
+      {
+        assertEquals(expected[k][j], actual.get(k, j), Math.abs(expected[k][j]) * 1e-6f);
+      }
+    }
+  }
+  
+  private static final float DELTA = 0.000001f;
+}
@@ -0,0 +1,133 @@
+package test.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import matrix.FftMatrixGenerator;
+import matrix.GenerateStatistics;
+import matrix.InstrumentedMatrixGenerator;
+import matrix.MatrixGenerator;
+import matrix.OperationCount;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PrefixSumMatrixGenerator;
+import matrix.RecurrenceMatrixGenerator;
+import matrix.SymmetricMatrix;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestInstrumentedGenerator
+{
+  @Test
+  public void testDocumentedCounts()
+  {
+    // The counts quoted for the test data set in the javadocs.
+    
+    OperationCount unoptimized = new UnoptimizedMatrixGenerator().countOperations(300, 4);
+    
+    assertEquals(4440, unoptimized.adds());
+    assertEquals(4440, unoptimized.multiplies());
+    
+    OperationCount optimized = new OptimizedMatrixGenerator().countOperations(300, 4);
+    
+    assertEquals(1510, optimized.adds());
+    assertEquals(1490, optimized.multiplies());
+  }
+  
+  @Test
+  public void testStatisticsPerCall() throws Exception
+  {
+    float[] input = TestData.load(300);
+    
+    for (MatrixGenerator calc : GENERATORS)
+    {
+      List<GenerateStatistics> calls = new ArrayList<>();
+      MatrixGenerator instrumented = new InstrumentedMatrixGenerator(calc, calls::add);
+      
+      TestData.assertMatrixEquals(calc.generate(input, 4), instrumented.generate(input, 4), DELTA);
+      instrumented.generateSymmetric(input, 10);
+      
+      assertEquals(2, calls.size());
+      
+      GenerateStatistics stats = calls.get(1);
+      
+      assertEquals(calc.getClass().getSimpleName(), stats.generator());
+      assertEquals(300, stats.length());
+      assertEquals(10, stats.count());
+      assertTrue(stats.elapsedNanos() > 0);
+      assertNotNull(stats.operations());
+      assertTrue(stats.operations().flops() > 0);
+    }
+  }
+  
+  @Test
+  public void testCountsFromLoopBounds() throws Exception
+  {
+    float[] input = TestData.load(300);
+    List<GenerateStatistics> calls = new ArrayList<>();
+    
+    // The unoptimized generator sums N - c products for each of the (c+1)(c+2)/2
+    // cells on and above the diagonal, a multiply and an add for each.
+    
+    new InstrumentedMatrixGenerator(new UnoptimizedMatrixGenerator(), calls::add).generateSymmetric(input, 10);
+    
+    assertEquals(66 * 290, calls.get(0).operations().adds());
+    assertEquals(66 * 290, calls.get(0).operations().multiplies());
+    
+    // The optimized generator forms the N - d products for each diagonal d once.
+    
+    new InstrumentedMatrixGenerator(new OptimizedMatrixGenerator(), calls::add).generateSymmetric(input, 10);
+    
+    assertEquals(11 * 300 - 55, calls.get(1).operations().multiplies());
+  }
+  
+  @Test
+  public void testBatchesAreForwarded() throws Exception
+  {
+    float[] input = TestData.load(300);
+    int[] batches = new int[1];
+    
+    MatrixGenerator calc = new OptimizedMatrixGenerator()
+    {
+      @Override
+      public SymmetricMatrix[] generateAll(float[] values, int[] counts)
+      {
+        batches[0]++;
+        return super.generateAll(values, counts);
+      }
+    };
+    
+    List<GenerateStatistics> calls = new ArrayList<>();
+    MatrixGenerator instrumented = new InstrumentedMatrixGenerator(calc, calls::add);
+    SymmetricMatrix[] results = instrumented.generateAll(input, new int[] { 4, 10, 2 });
+    
+    assertEquals(1, batches[0]);
+    TestData.assertMatrixEquals(calc.generate(input, 10), results[1].toArray(), DELTA);
+    assertEquals(1, calls.size());
+    assertEquals(10, calls.get(0).count());
+    assertEquals(3, calls.get(0).matrices());
+    
+    // The channels are measured as one call, with the operations of all of them.
+    
+    calls.clear();
+    instrumented.generateChannels(new float[][] { input, input }, 4, null);
+    
+    assertEquals(1, calls.size());
+    assertEquals(2, calls.get(0).matrices());
+    assertEquals(2 * (5 * 300 - 10), calls.get(0).operations().multiplies());
+  }
+  
+  private static final MatrixGenerator[] GENERATORS = {
+    new UnoptimizedMatrixGenerator(),
+    new OptimizedMatrixGenerator(),
+    new PrefixSumMatrixGenerator(),
+    new RecurrenceMatrixGenerator(),
+    new FftMatrixGenerator()
+  };
+  
+  private static final float DELTA = 0.000001f;
+}
@@ -0,0 +1,101 @@
+package test.matrix;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import matrix.MappedSymmetricMatrix;
+import matrix.MatrixGenerator;
+import matrix.MatrixWriter;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PrefixSumMatrixGenerator;
+import matrix.SymmetricMatrix;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TestMappedSymmetricMatrix
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  @Test
+  public void testPackedLayout() throws Exception
+  {
+    try (MappedSymmetricMatrix matrix = MappedSymmetricMatrix.createTemporary(3))
+    {
+      assertEquals(6, MappedSymmetricMatrix.packedLength(3));
+      assertEquals(24, Files.size(matrix.path()));
+      
+      assertEquals(0, matrix.indexOf(0, 0));
+      assertEquals(2, matrix.indexOf(0, 2));
+      assertEquals(3, matrix.indexOf(1, 1));
+      assertEquals(4, matrix.indexOf(2, 1));
+      assertEquals(5, matrix.indexOf(2, 2));
+      
+      matrix.set(2, 1, 2.5f);
+      
+      assertEquals(2.5f, matrix.get(1, 2), 0.0f);
+      assertEquals(0.0f, matrix.get(0, 0), 0.0f);
+    }
+    
+    // Sizes past the largest array are counted in longs.
+    
+    assertEquals(50000L * 50001 / 2, MappedSymmetricMatrix.packedLength(50000));
+  }
+  
+  @Test
+  public void testGenerateInPlace() throws Exception
+  {
+    float[] input = TestData.load(300);
+    Path path = folder.newFile("matrix.bin").toPath();
+    
+    for (MatrixGenerator calc : new MatrixGenerator[] { new OptimizedMatrixGenerator(), new PrefixSumMatrixGenerator() })
+    {
+      SymmetricMatrix expected = calc.generateSymmetric(input, 10);
+      
+      try (MappedSymmetricMatrix matrix = MappedSymmetricMatrix.create(path, 11))
+      {
+        calc.generate(input, 10, matrix);
+        
+        TestData.assertMatrixEquals(expected.toArray(), matrix.toArray(), 0.0f);
+      }
+      
+      // The file left behind is the packed binary output.
+      
+      assertArrayEquals(writePacked(expected), Files.readAllBytes(path));
+    }
+  }
+  
+  @Test
+  public void testWritePacked() throws Exception
+  {
+    SymmetricMatrix expected = new OptimizedMatrixGenerator().generateSymmetric(TestData.load(300), 8);
+    Path path;
+    
+    try (MappedSymmetricMatrix matrix = MappedSymmetricMatrix.createTemporary(9))
+    {
+      path = matrix.path();
+      new OptimizedMatrixGenerator().generate(TestData.load(300), 8, matrix);
+      
+      assertArrayEquals(writePacked(expected), writePacked(matrix));
+    }
+    
+    assertFalse(Files.exists(path));
+  }
+  
+  private static byte[] writePacked(SymmetricMatrix matrix) throws Exception
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    
+    new MatrixWriter(Channels.newChannel(bytes)).writePacked(matrix);
+    
+    return bytes.toByteArray();
+  }
+}
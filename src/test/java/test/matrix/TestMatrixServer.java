@@ -0,0 +1,139 @@
+package test.matrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import matrix.MatrixServer;
+import matrix.MatrixWriter;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PrefixSumMatrixGenerator;
+import matrix.SymmetricMatrix;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestMatrixServer
+{
+  @Test
+  public void testRequests() throws Exception
+  {
+    float[] input = TestData.load(300);
+    Path path = Paths.get(TestMatrixServer.class.getClassLoader().getResource("test.prn").toURI());
+    
+    try (MatrixServer server = new MatrixServer(0, 2))
+    {
+      Thread thread = new Thread(() ->
+      {
+        try
+        {
+          server.serve();
+        }
+        catch (Exception e)
+        {
+          throw new IllegalStateException(e);
+        }
+      });
+      
+      thread.start();
+      
+      SymmetricMatrix expected = new OptimizedMatrixGenerator().generateSymmetric(input, 4);
+      
+      assertArrayEquals(writeText(expected),
+                        request(server, null, "-c", "4", "-n", "300", "-f", path.toAbsolutePath().toString()));
+      
+      // Inline samples, with another generator and output format.
+      
+      ByteArrayOutputStream packed = new ByteArrayOutputStream();
+      new MatrixWriter(Channels.newChannel(packed)).writePacked(new PrefixSumMatrixGenerator().generateSymmetric(input, 6));
+      
+      assertArrayEquals(packed.toByteArray(), request(server, input, "-c", "6", "-n", "300", "-g", "prefix", "--format", "packed"));
+      
+      // Errors are returned with the application's exit codes.
+      
+      ByteArrayOutputStream errors = new ByteArrayOutputStream();
+      List<String> arguments = Arrays.asList("-c", "4", "-n", "400", "-f", path.toAbsolutePath().toString());
+      
+      assertEquals(2, MatrixServer.request(server.port(), arguments, null, new ByteArrayOutputStream(), new PrintStream(errors)));
+      assertEquals("Not enough input values for length 400", errors.toString().trim());
+      
+      arguments = Arrays.asList("-c", "4", "-n", "300", "-f", "relative.prn");
+      
+      assertEquals(1, MatrixServer.request(server.port(), arguments, null, new ByteArrayOutputStream(), new PrintStream(new ByteArrayOutputStream())));
+    }
+  }
+  
+  @Test
+  public void testClientCommandLine() throws Exception
+  {
+    float[] input = TestData.load(300);
+    Path path = Paths.get(TestMatrixServer.class.getClassLoader().getResource("test.prn").toURI());
+    
+    try (MatrixServer server = new MatrixServer(0, 1))
+    {
+      Thread thread = new Thread(() ->
+      {
+        try
+        {
+          server.serve();
+        }
+        catch (Exception e)
+        {
+          throw new IllegalStateException(e);
+        }
+      });
+      
+      thread.start();
+      
+      // The baseline command line, with the unoptimized generator, and the switches
+      // for computing in parallel, which the client leaves out.
+      
+      String port = Integer.toString(server.port());
+      List<String> arguments = MatrixServer.requestArguments(new String[] { "--connect", port, "-c", "4", "-n", "300",
+                                                                            "-f", path.toString(), "-u", "-p", "-t", "2" });
+      
+      assertEquals(Arrays.asList("-c", "4", "-n", "300", "-f", path.toAbsolutePath().toString(), "-u"), arguments);
+      
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      
+      assertEquals(0, MatrixServer.request(server.port(), arguments, null, output, System.err));
+      assertArrayEquals(writeText(new UnoptimizedMatrixGenerator().generateSymmetric(input, 4)), output.toByteArray());
+    }
+    
+    try
+    {
+      MatrixServer.requestArguments(new String[] { "--connect", "7070", "-c", "4", "-n", "300", "-f", "test.prn", "--stats" });
+      fail("Expected the local only switch to be rejected");
+    }
+    catch (IllegalArgumentException e)
+    {
+      assertEquals("Argument can't be sent to a server: --stats", e.getMessage());
+    }
+  }
+  
+  private static byte[] request(MatrixServer server, float[] samples, String... arguments) throws Exception
+  {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    
+    assertEquals(0, MatrixServer.request(server.port(), Arrays.asList(arguments), samples, output, System.err));
+    
+    return output.toByteArray();
+  }
+  
+  private static byte[] writeText(SymmetricMatrix matrix) throws Exception
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    
+    new MatrixWriter(Channels.newChannel(bytes)).writeText(matrix, 6);
+    
+    return bytes.toByteArray();
+  }
+}
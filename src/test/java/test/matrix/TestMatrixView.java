@@ -0,0 +1,73 @@
+package test.matrix;
+
+import matrix.MatrixView;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestMatrixView
+{
+  @Test
+  public void testMatchesGenerate() throws Exception
+  {
+    float[] input = TestData.load(300);
+    
+    for (int count : new int[] { 0, 1, 4, 17 })
+    {
+      float[][] expected = new UnoptimizedMatrixGenerator().generate(input, count);
+      
+      for (int cache : new int[] { 0, 3 })
+      {
+        MatrixView view = new MatrixView(input, count, cache);
+        
+        assertEquals(count + 1, view.size());
+        TestData.assertMatrixEquals(expected, view.toArray(), DELTA);
+      }
+    }
+  }
+  
+  @Test
+  public void testRowAndBand() throws Exception
+  {
+    float[] input = TestData.load(300);
+    float[][] expected = new UnoptimizedMatrixGenerator().generate(input, 10);
+    MatrixView view = new MatrixView(input, 10);
+    
+    assertArrayEquals(expected[3], view.row(3), DELTA);
+    
+    float[][] band = view.band(2);
+    
+    assertEquals(3, band.length);
+    
+    for (int d = 0; d <= 2; d++)
+    {
+      assertEquals(11 - d, band[d].length);
+      
+      for (int k = 0; k <= 10 - d; k++)
+      {
+        assertEquals(expected[k][k + d], band[d][k], DELTA);
+      }
+    }
+    
+    assertEquals(11, view.band(20).length);
+  }
+  
+  @Test
+  public void testTooFewSamples() throws Exception
+  {
+    MatrixView view = new MatrixView(TestData.load(4), 4);
+    
+    TestData.assertMatrixEquals(new float[5][5], view.toArray(), 0.0f);
+  }
+  
+  @Test(expected = UnsupportedOperationException.class)
+  public void testReadOnly() throws Exception
+  {
+    new MatrixView(TestData.load(300), 4).set(0, 0, 1.0f);
+  }
+  
+  private static final float DELTA = 0.000001f;
+}
@@ -0,0 +1,95 @@
+package test.matrix;
+
+import java.lang.management.ManagementFactory;
+
+import matrix.FftMatrixGenerator;
+import matrix.MatrixGenerator;
+import matrix.MatrixWorkspace;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PackedSymmetricMatrix;
+import matrix.PrefixSumMatrixGenerator;
+import matrix.RecurrenceMatrixGenerator;
+import matrix.UnoptimizedMatrixGenerator;
+import matrix.VectorMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class TestMatrixWorkspace
+{
+  @Test
+  public void testSteadyStateAllocatesNothing() throws Exception
+  {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    
+    float[] input = TestData.load(300);
+    long thread = Thread.currentThread().getId();
+    
+    for (MatrixGenerator calc : GENERATORS)
+    {
+      PackedSymmetricMatrix result = new PackedSymmetricMatrix(5);
+      MatrixWorkspace workspace = new MatrixWorkspace(input.length, 4);
+      
+      for (int i = 0; i < WARMUP_CALLS; i++)
+      {
+        calc.generate(input, 4, result, workspace);
+      }
+      
+      long before = threads.getThreadAllocatedBytes(thread);
+      
+      for (int i = 0; i < MEASURED_CALLS; i++)
+      {
+        calc.generate(input, 4, result, workspace);
+      }
+      
+      long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      
+      assertEquals(calc.getClass().getSimpleName(), 0L, allocated);
+      assertEquals(0.279525f, result.get(0, 0), DELTA);
+      assertEquals(0.235722f, result.get(4, 0), DELTA);
+    }
+  }
+  
+  @Test
+  public void testLargerWorkspace() throws Exception
+  {
+    float[] input = TestData.load(300);
+    MatrixWorkspace workspace = new MatrixWorkspace(1000, 50);
+    
+    for (MatrixGenerator calc : GENERATORS)
+    {
+      for (int count : new int[] { 4, 50, 2 })
+      {
+        PackedSymmetricMatrix result = new PackedSymmetricMatrix(count + 1);
+        calc.generate(input, count, result, workspace);
+        
+        TestData.assertMatrixEquals(new UnoptimizedMatrixGenerator().generate(input, count), result.toArray(), DELTA);
+      }
+    }
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void testWorkspaceTooSmall() throws Exception
+  {
+    new OptimizedMatrixGenerator().generate(TestData.load(300), 4, new PackedSymmetricMatrix(5), new MatrixWorkspace(200, 4));
+  }
+  
+  private static final MatrixGenerator[] GENERATORS = {
+    new UnoptimizedMatrixGenerator(),
+    new OptimizedMatrixGenerator(),
+    new PrefixSumMatrixGenerator(),
+    new RecurrenceMatrixGenerator(),
+    new FftMatrixGenerator(),
+    new VectorMatrixGenerator(),
+    new VectorMatrixGenerator(true)
+  };
+  
+  private static final int WARMUP_CALLS = 20000;
+  private static final int MEASURED_CALLS = 1000;
+  
+  private static final float DELTA = 0.000001f;
+}
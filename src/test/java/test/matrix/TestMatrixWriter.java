@@ -0,0 +1,169 @@
+package test.matrix;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.text.NumberFormat;
+
+import matrix.MatrixWriter;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PackedSymmetricMatrix;
+import matrix.SymmetricMatrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestMatrixWriter
+{
+  @Test
+  public void testTextMatchesNumberFormat() throws Exception
+  {
+    SymmetricMatrix matrix = new OptimizedMatrixGenerator().generateSymmetric(TestData.load(300), 4);
+    
+    assertEquals(format(matrix, 6), writeText(matrix, 6));
+  }
+  
+  @Test
+  public void testTextEdgeValues() throws Exception
+  {
+    float[] values = { -0.0f, -1e-7f, 0.0078125f, 0.0234375f, 1234567.5f, -9876543.0f, 1e20f,
+                       Float.NaN, Float.POSITIVE_INFINITY, Float.MIN_VALUE, -Float.MAX_VALUE,
+                       0.1f, 2.5e-7f, 3.5e-7f, 999999.9999999f };
+    
+    PackedSymmetricMatrix matrix = new PackedSymmetricMatrix(values.length);
+    
+    for (int i = 0; i < values.length; i++)
+    {
+      for (int j = i; j < values.length; j++)
+      {
+        matrix.set(i, j, values[(i + j) % values.length]);
+      }
+    }
+    
+    for (int digits : new int[] { 0, 2, 6, 9, 12 })
+    {
+      assertEquals(format(matrix, digits), writeText(matrix, digits));
+    }
+  }
+  
+  @Test
+  public void testBinary() throws Exception
+  {
+    SymmetricMatrix matrix = new OptimizedMatrixGenerator().generateSymmetric(TestData.load(300), 4);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    
+    new MatrixWriter(Channels.newChannel(out)).writeBinary(matrix);
+    
+    ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    
+    assertEquals(25 * 4, bytes.remaining());
+    
+    for (int i = 0; i < 5; i++)
+    {
+      for (int j = 0; j < 5; j++)
+      {
+        assertEquals(matrix.get(i, j), bytes.getFloat(), 0.0f);
+      }
+    }
+  }
+  
+  @Test
+  public void testPacked() throws Exception
+  {
+    PackedSymmetricMatrix matrix = new PackedSymmetricMatrix(300);
+    
+    for (int i = 0; i < 300; i++)
+    {
+      for (int j = i; j < 300; j++)
+      {
+        matrix.set(i, j, i * 1000 + j);
+      }
+    }
+    
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    
+    new MatrixWriter(Channels.newChannel(out)).writePacked(matrix);
+    
+    ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    
+    assertEquals(PackedSymmetricMatrix.packedLength(300) * 4, bytes.remaining());
+    
+    for (int i = 0; i < 300; i++)
+    {
+      for (int j = i; j < 300; j++)
+      {
+        assertEquals(i * 1000 + j, bytes.getFloat(), 0.0f);
+      }
+    }
+  }
+  
+  @Test
+  public void testRow() throws Exception
+  {
+    float[] values = { 1.5f, -0.7f, 0.0078125f, 1234567.5f };
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    
+    new MatrixWriter(Channels.newChannel(out)).writeText(values, 6);
+    
+    NumberFormat format = NumberFormat.getInstance();
+    
+    format.setMinimumFractionDigits(6);
+    format.setMaximumFractionDigits(6);
+    
+    assertEquals(format.format(1.5f) + " " + format.format(-0.7f) + " " + format.format(0.0078125f) + " "
+                 + format.format(1234567.5f) + System.lineSeparator(), out.toString());
+    
+    out.reset();
+    new MatrixWriter(Channels.newChannel(out)).writeBinary(values);
+    
+    ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    
+    assertEquals(16, bytes.remaining());
+    
+    for (float value : values)
+    {
+      assertEquals(value, bytes.getFloat(), 0.0f);
+    }
+  }
+  
+  private static String writeText(SymmetricMatrix matrix, int digits) throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    
+    new MatrixWriter(Channels.newChannel(out)).writeText(matrix, digits);
+    
+    return out.toString();
+  }
+  
+  private static String format(SymmetricMatrix matrix, int digits)
+  {
+    NumberFormat format = NumberFormat.getInstance();
+    
+    format.setMinimumFractionDigits(digits);
+    format.setMaximumFractionDigits(digits);
+    
+    StringBuilder text = new StringBuilder();
+    
+    for (int i = 0; i < matrix.size(); i++)
+    {
+      for (int j = 0; j < matrix.size(); j++)
+      {
+        text.append(format.format(matrix.get(i, j)));
+        
+        if (j < matrix.size() - 1)
+        {
+          text.append(' ');
+        }
+      }
+      
+      text.append(System.lineSeparator());
+    }
+    
+    // Round trip through the default charset, as the writer encodes with it.
+    
+    return new String(text.toString().getBytes(Charset.defaultCharset()), Charset.defaultCharset());
+  }
+}
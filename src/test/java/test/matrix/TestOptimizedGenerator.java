@@ -1,9 +1,6 @@
 package test.matrix;
 
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 import matrix.MatrixGenerator;
 import matrix.OptimizedMatrixGenerator;
@@ -28,7 +25,7 @@ public class TestOptimizedGenerator
   public void test5x5Matrix_300() throws Exception
   {
     MatrixGenerator calc = new OptimizedMatrixGenerator();
-    float[][] result = calc.generate(loadTestData(300), 4);
+    float[][] result = calc.generate(TestData.load(300), 4);
     
     assertEquals(0.279525f, result[0][0], DELTA);
     assertEquals(0.276682f, result[0][1], DELTA);
@@ -65,7 +62,7 @@ public class TestOptimizedGenerator
   public void test4x4Matrix_300() throws Exception
   {
     MatrixGenerator calc = new OptimizedMatrixGenerator();
-    float[][] result = calc.generate(loadTestData(300), 3);
+    float[][] result = calc.generate(TestData.load(300), 3);
     
     assertEquals(0.281236f, result[0][0], DELTA);
     assertEquals(0.278655f, result[0][1], DELTA);
@@ -92,7 +89,7 @@ public class TestOptimizedGenerator
   public void test3x3Matrix_300() throws Exception
   {
     MatrixGenerator calc = new OptimizedMatrixGenerator();
-    float[][] result = calc.generate(loadTestData(300), 2);
+    float[][] result = calc.generate(TestData.load(300), 2);
     
     assertEquals(0.283510f, result[0][0], DELTA);
     assertEquals(0.281119f, result[0][1], DELTA);
@@ -113,7 +110,7 @@ public class TestOptimizedGenerator
   public void test5x5Matrix_250() throws Exception
   {
     MatrixGenerator calc = new OptimizedMatrixGenerator();
-    float[][] result = calc.generate(loadTestData(250), 4);
+    float[][] result = calc.generate(TestData.load(250), 4);
     
     assertEquals(0.240569f, result[0][0], DELTA);
     assertEquals(0.238045f, result[0][1], DELTA);
@@ -150,7 +147,7 @@ public class TestOptimizedGenerator
   public void test5x5Matrix_200() throws Exception
   {
     MatrixGenerator calc = new OptimizedMatrixGenerator();
-    float[][] result = calc.generate(loadTestData(200), 4);
+    float[][] result = calc.generate(TestData.load(200), 4);
     
     assertEquals(0.194793f, result[0][0], DELTA);
     assertEquals(0.192979f, result[0][1], DELTA);
@@ -187,7 +184,7 @@ public class TestOptimizedGenerator
   public void test5x5Matrix_150() throws Exception
   {
     MatrixGenerator calc = new OptimizedMatrixGenerator();
-    float[][] result = calc.generate(loadTestData(150), 4);
+    float[][] result = calc.generate(TestData.load(150), 4);
     
     assertEquals(0.143372f, result[0][0], DELTA);
     assertEquals(0.142482f, result[0][1], DELTA);
@@ -220,23 +217,28 @@ public class TestOptimizedGenerator
     assertEquals(0.150771f, result[4][4], DELTA);
   }
   
-  private static float[] loadTestData(int length) throws Exception
+  // Tests for the parallel mode
+  
+  @Test
+  public void testParallelMatchesSerial() throws Exception
   {
-    URL url = TestOptimizedGenerator.class.getClassLoader().getResource("test.prn");  
-    Path path = Paths.get(url.toURI());
-    
-    String[] lines = Files.lines(path)
-                          .limit(length)
-                          .toArray(String[]::new);
-
-    float[] input = new float[lines.length];
+    float[] input = TestData.load(300);
+    ForkJoinPool pool = new ForkJoinPool(4);
     
-    for (int i = 0; i < lines.length; i++)
+    try
     {
-      input[i] = Float.parseFloat(lines[i]);
+      for (int count : new int[] { 1, 4, 17, 64 })
+      {
+        float[][] expected = new OptimizedMatrixGenerator().generate(input, count);
+        float[][] result = new OptimizedMatrixGenerator(pool).generate(input, count);
+        
+        TestData.assertMatrixEquals(expected, result, 0.0f);
+      }
+    }
+    finally
+    {
+      pool.shutdown();
     }
-    
-    return input;
   }
   
   private static final float DELTA = 0.000001f;
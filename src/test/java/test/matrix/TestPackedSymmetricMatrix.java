@@ -0,0 +1,96 @@
+package test.matrix;
+
+import matrix.MatrixGenerator;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PackedSymmetricMatrix;
+import matrix.SymmetricMatrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestPackedSymmetricMatrix
+{
+  @Test
+  public void testPackedLayout()
+  {
+    PackedSymmetricMatrix matrix = new PackedSymmetricMatrix(3);
+    
+    assertEquals(6, matrix.values().length);
+    
+    assertEquals(0, matrix.indexOf(0, 0));
+    assertEquals(2, matrix.indexOf(0, 2));
+    assertEquals(3, matrix.indexOf(1, 1));
+    assertEquals(4, matrix.indexOf(1, 2));
+    assertEquals(4, matrix.indexOf(2, 1));
+    assertEquals(5, matrix.indexOf(2, 2));
+  }
+  
+  @Test
+  public void testMirroredValues()
+  {
+    SymmetricMatrix matrix = new PackedSymmetricMatrix(4);
+    
+    matrix.set(3, 1, 2.5f);
+    
+    assertEquals(2.5f, matrix.get(1, 3), 0.0f);
+    assertEquals(2.5f, matrix.get(3, 1), 0.0f);
+    
+    float[][] array = matrix.toArray();
+    
+    assertEquals(2.5f, array[1][3], 0.0f);
+    assertEquals(2.5f, array[3][1], 0.0f);
+    assertEquals(0.0f, array[0][0], 0.0f);
+  }
+  
+  @Test
+  public void testCallerBuffer() throws Exception
+  {
+    float[] buffer = new float[PackedSymmetricMatrix.packedLength(5) + 3];
+    PackedSymmetricMatrix matrix = new PackedSymmetricMatrix(5, buffer);
+    
+    MatrixGenerator calc = new OptimizedMatrixGenerator();
+    calc.generate(TestData.load(300), 4, matrix);
+    
+    assertSame(buffer, matrix.values());
+    assertEquals(0.279525f, buffer[0], DELTA);
+    assertEquals(0.235722f, buffer[4], DELTA);
+    assertEquals(0.287076f, buffer[14], DELTA);
+  }
+  
+  @Test
+  public void testMatchesFullMatrix() throws Exception
+  {
+    MatrixGenerator calc = new OptimizedMatrixGenerator();
+    float[] input = TestData.load(300);
+    
+    float[][] expected = calc.generate(input, 10);
+    SymmetricMatrix result = calc.generateSymmetric(input, 10);
+    
+    assertEquals(11, result.size());
+    
+    for (int i = 0; i < expected.length; i++)
+    {
+      for (int j = 0; j < expected.length; j++)
+      {
+        assertEquals(expected[i][j], result.get(i, j), 0.0f);
+      }
+    }
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void testBufferTooSmall()
+  {
+    new PackedSymmetricMatrix(5, new float[14]);
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void testSizeTooLarge()
+  {
+    PackedSymmetricMatrix.packedLength(100000);
+  }
+  
+  private static final float DELTA = 0.000001f;
+}
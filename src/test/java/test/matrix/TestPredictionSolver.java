@@ -0,0 +1,164 @@
+package test.matrix;
+
+import java.util.Random;
+
+import matrix.InvalidInputException;
+import matrix.PackedSymmetricMatrix;
+import matrix.Prediction;
+import matrix.PredictionSolver;
+import matrix.SymmetricMatrix;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPredictionSolver
+{
+  @Test
+  public void testCholesky() throws Exception
+  {
+    float[] input = autoregressive(20000);
+    SymmetricMatrix matrix = new UnoptimizedMatrixGenerator().generateSymmetric(input, 2);
+    Prediction prediction = PredictionSolver.cholesky(matrix);
+    
+    assertEquals(2, prediction.order());
+    assertArrayEquals(new double[] { 1.5, -0.7 }, prediction.coefficients(), 0.02);
+    
+    // The error is the sum of the squared residuals of the prediction.
+    
+    double[] a = prediction.coefficients();
+    double error = 0.0;
+    
+    for (int i = 2; i < input.length; i++)
+    {
+      double residual = input[i] - a[0] * input[i - 1] - a[1] * input[i - 2];
+      error += residual * residual;
+    }
+    
+    assertEquals(error, prediction.error(), error * 1e-3);
+  }
+  
+  @Test
+  public void testCholeskySolvesNormalEquations() throws Exception
+  {
+    float[] input = autoregressive(5000);
+    
+    for (int count : new int[] { 1, 5, 12 })
+    {
+      float[][] expected = new UnoptimizedMatrixGenerator().generate(input, count);
+      double[] a = PredictionSolver.cholesky(new UnoptimizedMatrixGenerator().generateSymmetric(input, count)).coefficients();
+      
+      for (int k = 1; k <= count; k++)
+      {
+        double sum = 0.0;
+        
+        for (int j = 1; j <= count; j++)
+        {
+          sum += expected[k][j] * a[j - 1];
+        }
+        
+        assertEquals(expected[k][0], sum, Math.abs(expected[k][k]) * 1e-4);
+      }
+    }
+  }
+  
+  @Test
+  public void testLevinsonMatchesCholesky() throws Exception
+  {
+    float[] input = autoregressive(5000);
+    double[] lags = PredictionSolver.lags(input, 8, false);
+    SymmetricMatrix toeplitz = new PackedSymmetricMatrix(9);
+    
+    for (int k = 0; k <= 8; k++)
+    {
+      for (int j = k; j <= 8; j++)
+      {
+        toeplitz.set(k, j, (float)lags[j - k]);
+      }
+    }
+    
+    Prediction levinson = PredictionSolver.levinson(lags);
+    Prediction cholesky = PredictionSolver.cholesky(toeplitz);
+    
+    assertArrayEquals(cholesky.coefficients(), levinson.coefficients(), 1e-3);
+    assertEquals(cholesky.error(), levinson.error(), levinson.error() * 1e-3);
+    assertArrayEquals(new double[] { 1.5, -0.7 }, PredictionSolver.levinson(PredictionSolver.lags(input, 2, true)).coefficients(), 0.05);
+  }
+  
+  @Test
+  public void testLags() throws Exception
+  {
+    float[] input = TestData.load(300);
+    double[] lags = PredictionSolver.lags(input, 4, false);
+    
+    for (int d = 0; d <= 4; d++)
+    {
+      double sum = 0.0;
+      
+      for (int i = d; i < input.length; i++)
+      {
+        sum += input[i] * input[i - d];
+      }
+      
+      assertEquals(sum, lags[d], 1e-9);
+    }
+    
+    assertEquals(0.0, PredictionSolver.lags(new float[] { 1.0f, 2.0f }, 3, false)[3], 0.0);
+  }
+  
+  @Test
+  public void testLagErrorBound() throws Exception
+  {
+    Random random = new Random(5);
+    float[] input = new float[100000];
+    
+    for (int i = 0; i < input.length; i++)
+    {
+      input[i] = (float)random.nextGaussian() + 0.5f;
+    }
+    
+    double bound = PredictionSolver.lagErrorBound(input);
+    double[] single = PredictionSolver.lags(input, 130, true);
+    double[] full = PredictionSolver.lags(input, 130, false);
+    
+    assertTrue(bound > 0.0);
+    
+    for (int d = 0; d <= 130; d++)
+    {
+      assertEquals(full[d], single[d], bound);
+    }
+    
+    assertEquals(0.0, PredictionSolver.lagErrorBound(new float[0]), 0.0);
+  }
+  
+  @Test(expected = InvalidInputException.class)
+  public void testCholeskySingular() throws Exception
+  {
+    PredictionSolver.cholesky(new UnoptimizedMatrixGenerator().generateSymmetric(new float[100], 4));
+  }
+  
+  @Test(expected = InvalidInputException.class)
+  public void testLevinsonSingular() throws Exception
+  {
+    PredictionSolver.levinson(PredictionSolver.lags(new float[100], 4, false));
+  }
+  
+  /**
+   * Generate a seeded second order autoregressive process with known coefficients.
+   */
+  private static float[] autoregressive(int length)
+  {
+    Random random = new Random(3);
+    float[] input = new float[length];
+    
+    for (int i = 2; i < length; i++)
+    {
+      input[i] = (float)(1.5 * input[i - 1] - 0.7 * input[i - 2] + random.nextGaussian());
+    }
+    
+    return input;
+  }
+}
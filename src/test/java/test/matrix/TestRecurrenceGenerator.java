@@ -0,0 +1,45 @@
+package test.matrix;
+
+import matrix.MatrixGenerator;
+import matrix.RecurrenceMatrixGenerator;
+import matrix.UnoptimizedMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestRecurrenceGenerator
+{
+  @Test
+  public void test5x5Matrix_300() throws Exception
+  {
+    MatrixGenerator calc = new RecurrenceMatrixGenerator();
+    float[][] result = calc.generate(TestData.load(300), 4);
+    
+    assertEquals(0.279525f, result[0][0], DELTA);
+    assertEquals(0.276682f, result[0][1], DELTA);
+    assertEquals(0.235722f, result[0][4], DELTA);
+    assertEquals(0.235722f, result[4][0], DELTA);
+    assertEquals(0.272113f, result[2][4], DELTA);
+    assertEquals(0.287076f, result[4][4], DELTA);
+  }
+  
+  @Test
+  public void testMatchesUnoptimized() throws Exception
+  {
+    for (int length : new int[] { 5, 150, 300 })
+    {
+      float[] input = TestData.load(length);
+      
+      for (int count : new int[] { 0, 1, 4, length / 2, length - 1 })
+      {
+        float[][] expected = new UnoptimizedMatrixGenerator().generate(input, count);
+        float[][] result = new RecurrenceMatrixGenerator().generate(input, count);
+        
+        TestData.assertMatrixEquals(expected, result, DELTA);
+      }
+    }
+  }
+  
+  private static final float DELTA = 0.000001f;
+}
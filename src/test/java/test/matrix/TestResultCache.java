@@ -0,0 +1,188 @@
+package test.matrix;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import matrix.CachedMatrixGenerator;
+import matrix.MappedSymmetricMatrix;
+import matrix.MatrixGenerator;
+import matrix.MatrixWriter;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PackedSymmetricMatrix;
+import matrix.ResultCache;
+import matrix.SymmetricMatrix;
+import matrix.VectorMatrixGenerator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestResultCache
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  @Test
+  public void testHitSkipsGenerator() throws Exception
+  {
+    float[] input = TestData.load(300);
+    int[] calls = new int[1];
+    
+    MatrixGenerator counted = (values, count, result, workspace) ->
+    {
+      calls[0]++;
+      new OptimizedMatrixGenerator().generate(values, count, result, workspace);
+    };
+    
+    ResultCache cache = new ResultCache(folder.getRoot().toPath().resolve("cache"), 1 << 20);
+    MatrixGenerator generator = new CachedMatrixGenerator(counted, "counted", cache);
+    
+    float[][] expected = new OptimizedMatrixGenerator().generate(input, 4);
+    
+    TestData.assertMatrixEquals(expected, generator.generate(input, 4), 0.0f);
+    TestData.assertMatrixEquals(expected, generator.generate(input, 4), 0.0f);
+    assertEquals(1, calls[0]);
+    
+    // The same values in a buffer have the same key, but a different count doesn't.
+    
+    SymmetricMatrix result = generator.generateSymmetric(FloatBuffer.wrap(input), 4);
+    
+    TestData.assertMatrixEquals(expected, result.toArray(), 0.0f);
+    assertEquals(1, calls[0]);
+    
+    generator.generate(input, 3);
+    assertEquals(2, calls[0]);
+  }
+  
+  @Test
+  public void testVectorKernelInKey() throws Exception
+  {
+    Path directory = folder.getRoot().toPath().resolve("cache");
+    ResultCache cache = new ResultCache(directory, 1 << 20);
+    
+    new CachedMatrixGenerator(new VectorMatrixGenerator(), "vector", cache).generate(TestData.load(300), 4);
+    
+    String kernel = VectorMatrixGenerator.kernel();
+    String name = list(directory).get(0).getFileName().toString();
+    
+    assertTrue(name, name.endsWith(kernel.equals("scalar") ? "-vector-scalar-double.bin"
+                                                          : "-vector-" + kernel.replaceAll("[^0-9]", "") + "-double.bin"));
+  }
+  
+  @Test
+  public void testEntryIsPacked() throws Exception
+  {
+    Path directory = folder.getRoot().toPath().resolve("cache");
+    ResultCache cache = new ResultCache(directory, 1 << 20);
+    float[] input = TestData.load(300);
+    SymmetricMatrix matrix = new OptimizedMatrixGenerator().generateSymmetric(input, 4);
+    ResultCache.Key key = new ResultCache.Key(ResultCache.hash(input, input.length), 300, 4, "optimized", "double");
+    
+    assertNull(cache.get(key));
+    
+    cache.put(key, matrix);
+    
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    MatrixWriter writer = new MatrixWriter(Channels.newChannel(expected));
+    
+    writer.writePacked(matrix);
+    writer.flush();
+    
+    // Only the entry is left, with no temporary files.
+    
+    List<Path> files = list(directory);
+    
+    assertEquals(1, files.size());
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(files.get(0)));
+    
+    try (MappedSymmetricMatrix cached = cache.get(key))
+    {
+      assertNotNull(cached);
+      TestData.assertMatrixEquals(matrix.toArray(), cached.toArray(), 0.0f);
+    }
+  }
+  
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws Exception
+  {
+    float[] input = TestData.load(300);
+    SymmetricMatrix matrix = new PackedSymmetricMatrix(5, new float[15]);
+    long entrySize = 15 * Float.BYTES;
+    ResultCache cache = new ResultCache(folder.getRoot().toPath().resolve("cache"), 2 * entrySize);
+    
+    ResultCache.Key a = new ResultCache.Key(ResultCache.hash(input, 100), 100, 4, "optimized", "double");
+    ResultCache.Key b = new ResultCache.Key(ResultCache.hash(input, 200), 200, 4, "optimized", "double");
+    ResultCache.Key c = new ResultCache.Key(ResultCache.hash(input, 300), 300, 4, "optimized", "double");
+    
+    cache.put(a, matrix);
+    Thread.sleep(50);
+    cache.put(b, matrix);
+    Thread.sleep(50);
+    
+    // Using the first entry makes the second the least recently used.
+    
+    cache.get(a).close();
+    Thread.sleep(50);
+    cache.put(c, matrix);
+    
+    assertEquals(2 * entrySize, cache.size());
+    assertNull(cache.get(b));
+    assertNotNull(cache.get(a));
+    assertNotNull(cache.get(c));
+  }
+  
+  @Test
+  public void testHash() throws Exception
+  {
+    float[] input = TestData.load(300);
+    FloatBuffer buffer = FloatBuffer.wrap(input);
+    
+    buffer.limit(200);
+    
+    assertEquals(ResultCache.hash(input, 200), ResultCache.hash(buffer));
+    assertTrue(ResultCache.hash(input, 200) != ResultCache.hash(input, 199));
+    
+    float[] changed = input.clone();
+    
+    changed[150] = Math.nextUp(changed[150]);
+    
+    assertTrue(ResultCache.hash(input, 300) != ResultCache.hash(changed, 300));
+    
+    Path text = folder.newFile("input.prn").toPath();
+    
+    Files.write(text, "0.5\n0.25\n".getBytes("US-ASCII"));
+    
+    long hash = ResultCache.hash(text);
+    
+    Files.write(text, "0.5\n0.26\n".getBytes("US-ASCII"));
+    
+    assertTrue(hash != ResultCache.hash(text));
+  }
+  
+  private static List<Path> list(Path directory) throws Exception
+  {
+    List<Path> files = new ArrayList<>();
+    
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory))
+    {
+      for (Path path : paths)
+      {
+        files.add(path);
+      }
+    }
+    
+    return files;
+  }
+}
@@ -0,0 +1,149 @@
+package test.matrix;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import matrix.MatrixGenerator;
+import matrix.OptimizedMatrixGenerator;
+import matrix.PrefixSumMatrixGenerator;
+import matrix.RecurrenceMatrixGenerator;
+import matrix.SampleFile;
+import matrix.SampleSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestSampleFile
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  @Test
+  public void testWriteAndMap() throws Exception
+  {
+    float[] input = TestData.load(300);
+    Path path = folder.newFile("test.bin").toPath();
+    
+    SampleFile.write(path, input);
+    FloatBuffer samples = SampleFile.map(path);
+    
+    assertEquals(8 + 4 * 300, Files.size(path));
+    assertEquals(300, samples.limit());
+    
+    for (int i = 0; i < input.length; i++)
+    {
+      assertEquals(input[i], samples.get(i), 0.0f);
+    }
+  }
+  
+  @Test
+  public void testMapWithoutHeader() throws Exception
+  {
+    Path path = folder.newFile("raw.bin").toPath();
+    ByteBuffer bytes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    
+    bytes.putFloat(1.5f).putFloat(-2.0f).putFloat(0.25f);
+    Files.write(path, bytes.array());
+    
+    FloatBuffer samples = SampleFile.map(path);
+    
+    assertEquals(3, samples.limit());
+    assertEquals(1.5f, samples.get(0), 0.0f);
+    assertEquals(-2.0f, samples.get(1), 0.0f);
+    assertEquals(0.25f, samples.get(2), 0.0f);
+  }
+  
+  @Test
+  public void testConvert() throws Exception
+  {
+    URL url = TestSampleFile.class.getClassLoader().getResource("test.prn");
+    Path path = folder.newFile("converted.bin").toPath();
+    
+    long samples = SampleFile.convert(Paths.get(url.toURI()), path);
+    
+    FloatBuffer converted = SampleFile.map(path);
+    float[] input = TestData.load((int)samples);
+    
+    assertEquals(samples, converted.limit());
+    assertEquals(input[0], converted.get(0), 0.0f);
+    assertEquals(input[input.length - 1], converted.get(input.length - 1), 0.0f);
+  }
+  
+  @Test
+  public void testConvertChannels() throws Exception
+  {
+    Path text = folder.newFile("channels.prn").toPath();
+    Path path = folder.newFile("channels.bin").toPath();
+    
+    Files.write(text, "1 10\n2 20\n\n3 30\n".getBytes("US-ASCII"));
+    
+    assertEquals(6, SampleFile.convert(text, path));
+    
+    float[][] channels = SampleFile.deinterleave(SampleFile.map(path), 3, 2);
+    
+    assertArrayEquals(new float[] { 1, 2, 3 }, channels[0], 0.0f);
+    assertArrayEquals(new float[] { 10, 20, 30 }, channels[1], 0.0f);
+  }
+  
+  @Test
+  public void testGenerateFromMappedFile() throws Exception
+  {
+    float[] input = TestData.load(300);
+    Path path = folder.newFile("generate.bin").toPath();
+    
+    SampleFile.write(path, input);
+    FloatBuffer samples = SampleFile.map(path);
+    
+    for (MatrixGenerator calc : new MatrixGenerator[] { new OptimizedMatrixGenerator(),
+                                                        new PrefixSumMatrixGenerator(),
+                                                        new RecurrenceMatrixGenerator() })
+    {
+      float[][] expected = calc.generate(input, 10);
+      float[][] result = calc.generateSymmetric(samples, 10).toArray();
+      
+      TestData.assertMatrixEquals(expected, result, 0.0f);
+    }
+  }
+  
+  @Test
+  public void testOpen() throws Exception
+  {
+    float[] input = TestData.load(300);
+    Path path = folder.newFile("open.bin").toPath();
+    
+    SampleFile.write(path, input);
+    
+    float[] values = new float[310];
+    
+    try (SampleSource source = SampleFile.open(path))
+    {
+      assertEquals(100, source.read(values, 0, 100));
+      assertEquals(200, source.read(values, 100, 210));
+      assertEquals(0, source.read(values, 300, 10));
+    }
+    
+    assertArrayEquals(input, Arrays.copyOf(values, 300), 0.0f);
+  }
+  
+  @Test(expected = java.io.IOException.class)
+  public void testTruncatedFile() throws Exception
+  {
+    Path path = folder.newFile("truncated.bin").toPath();
+    ByteBuffer bytes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    
+    bytes.put((byte)'M').put((byte)'T').put((byte)'X').put((byte)'F').putInt(5).putFloat(1.0f);
+    Files.write(path, bytes.array());
+    
+    SampleFile.map(path);
+  }
+}
@@ -0,0 +1,170 @@
+package test.matrix;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import matrix.InvalidInputException;
+import matrix.SampleParser;
+import matrix.SampleSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestSampleParser
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  @Test
+  public void testMatchesParseFloat() throws Exception
+  {
+    float[] expected = TestData.load(300);
+    Path path = Paths.get(TestSampleParser.class.getClassLoader().getResource("test.prn").toURI());
+    
+    float[] result = SampleParser.parse(path, 300);
+    
+    assertArrayEquals(expected, result, 0.0f);
+  }
+  
+  @Test
+  public void testValueFormats() throws Exception
+  {
+    String[] values = { "0", "-0.0", "+1.5", "  2.25  ", "1e10", "1E-5", ".5", "3.", "1.5f",
+                        "123456789012345678901234", "0.0000000000000000000001234", "1e-42",
+                        "3.4028235e38", "0x1.8p1", "0.0532925166190", "-0.0107496557757" };
+    
+    Path path = write(String.join("\n", values));
+    float[] result = SampleParser.parse(path, values.length);
+    
+    for (int i = 0; i < values.length; i++)
+    {
+      assertEquals(values[i], Float.floatToRawIntBits(Float.parseFloat(values[i])), Float.floatToRawIntBits(result[i]));
+    }
+  }
+  
+  @Test
+  public void testLineEndings() throws Exception
+  {
+    Path path = write("1\r\n2\r3\n4");
+    
+    assertArrayEquals(new float[] { 1, 2, 3, 4 }, SampleParser.parse(path, 4), 0.0f);
+  }
+  
+  @Test
+  public void testStopsAtLength() throws Exception
+  {
+    Path path = write("1\n2\nnot a number\n");
+    
+    assertArrayEquals(new float[] { 1, 2 }, SampleParser.parse(path, 2), 0.0f);
+  }
+  
+  @Test
+  public void testErrors() throws Exception
+  {
+    assertError("1\n2\n", 3, "Not enough input values for length 3");
+    assertError("1\n\n3\n", 3, "Invalid value in input file: empty String");
+    assertError("1\nabc\n3\n", 3, "Invalid value in input file: For input string: \"abc\"");
+    assertError("1\nInfinity\n3\n", 3, "Invalid input data in data file: Infinity");
+    assertError("1\n1e39\n3\n", 3, "Invalid input data in data file: Infinity");
+    
+    // The checks are made in the same order as before: length, then parsing, then values.
+    
+    assertError("NaN\nabc\n", 3, "Not enough input values for length 3");
+    assertError("NaN\nabc\n3\n", 3, "Invalid value in input file: For input string: \"abc\"");
+    assertError("1\nNaN\n-Infinity\n", 3, "Invalid input data in data file: NaN");
+  }
+  
+  @Test
+  public void testChannels() throws Exception
+  {
+    Path path = write("1 10\t100\n 2  20 200 \r\n3 30 300\n4 40 400\n");
+    float[][] values = SampleParser.parseChannels(path, 3, 3);
+    
+    assertArrayEquals(new float[] { 1, 2, 3 }, values[0], 0.0f);
+    assertArrayEquals(new float[] { 10, 20, 30 }, values[1], 0.0f);
+    assertArrayEquals(new float[] { 100, 200, 300 }, values[2], 0.0f);
+  }
+  
+  @Test
+  public void testChannelErrors() throws Exception
+  {
+    assertChannelError("1 2\n3\n", 2, "Invalid value in input file: expected 2 values on line 2");
+    assertChannelError("1 2\n3 4 5\n", 2, "Invalid value in input file: expected 2 values on line 2");
+    assertChannelError("1 2\n3 x\n", 2, "Invalid value in input file: For input string: \"x\"");
+    assertChannelError("1 2\n3 NaN\n", 2, "Invalid input data in data file: NaN");
+    assertChannelError("1 2\n", 2, "Not enough input values for length 2");
+  }
+  
+  @Test
+  public void testOpen() throws Exception
+  {
+    Path path = write("1\r\n2\r3\n4\n5");
+    float[] values = new float[6];
+    
+    try (SampleSource source = SampleParser.open(path))
+    {
+      assertEquals(2, source.read(values, 0, 2));
+      assertEquals(3, source.read(values, 2, 4));
+      assertEquals(0, source.read(values, 5, 1));
+    }
+    
+    assertArrayEquals(new float[] { 1, 2, 3, 4, 5, 0 }, values, 0.0f);
+  }
+  
+  @Test
+  public void testOpenErrors() throws Exception
+  {
+    try (SampleSource source = SampleParser.open(write("1\n2\nNaN\n")))
+    {
+      float[] values = new float[3];
+      
+      assertEquals(2, source.read(values, 0, 2));
+      source.read(values, 2, 1);
+      fail("Expected an error");
+    }
+    catch (InvalidInputException e)
+    {
+      assertEquals("Invalid input data in data file: NaN", e.getMessage());
+    }
+  }
+  
+  private void assertChannelError(String contents, int length, String message) throws Exception
+  {
+    try
+    {
+      SampleParser.parseChannels(write(contents), length, 2);
+      fail("Expected an error: " + message);
+    }
+    catch (InvalidInputException e)
+    {
+      assertEquals(message, e.getMessage());
+    }
+  }
+  
+  private void assertError(String contents, int length, String message) throws Exception
+  {
+    try
+    {
+      SampleParser.parse(write(contents), length);
+      fail("Expected an error: " + message);
+    }
+    catch (InvalidInputException e)
+    {
+      assertEquals(message, e.getMessage());
+    }
+  }
+  
+  private Path write(String contents) throws Exception
+  {
+    Path path = folder.newFile().toPath();
+    Files.write(path, contents.getBytes(StandardCharsets.US_ASCII));
+    return path;
+  }
+}
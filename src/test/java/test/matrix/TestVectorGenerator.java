@@ -0,0 +1,114 @@
+package test.matrix;
+
+import java.util.Random;
+
+import matrix.MatrixGenerator;
+import matrix.SymmetricMatrix;
+import matrix.UnoptimizedMatrixGenerator;
+import matrix.VectorMatrixGenerator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestVectorGenerator
+{
+  @Test
+  public void test5x5Matrix_300() throws Exception
+  {
+    MatrixGenerator calc = new VectorMatrixGenerator();
+    float[][] result = calc.generate(TestData.load(300), 4);
+    
+    assertEquals(0.279525f, result[0][0], DELTA);
+    assertEquals(0.276682f, result[0][1], DELTA);
+    assertEquals(0.235722f, result[0][4], DELTA);
+    assertEquals(0.235722f, result[4][0], DELTA);
+    assertEquals(0.272113f, result[2][4], DELTA);
+    assertEquals(0.287076f, result[4][4], DELTA);
+  }
+  
+  @Test
+  public void testMatchesUnoptimized() throws Exception
+  {
+    for (int length : new int[] { 5, 150, 300 })
+    {
+      float[] input = TestData.load(length);
+      
+      for (int count : new int[] { 0, 1, 4, length / 2, length - 1, length + 2 })
+      {
+        float[][] expected = new UnoptimizedMatrixGenerator().generate(input, count);
+        float[][] result = new VectorMatrixGenerator().generate(input, count);
+        
+        TestData.assertMatrixEquals(expected, result, DELTA);
+      }
+    }
+  }
+  
+  @Test
+  public void testLongInput() throws Exception
+  {
+    // Long enough for many full vectors, with a partial one left over at the end.
+    
+    Random random = new Random(7);
+    float[] input = new float[10007];
+    
+    for (int i = 0; i < input.length; i++)
+    {
+      input[i] = (float)random.nextGaussian();
+    }
+    
+    float[][] expected = new UnoptimizedMatrixGenerator().generate(input, 37);
+    float[][] result = new VectorMatrixGenerator().generate(input, 37);
+    
+    for (int k = 0; k <= 37; k++)
+    {
+      for (int j = 0; j <= 37; j++)
+      {
+        assertEquals(expected[k][j], result[k][j], Math.abs(expected[k][j]) * 1e-5f + 1e-3f);
+      }
+    }
+  }
+  
+  @Test
+  public void testSinglePrecision() throws Exception
+  {
+    float[] input = TestData.load(300);
+    float[][] expected = new UnoptimizedMatrixGenerator().generate(input, 4);
+    
+    TestData.assertMatrixEquals(expected, new VectorMatrixGenerator(true).generate(input, 4), DELTA);
+    
+    // Long enough for many blocks in the pairwise sums, with a partial one at the end.
+    
+    Random random = new Random(11);
+    input = new float[200003];
+    
+    for (int i = 0; i < input.length; i++)
+    {
+      input[i] = (float)random.nextGaussian() + 0.5f;
+    }
+    
+    for (int count : new int[] { 0, 9, 130 })
+    {
+      double bound = VectorMatrixGenerator.errorBound(input, count);
+      SymmetricMatrix single = new VectorMatrixGenerator(true).generateSymmetric(input, count);
+      SymmetricMatrix full = new VectorMatrixGenerator(false).generateSymmetric(input, count);
+      
+      assertTrue(bound > 0.0);
+      
+      for (int k = 0; k <= count; k++)
+      {
+        for (int j = k; j <= count; j++)
+        {
+          // Allow for the rounding of the two cells to float as well.
+          
+          assertEquals(full.get(k, j), single.get(k, j), bound + Math.ulp(full.get(k, j)));
+        }
+      }
+    }
+    
+    assertEquals(0.0, VectorMatrixGenerator.errorBound(new float[3], 4), 0.0);
+  }
+  
+  private static final float DELTA = 0.000001f;
+}